@@ -61,6 +61,8 @@ class AR2dTrackingRenderer extends ARRenderer {
         new Trackable("pinball.jpg", 1.0f)
     };
     private int trackableUIDs[] = new int[trackables.length];
+    private final float[] projectionMatrix = new float[16];
+    private final float[] modelViewMatrix = new float[16];
     
     private Cube cube;
 
@@ -99,12 +101,12 @@ class AR2dTrackingRenderer extends ARRenderer {
         GLES20.glEnable(GLES20.GL_DEPTH_TEST);
         GLES20.glFrontFace(GLES20.GL_CCW);
 
+        if (!ARController.getInstance().getProjectionMatrix(10.0f, 10000.0f, projectionMatrix)) return;
+
         // Look for trackables, and draw on each found one.
         for (int trackableUID : trackableUIDs) {
             // If the trackable is visible, apply its transformation, and render a cube
-            float[] modelViewMatrix = new float[16];
-            if (ARController.getInstance().queryTrackableVisibilityAndTransformation(trackableUID, modelViewMatrix)) {
-                float[] projectionMatrix = ARController.getInstance().getProjectionMatrix(10.0f, 10000.0f);
+            if (queryTrackablePose(trackableUID, modelViewMatrix)) {
                 cube.draw(projectionMatrix, modelViewMatrix);
             }
         }
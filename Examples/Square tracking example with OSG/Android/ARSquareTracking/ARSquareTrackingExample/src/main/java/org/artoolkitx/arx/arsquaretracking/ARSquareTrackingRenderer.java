@@ -39,6 +39,7 @@ package org.artoolkitx.arx.arsquaretracking;
 import android.opengl.GLES20;
 
 import org.artoolkitx.arx.arxj.ARController;
+import org.artoolkitx.arx.arxj.ARFrame;
 import org.artoolkitx.arx.arxj.ARX_jni;
 import org.artoolkitx.arx.arxj.Trackable;
 import org.artoolkitx.arx.arxj.rendering.ARRenderer;
@@ -60,6 +61,8 @@ class ARSquareTrackingRenderer extends ARRenderer {
         new Trackable("kanji", 80.0f)
     };
     private int trackableUIDs[] = new int[trackables.length];
+    private final float[] projectionMatrix = new float[16];
+    private final float[] modelViewMatrix = new float[16];
     
     private Cube cube;
     private SimpleShaderProgram shaderProgram;
@@ -99,12 +102,14 @@ class ARSquareTrackingRenderer extends ARRenderer {
         GLES20.glEnable(GLES20.GL_DEPTH_TEST);
         GLES20.glFrontFace(GLES20.GL_CCW);
 
-        // Look for trackables, and draw on each found one.
-        for (int trackableUID : trackableUIDs) {
+        // Take the poses and projection from this frame's tracking snapshot, so they all come from the same detection.
+        ARFrame frame = getFrame();
+        if (frame == null || !frame.getProjectionMatrix(projectionMatrix)) return;
+
+        // Look for trackables, and draw on each found one. Only the trackables added above are in the snapshot.
+        for (int i = 0; i < frame.getTrackableCount(); i++) {
             // If the trackable is visible, apply its transformation, and render a cube
-            float[] modelViewMatrix = new float[16];
-            if (ARController.getInstance().queryTrackableVisibilityAndTransformation(trackableUID, modelViewMatrix)) {
-                float[] projectionMatrix = ARController.getInstance().getProjectionMatrix(10.0f, 10000.0f);
+            if (frame.getTrackablePose(i, modelViewMatrix)) {
                 cube.draw(projectionMatrix, modelViewMatrix);
             }
         }
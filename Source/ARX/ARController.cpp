@@ -964,6 +964,28 @@ done:
     return ret;
 }
 
+jint ARController::androidVideoPushChroma(JNIEnv *env, jobject obj, jint videoSourceIndex,
+                                          jobject buf1, jint buf1PixelStride, jint buf1RowStride,
+                                          jobject buf2, jint buf2PixelStride, jint buf2RowStride)
+{
+    if (videoSourceIndex < 0 || videoSourceIndex > (m_videoSourceIsStereo ? 1 : 0)) return -1;
+
+    int ret = -1;
+
+    ARVideoSource *vs = (videoSourceIndex == 0 ? m_videoSource0 : m_videoSource1);
+    if (!vs) {
+        ARLOGe("ARController::androidVideoPushChroma: no ARVideoSource.\n");
+    } else {
+        if (vs->isRunning()) {
+            ret = vs->androidVideoPushChroma(env, obj, buf1, buf1PixelStride, buf1RowStride, buf2, buf2PixelStride, buf2RowStride);
+        } else {
+            ARLOGe("ARController::androidVideoPushChroma: ARVideoSource is not running.\n");
+        }
+    }
+
+    return ret;
+}
+
 jint ARController::androidVideoPushFinal(JNIEnv *env, jobject obj, jint videoSourceIndex)
 {
     if (videoSourceIndex < 0 || videoSourceIndex > (m_videoSourceIsStereo ? 1 : 0)) return -1;
@@ -77,6 +77,7 @@ struct _AR2VideoParamAndroidT {
     bool               capturing;
     bool               pushInited;
     bool               newFrame;
+    bool               chromaPushed; // Chroma for the next push arrived through ar2VideoPushChromaAndroid.
     pthread_mutex_t    frameLock;
     pthread_cond_t     frameInCond;
     pthread_t          openAsyncThread;
@@ -271,6 +272,7 @@ AR2VideoParamAndroidT *ar2VideoOpenAsyncAndroid(const char *config, void (*callb
     vid->pushInited = false;
     vid->capturing = false;
     vid->newFrame = false;
+    vid->chromaPushed = false;
     
     // In lieu of identifying the actual camera, we use manufacturer/model/board to identify a device,
     // and assume that identical devices have identical cameras.
@@ -635,6 +637,7 @@ jint ar2VideoPushInitAndroid(AR2VideoParamAndroidT *vid, JNIEnv *env, jobject ob
     vid->heightIn = height;
     vid->camera_index = camera_index;
     vid->camera_face = camera_face;
+    vid->chromaPushed = false;
     vid->pushInited = true;
     ret = 0;
 
@@ -707,6 +710,54 @@ done:
     return (ret);
 }
 
+// Copies the chroma of an NV21, NV12 or YUV_420_888 frame into the NV21/NV12 chroma plane.
+// Must be called with frameLock held.
+static bool copyChromaAndroid(AR2VideoParamAndroidT *vid, JNIEnv *env,
+                              jobject buf1, jint buf1PixelStride, jint buf1RowStride,
+                              jobject buf2, jint buf2PixelStride, jint buf2RowStride)
+{
+    if (vid->androidIncomingPixelFormat == ARVideoAndroidIncomingPixelFormat_NV21 || vid->androidIncomingPixelFormat == ARVideoAndroidIncomingPixelFormat_NV12) {
+        if (!buf1) {
+            ARLOGe("copyChromaAndroid: NULL chroma buffer.\n");
+            return false;
+        }
+        unsigned char *buf1p = (*env)->GetDirectBufferAddress(env, buf1);
+        long buf1Size = (*env)->GetDirectBufferCapacity(env, buf1);
+        if ((2 * (vid->widthIn/2 * vid->heightIn/2)) != buf1Size) {
+            ARLOGe("copyChromaAndroid: Error: unexpected chroma buffer size (%d) for format NV21/NV12.\n", buf1Size);
+            return false;
+        }
+        memcpy(vid->buffer.bufPlanes[1], buf1p, buf1Size);
+        return true;
+    }
+    if (vid->androidIncomingPixelFormat == ARVideoAndroidIncomingPixelFormat_YUV_420_888) {
+        if (!buf1 || !buf2) {
+            ARLOGe("copyChromaAndroid: Error: insufficient buffers for format YUV_420_888.\n");
+            return false;
+        }
+        unsigned char *buf1p = (*env)->GetDirectBufferAddress(env, buf1); // Guaranteed to be U (Cb)
+        unsigned char *buf2p = (*env)->GetDirectBufferAddress(env, buf2); // Guaranteed to be V (Cr)
+        if ((buf1PixelStride == 2 && buf2PixelStride == 2) && (buf1RowStride == vid->widthIn && buf2RowStride == vid->widthIn) && ((buf1p - 1) == buf2p)) {
+            // U and V planes both have pixelstride of 2, rowstride of pixelstride * vid->widthIn/2, and are interleaved by 1 byte, so it's already NV21 and we can do a direct copy.
+            memcpy(vid->buffer.bufPlanes[1], buf2p, 2*vid->widthIn/2*vid->heightIn/2);
+        } else {
+            // Tedious conversion to NV21.
+            unsigned char *p = vid->buffer.bufPlanes[1], *p1 = buf1p, *p2 = buf2p;
+            for (int i = 0; i < vid->heightIn / 2; i++) {
+                for (int j = 0; j < vid->widthIn / 2; j++) {
+                    *p++ = p2[j * buf1PixelStride]; // Cr
+                    *p++ = p1[j * buf2PixelStride]; // Cb
+                }
+                p1 += buf1RowStride;
+                p2 += buf2RowStride;
+            }
+        }
+        return true;
+    }
+    ARLOGe("copyChromaAndroid: Error: format has no chroma plane.\n");
+    return false;
+}
+
 jint ar2VideoPushAndroid2(AR2VideoParamAndroidT *vid, JNIEnv *env, jobject obj,
                           jobject buf0, jint buf0PixelStride, jint buf0RowStride,
                           jobject buf1, jint buf1PixelStride, jint buf1RowStride,
@@ -733,32 +784,27 @@ jint ar2VideoPushAndroid2(AR2VideoParamAndroidT *vid, JNIEnv *env, jobject obj,
     vid->buffer.fillFlag = 1;
     
     // Copy the incoming frame.
+    // For planar formats, passing no chroma planes requests a luma-only push, for trackers which
+    // only need luminance. The chroma plane then keeps the contents of the last full push or
+    // ar2VideoPushChromaAndroid call. Trackers read the luma plane only, so a luma-only push is
+    // converted to RGBA only if chroma for this frame has been pushed.
     if (vid->androidIncomingPixelFormat == ARVideoAndroidIncomingPixelFormat_NV21 || vid->androidIncomingPixelFormat == ARVideoAndroidIncomingPixelFormat_NV12) {
-        if (!buf1) {
-            ARLOGe("ar2VideoPushAndroid2: Error: insufficient buffers for format NV21/NV12.\n");
-            goto done;
-        }
-        unsigned char *buf1p = (*env)->GetDirectBufferAddress(env, buf1);
-        long buf1Size = (*env)->GetDirectBufferCapacity(env, buf1);
-        if ((vid->widthIn * vid->heightIn) != buf0Size || (2 * (vid->widthIn/2 * vid->heightIn/2)) != buf1Size) {
-            ARLOGe("ar2VideoPushAndroid2: Error: unexpected buffer sizes (%d, %d) for format NV21/NV12.\n", buf0Size, buf1Size);
+        if ((vid->widthIn * vid->heightIn) != buf0Size) {
+            ARLOGe("ar2VideoPushAndroid2: Error: unexpected buffer size (%d) for format NV21/NV12.\n", buf0Size);
             goto done;
         }
+        if (buf1 && !copyChromaAndroid(vid, env, buf1, buf1PixelStride, buf1RowStride, buf2, buf2PixelStride, buf2RowStride)) goto done;
         memcpy(vid->buffer.bufPlanes[0], buf0p, buf0Size);
-        memcpy(vid->buffer.bufPlanes[1], buf1p, buf1Size);
         // Convert if the user requested RGBA.
-        if (vid->convertToRGBA) {
+        if (vid->convertToRGBA && (buf1 || vid->chromaPushed)) {
             videoRGBA((uint32_t *)&vid->buffer.buff, &(vid->buffer), vid->widthIn, vid->heightIn, vid->pixelFormat);
         }
     } else if (vid->androidIncomingPixelFormat == ARVideoAndroidIncomingPixelFormat_YUV_420_888) {
-        if (!buf1 || !buf2) {
+        bool lumaOnly = (!buf1 && !buf2);
+        if (!lumaOnly && (!buf1 || !buf2)) {
             ARLOGe("ar2VideoPushAndroid2: Error: insufficient buffers for format YUV_420_888.\n");
             goto done;
         }
-        unsigned char *buf1p = (*env)->GetDirectBufferAddress(env, buf1); // Guaranteed to be U (Cb)
-        long buf1Size = (*env)->GetDirectBufferCapacity(env, buf1);
-        unsigned char *buf2p = (*env)->GetDirectBufferAddress(env, buf2); // Guaranteed to be V (Cr)
-        long buf2Size = (*env)->GetDirectBufferCapacity(env, buf2);
         
         if ((vid->widthIn * vid->heightIn) != buf0Size) {
             ARLOGe("ar2VideoPushAndroid2: Error: unexpected buffer size (%d) for format YUV_420_888.\n", buf0Size);
@@ -778,24 +824,10 @@ jint ar2VideoPushAndroid2(AR2VideoParamAndroidT *vid, JNIEnv *env, jobject obj,
             }
         }
         // Next, U (Cb) and V (Cr) planes.
-        if ((buf1PixelStride == 2 && buf2PixelStride == 2) && (buf1RowStride == vid->widthIn && buf2RowStride == vid->widthIn) && ((buf1p - 1) == buf2p)) {
-            // U and V planes both have pixelstride of 2, rowstride of pixelstride * vid->widthIn/2, and are interleaved by 1 byte, so it's already NV21 and we can do a direct copy.
-            memcpy(vid->buffer.bufPlanes[1], buf2p, 2*vid->widthIn/2*vid->heightIn/2);
-        } else {
-            // Tedious conversion to NV21.
-            unsigned char *p = vid->buffer.bufPlanes[1], *p1 = buf1p, *p2 = buf2p;
-            for (int i = 0; i < vid->heightIn / 2; i++) {
-                for (int j = 0; j < vid->widthIn / 2; j++) {
-                    *p++ = p2[j * buf1PixelStride]; // Cr
-                    *p++ = p1[j * buf2PixelStride]; // Cb
-                }
-                p1 += buf1RowStride;
-                p2 += buf2RowStride;
-            }
-        }
+        if (!lumaOnly && !copyChromaAndroid(vid, env, buf1, buf1PixelStride, buf1RowStride, buf2, buf2PixelStride, buf2RowStride)) goto done;
 
         // Convert if the user requested RGBA.
-        if (vid->convertToRGBA) {
+        if (vid->convertToRGBA && (!lumaOnly || vid->chromaPushed)) {
             videoRGBA((uint32_t *)&vid->buffer.buff, &(vid->buffer), vid->widthIn, vid->heightIn, vid->pixelFormat);
         }
 
@@ -821,6 +853,7 @@ jint ar2VideoPushAndroid2(AR2VideoParamAndroidT *vid, JNIEnv *env, jobject obj,
     
     ret = 0;
     vid->newFrame = true;
+    vid->chromaPushed = false;
     
 done:
     pthread_mutex_unlock(&(vid->frameLock));
@@ -829,6 +862,27 @@ done:
     return (ret);
 }
 
+jint ar2VideoPushChromaAndroid(AR2VideoParamAndroidT *vid, JNIEnv *env, jobject obj,
+                               jobject buf1, jint buf1PixelStride, jint buf1RowStride,
+                               jobject buf2, jint buf2PixelStride, jint buf2RowStride)
+{
+    int ret = -1;
+    if (!vid) return -1; // Sanity check.
+    
+    pthread_mutex_lock(&(vid->frameLock));
+    if (!vid->pushInited || !vid->capturing) goto done; // Both ar2VideoPushInitAndroid AND ar2VideoCapStartAndroid must have been called.
+    
+    // Only the chroma plane is replaced. The frame is not marked new until its luma is pushed, so
+    // a video background drawn in between does not mix this chroma with the previous luma.
+    if (!copyChromaAndroid(vid, env, buf1, buf1PixelStride, buf1RowStride, buf2, buf2PixelStride, buf2RowStride)) goto done;
+    vid->chromaPushed = true;
+    ret = 0;
+    
+done:
+    pthread_mutex_unlock(&(vid->frameLock));
+    return (ret);
+}
+
 jint ar2VideoPushFinalAndroid(AR2VideoParamAndroidT *vid, JNIEnv *env, jobject obj)
 {
     int ret = -1;
@@ -84,6 +84,9 @@ jint ar2VideoPushAndroid2(AR2VideoParamAndroidT *vid, JNIEnv *env, jobject obj,
                           jobject buf1, jint buf1PixelStride, jint buf1RowStride,
                           jobject buf2, jint buf2PixelStride, jint buf2RowStride,
                           jobject buf3, jint buf3PixelStride, jint buf3RowStride);
+jint ar2VideoPushChromaAndroid(AR2VideoParamAndroidT *vid, JNIEnv *env, jobject obj,
+                               jobject buf1, jint buf1PixelStride, jint buf1RowStride,
+                               jobject buf2, jint buf2PixelStride, jint buf2RowStride);
 jint ar2VideoPushFinalAndroid(AR2VideoParamAndroidT *vid, JNIEnv *env, jobject obj);
 
 #ifdef  __cplusplus
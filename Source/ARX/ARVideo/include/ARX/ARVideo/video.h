@@ -528,6 +528,9 @@ jint ar2VideoPush2(AR2VideoParamT *vid, JNIEnv *env, jobject obj,
                    jobject buf1, jint buf1PixelStride, jint buf1RowStride,
                    jobject buf2, jint buf2PixelStride, jint buf2RowStride,
                    jobject buf3, jint buf3PixelStride, jint buf3RowStride);
+jint ar2VideoPushChroma(AR2VideoParamT *vid, JNIEnv *env, jobject obj,
+                        jobject buf1, jint buf1PixelStride, jint buf1RowStride,
+                        jobject buf2, jint buf2PixelStride, jint buf2RowStride);
 jint ar2VideoPushFinal(AR2VideoParamT *vid, JNIEnv *env, jobject obj);
 #endif // ARX_TARGET_PLATFORM_ANDROID
 
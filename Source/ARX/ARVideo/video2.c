@@ -1273,6 +1273,19 @@ jint ar2VideoPush2(AR2VideoParamT *vid, JNIEnv *env, jobject obj,
     return (-1);
 }
 
+jint ar2VideoPushChroma(AR2VideoParamT *vid, JNIEnv *env, jobject obj,
+                        jobject buf1, jint buf1PixelStride, jint buf1RowStride,
+                        jobject buf2, jint buf2PixelStride, jint buf2RowStride)
+{
+    if (!vid) return -1;
+#ifdef ARVIDEO_INPUT_ANDROID
+    if (vid->module == AR_VIDEO_MODULE_ANDROID) {
+        return ar2VideoPushChromaAndroid((AR2VideoParamAndroidT *)vid->moduleParam, env, obj, buf1, buf1PixelStride, buf1RowStride, buf2, buf2PixelStride, buf2RowStride);
+    }
+#endif
+    return (-1);
+}
+
 jint ar2VideoPushFinal(AR2VideoParamT *vid, JNIEnv *env, jobject obj)
 {
     if (!vid) return -1;
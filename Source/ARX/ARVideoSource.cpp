@@ -463,6 +463,15 @@ jint ARVideoSource::androidVideoPush2(JNIEnv *env, jobject obj,
     return (ar2VideoPush2(m_vid, env, obj, buf0, buf0PixelStride, buf0RowStride, buf1, buf1PixelStride, buf1RowStride, buf2, buf2PixelStride, buf2RowStride, buf3, buf3PixelStride, buf3RowStride));
 }
 
+jint ARVideoSource::androidVideoPushChroma(JNIEnv *env, jobject obj,
+                                           jobject buf1, jint buf1PixelStride, jint buf1RowStride,
+                                           jobject buf2, jint buf2PixelStride, jint buf2RowStride)
+{
+    if (deviceState != DEVICE_RUNNING && deviceState != DEVICE_GETTING_READY) return 0;
+
+    return (ar2VideoPushChroma(m_vid, env, obj, buf1, buf1PixelStride, buf1RowStride, buf2, buf2PixelStride, buf2RowStride));
+}
+
 jint ARVideoSource::androidVideoPushFinal(JNIEnv *env, jobject obj)
 {
     if (deviceState == DEVICE_CLOSED) {
@@ -53,6 +53,7 @@
 #  endif
 #endif
 #include <stdio.h>
+#include <string.h>
 #if !ARX_TARGET_PLATFORM_WINDOWS && !ARX_TARGET_PLATFORM_WINRT
 #  include <pthread.h>
 #endif
@@ -422,6 +423,54 @@ float arwGetTrackerOptionFloat(int option)
     return (NAN);
 }
 
+static bool trackerOptionIsBool(int option)
+{
+    return (option == ARW_TRACKER_OPTION_NFT_MULTIMODE || option == ARW_TRACKER_OPTION_SQUARE_DEBUG_MODE);
+}
+
+static bool trackerOptionIsFloat(int option)
+{
+    return (option == ARW_TRACKER_OPTION_SQUARE_BORDER_SIZE);
+}
+
+static int getTrackerOptionAsInt(int option)
+{
+    if (trackerOptionIsBool(option)) return (arwGetTrackerOptionBool(option) ? 1 : 0);
+    if (trackerOptionIsFloat(option)) {
+        float f = arwGetTrackerOptionFloat(option);
+        int value;
+        memcpy(&value, &f, sizeof(value));
+        return value;
+    }
+    return arwGetTrackerOptionInt(option);
+}
+
+bool arwGetTrackerOptions(int count, const int *options, int *values)
+{
+    if (!gARTK || count < 0 || (count > 0 && (!options || !values))) return false;
+    for (int i = 0; i < count; i++) values[i] = getTrackerOptionAsInt(options[i]);
+    return true;
+}
+
+bool arwSetTrackerOptions(int count, const int *options, int *values)
+{
+    if (!gARTK || count < 0 || (count > 0 && (!options || !values))) return false;
+    for (int i = 0; i < count; i++) {
+        int option = options[i];
+        if (trackerOptionIsBool(option)) {
+            arwSetTrackerOptionBool(option, values[i] != 0);
+        } else if (trackerOptionIsFloat(option)) {
+            float f;
+            memcpy(&f, &values[i], sizeof(f));
+            arwSetTrackerOptionFloat(option, f);
+        } else {
+            arwSetTrackerOptionInt(option, values[i]);
+        }
+        values[i] = getTrackerOptionAsInt(option);
+    }
+    return true;
+}
+
 // ----------------------------------------------------------------------------------------------------
 #pragma mark  Trackable management
 // ---------------------------------------------------------------------------------------------
@@ -519,6 +568,46 @@ bool arwQueryTrackableVisibilityAndTransformationStereo(int trackableUID, float
     return trackable->visible;
 }
 
+int arwQueryTrackableVisibilityAndTransformations(int count, const int *trackableUIDs, int *visibility, float *matrices)
+{
+    ARTrackable *trackable;
+    int visibleCount = 0;
+    
+    if (!gARTK || count < 0 || (count > 0 && (!trackableUIDs || !visibility || !matrices))) return -1;
+    for (int i = 0; i < (count + 31) / 32; i++) visibility[i] = 0;
+    for (int i = 0; i < count; i++) {
+        if (!(trackable = gARTK->findTrackable(trackableUIDs[i]))) continue;
+        float *matrix = matrices + i*16;
+        for (int j = 0; j < 16; j++) matrix[j] = (float)trackable->transformationMatrix[j];
+        if (trackable->visible) {
+            visibility[i / 32] |= (1u << (i % 32));
+            visibleCount++;
+        }
+    }
+    return visibleCount;
+}
+
+int arwQueryTrackableVisibilityAndTransformationsStereo(int count, const int *trackableUIDs, int *visibility, float *matricesL, float *matricesR)
+{
+    ARTrackable *trackable;
+    int visibleCount = 0;
+    
+    if (!gARTK || count < 0 || (count > 0 && (!trackableUIDs || !visibility || !matricesL || !matricesR))) return -1;
+    for (int i = 0; i < (count + 31) / 32; i++) visibility[i] = 0;
+    for (int i = 0; i < count; i++) {
+        if (!(trackable = gARTK->findTrackable(trackableUIDs[i]))) continue;
+        float *matrixL = matricesL + i*16;
+        float *matrixR = matricesR + i*16;
+        for (int j = 0; j < 16; j++) matrixL[j] = (float)trackable->transformationMatrix[j];
+        for (int j = 0; j < 16; j++) matrixR[j] = (float)trackable->transformationMatrixR[j];
+        if (trackable->visible) {
+            visibility[i / 32] |= (1u << (i % 32));
+            visibleCount++;
+        }
+    }
+    return visibleCount;
+}
+
 // ----------------------------------------------------------------------------------------------------
 #pragma mark  Trackable patterns
 // ---------------------------------------------------------------------------------------------
@@ -839,6 +928,11 @@ extern "C" {
 	JNIEXPORT jint JNICALL JNIFUNCTION(arwRemoveAllTrackables(JNIEnv *env, jobject obj));
     JNIEXPORT jboolean JNICALL JNIFUNCTION(arwQueryTrackableVisibilityAndTransformation(JNIEnv *env, jobject obj, jint trackableUID, jfloatArray matrix));
     JNIEXPORT jboolean JNICALL JNIFUNCTION(arwQueryTrackableVisibilityAndTransformationStereo(JNIEnv *env, jobject obj, jint trackableUID, jfloatArray matrixL, jfloatArray matrixR));
+    JNIEXPORT jint JNICALL JNIFUNCTION(arwQueryTrackableVisibilityAndTransformations(JNIEnv *env, jobject obj, jint count, jintArray trackableUIDs, jintArray visibility, jfloatArray matrices));
+    JNIEXPORT jint JNICALL JNIFUNCTION(arwQueryTrackableVisibilityAndTransformationsStereo(JNIEnv *env, jobject obj, jint count, jintArray trackableUIDs, jintArray visibility, jfloatArray matricesL, jfloatArray matricesR));
+    JNIEXPORT jboolean JNICALL JNIFUNCTION(arwSetPoseBuffer(JNIEnv *env, jobject obj, jobject buffer));
+    JNIEXPORT jboolean JNICALL JNIFUNCTION(arwQueryTrackableVisibilityAndTransformationToPoseBuffer(JNIEnv *env, jobject obj, jint trackableUID, jint index));
+    JNIEXPORT jint JNICALL JNIFUNCTION(arwQueryTrackableVisibilityAndTransformationsToPoseBuffer(JNIEnv *env, jobject obj, jint count, jintArray trackableUIDs, jintArray visibility));
 	JNIEXPORT jint JNICALL JNIFUNCTION(arwGetTrackablePatternCount(JNIEnv *env, jobject obj, int trackableUID));
     JNIEXPORT void JNICALL JNIFUNCTION(arwSetTrackerOptionBool(JNIEnv *env, jobject obj, jint option, jboolean value));
     JNIEXPORT void JNICALL JNIFUNCTION(arwSetTrackerOptionInt(JNIEnv *env, jobject obj, jint option, jint value));
@@ -846,6 +940,8 @@ extern "C" {
     JNIEXPORT jboolean JNICALL JNIFUNCTION(arwGetTrackerOptionBool(JNIEnv *env, jobject obj, jint option));
     JNIEXPORT jint JNICALL JNIFUNCTION(arwGetTrackerOptionInt(JNIEnv *env, jobject obj, jint option));
     JNIEXPORT jfloat JNICALL JNIFUNCTION(arwGetTrackerOptionFloat(JNIEnv *env, jobject obj, jint option));
+    JNIEXPORT jboolean JNICALL JNIFUNCTION(arwGetTrackerOptions(JNIEnv *env, jobject obj, jint count, jintArray options, jintArray values));
+    JNIEXPORT jboolean JNICALL JNIFUNCTION(arwSetTrackerOptions(JNIEnv *env, jobject obj, jint count, jintArray options, jintArray values));
     JNIEXPORT void JNICALL JNIFUNCTION(arwSetTrackableOptionBool(JNIEnv *env, jobject obj, jint trackableUID, jint option, jboolean value));
     JNIEXPORT void JNICALL JNIFUNCTION(arwSetTrackableOptionInt(JNIEnv *env, jobject obj, jint trackableUID, jint option, jint value));
     JNIEXPORT void JNICALL JNIFUNCTION(arwSetTrackableOptionFloat(JNIEnv *env, jobject obj, jint trackableUID, jint option, jfloat value));
@@ -861,6 +957,9 @@ extern "C" {
                                        jobject buf1, jint buf1PixelStride, jint buf1RowStride,
                                        jobject buf2, jint buf2PixelStride, jint buf2RowStride,
                                        jobject buf3, jint buf3PixelStride, jint buf3RowStride));
+    JNIEXPORT jint JNICALL JNIFUNCTION(arwAndroidVideoPushChroma(JNIEnv *env, jobject obj, jint videoSourceIndex,
+                                       jobject buf1, jint buf1PixelStride, jint buf1RowStride,
+                                       jobject buf2, jint buf2PixelStride, jint buf2RowStride));
     JNIEXPORT jint JNICALL JNIFUNCTION(arwAndroidVideoPushFinal(JNIEnv *env, jobject obj, jint videoSourceIndex));
 
 	// ------------------------------------------------------------------------------------
@@ -1118,6 +1217,121 @@ JNIEXPORT jboolean JNICALL JNIFUNCTION(arwQueryTrackableVisibilityAndTransformat
 	return true;
 }
 
+JNIEXPORT jint JNICALL JNIFUNCTION(arwQueryTrackableVisibilityAndTransformations(JNIEnv *env, jobject obj, jint count, jintArray trackableUIDs, jintArray visibility, jfloatArray matrices))
+{
+    if (count <= 0) return 0;
+    if (!trackableUIDs || !visibility || !matrices ||
+        env->GetArrayLength(trackableUIDs) < count || env->GetArrayLength(visibility) < (count + 31) / 32 || env->GetArrayLength(matrices) < count * 16) {
+        ARLOGe("arwQueryTrackableVisibilityAndTransformations(): Arrays too short for %d trackables.\n", count);
+        return -1;
+    }
+    
+    // No JNI calls may be made while the arrays are held.
+    jint *uids = (jint *)env->GetPrimitiveArrayCritical(trackableUIDs, NULL);
+    jint *bits = (jint *)env->GetPrimitiveArrayCritical(visibility, NULL);
+    jfloat *m = (jfloat *)env->GetPrimitiveArrayCritical(matrices, NULL);
+    int ret = -1;
+    if (uids && bits && m) ret = arwQueryTrackableVisibilityAndTransformations(count, uids, bits, m);
+    if (m) env->ReleasePrimitiveArrayCritical(matrices, m, 0);
+    if (bits) env->ReleasePrimitiveArrayCritical(visibility, bits, 0);
+    if (uids) env->ReleasePrimitiveArrayCritical(trackableUIDs, uids, JNI_ABORT);
+    return ret;
+}
+
+JNIEXPORT jint JNICALL JNIFUNCTION(arwQueryTrackableVisibilityAndTransformationsStereo(JNIEnv *env, jobject obj, jint count, jintArray trackableUIDs, jintArray visibility, jfloatArray matricesL, jfloatArray matricesR))
+{
+    if (count <= 0) return 0;
+    if (!trackableUIDs || !visibility || !matricesL || !matricesR ||
+        env->GetArrayLength(trackableUIDs) < count || env->GetArrayLength(visibility) < (count + 31) / 32 ||
+        env->GetArrayLength(matricesL) < count * 16 || env->GetArrayLength(matricesR) < count * 16) {
+        ARLOGe("arwQueryTrackableVisibilityAndTransformationsStereo(): Arrays too short for %d trackables.\n", count);
+        return -1;
+    }
+    
+    // No JNI calls may be made while the arrays are held.
+    jint *uids = (jint *)env->GetPrimitiveArrayCritical(trackableUIDs, NULL);
+    jint *bits = (jint *)env->GetPrimitiveArrayCritical(visibility, NULL);
+    jfloat *mL = (jfloat *)env->GetPrimitiveArrayCritical(matricesL, NULL);
+    jfloat *mR = (jfloat *)env->GetPrimitiveArrayCritical(matricesR, NULL);
+    int ret = -1;
+    if (uids && bits && mL && mR) ret = arwQueryTrackableVisibilityAndTransformationsStereo(count, uids, bits, mL, mR);
+    if (mR) env->ReleasePrimitiveArrayCritical(matricesR, mR, 0);
+    if (mL) env->ReleasePrimitiveArrayCritical(matricesL, mL, 0);
+    if (bits) env->ReleasePrimitiveArrayCritical(visibility, bits, 0);
+    if (uids) env->ReleasePrimitiveArrayCritical(trackableUIDs, uids, JNI_ABORT);
+    return ret;
+}
+
+// Direct buffer registered with arwSetPoseBuffer, into which poses are written without passing through a Java array.
+// The queries may run on several threads while the buffer is replaced, so all three variables are only accessed
+// with gPoseBufferLock held, and queries hold it while writing so that the buffer is not released under them.
+static pthread_mutex_t gPoseBufferLock = PTHREAD_MUTEX_INITIALIZER;
+static jobject gPoseBuffer = NULL;
+static float *gPoseBufferFloats = NULL;
+static jlong gPoseBufferCapacity = 0; // In floats.
+
+JNIEXPORT jboolean JNICALL JNIFUNCTION(arwSetPoseBuffer(JNIEnv *env, jobject obj, jobject buffer))
+{
+    float *floats = NULL;
+    jlong capacity = 0;
+    if (buffer) {
+        floats = (float *)env->GetDirectBufferAddress(buffer);
+        capacity = env->GetDirectBufferCapacity(buffer);
+        if (!floats || capacity < 16) {
+            ARLOGe("arwSetPoseBuffer(): Buffer is not a direct buffer with room for at least one matrix.\n");
+            floats = NULL;
+            capacity = 0;
+        }
+    }
+
+    pthread_mutex_lock(&gPoseBufferLock);
+    if (gPoseBuffer) env->DeleteGlobalRef(gPoseBuffer);
+    gPoseBuffer = (floats ? env->NewGlobalRef(buffer) : NULL); // Keeps the buffer's memory alive while registered.
+    gPoseBufferFloats = floats;
+    gPoseBufferCapacity = capacity;
+    pthread_mutex_unlock(&gPoseBufferLock);
+    return (!buffer || floats);
+}
+
+JNIEXPORT jboolean JNICALL JNIFUNCTION(arwQueryTrackableVisibilityAndTransformationToPoseBuffer(JNIEnv *env, jobject obj, jint trackableUID, jint index))
+{
+    bool ret = false;
+    pthread_mutex_lock(&gPoseBufferLock);
+    if (!gPoseBufferFloats || index < 0 || ((jlong)index + 1) * 16 > gPoseBufferCapacity) {
+        ARLOGe("arwQueryTrackableVisibilityAndTransformationToPoseBuffer(): No room for matrix %d in pose buffer.\n", index);
+    } else {
+        ret = arwQueryTrackableVisibilityAndTransformation(trackableUID, gPoseBufferFloats + index*16);
+    }
+    pthread_mutex_unlock(&gPoseBufferLock);
+    return ret;
+}
+
+JNIEXPORT jint JNICALL JNIFUNCTION(arwQueryTrackableVisibilityAndTransformationsToPoseBuffer(JNIEnv *env, jobject obj, jint count, jintArray trackableUIDs, jintArray visibility))
+{
+    if (count <= 0) return 0;
+    if (!trackableUIDs || !visibility || env->GetArrayLength(trackableUIDs) < count || env->GetArrayLength(visibility) < (count + 31) / 32) {
+        ARLOGe("arwQueryTrackableVisibilityAndTransformationsToPoseBuffer(): Arrays too short for %d trackables.\n", count);
+        return -1;
+    }
+    
+    // Taken before the arrays, so that no thread blocks on it while holding them.
+    pthread_mutex_lock(&gPoseBufferLock);
+    if (!gPoseBufferFloats || (jlong)count * 16 > gPoseBufferCapacity) {
+        pthread_mutex_unlock(&gPoseBufferLock);
+        ARLOGe("arwQueryTrackableVisibilityAndTransformationsToPoseBuffer(): No room for %d matrices in pose buffer.\n", count);
+        return -1;
+    }
+    // No JNI calls may be made while the arrays are held.
+    jint *uids = (jint *)env->GetPrimitiveArrayCritical(trackableUIDs, NULL);
+    jint *bits = (jint *)env->GetPrimitiveArrayCritical(visibility, NULL);
+    int ret = -1;
+    if (uids && bits) ret = arwQueryTrackableVisibilityAndTransformations(count, uids, bits, gPoseBufferFloats);
+    if (bits) env->ReleasePrimitiveArrayCritical(visibility, bits, 0);
+    if (uids) env->ReleasePrimitiveArrayCritical(trackableUIDs, uids, JNI_ABORT);
+    pthread_mutex_unlock(&gPoseBufferLock);
+    return ret;
+}
+
 JNIEXPORT jint JNICALL JNIFUNCTION(arwGetTrackablePatternCount(JNIEnv *env, jobject obj, int trackableUID)) 
 {
 	return arwGetTrackablePatternCount(trackableUID);
@@ -1153,6 +1367,34 @@ JNIEXPORT jfloat JNICALL JNIFUNCTION(arwGetTrackerOptionFloat(JNIEnv *env, jobje
     return arwGetTrackerOptionFloat(option);
 }
 
+static jboolean trackerOptions(JNIEnv *env, jint count, jintArray options, jintArray values, bool set)
+{
+    if (count <= 0) return JNI_TRUE;
+    if (!options || !values || env->GetArrayLength(options) < count || env->GetArrayLength(values) < count) {
+        ARLOGe("arw%sTrackerOptions(): Arrays too short for %d options.\n", (set ? "Set" : "Get"), count);
+        return JNI_FALSE;
+    }
+
+    // No JNI calls may be made while the arrays are held.
+    jint *o = (jint *)env->GetPrimitiveArrayCritical(options, NULL);
+    jint *v = (jint *)env->GetPrimitiveArrayCritical(values, NULL);
+    bool ok = false;
+    if (o && v) ok = (set ? arwSetTrackerOptions(count, o, v) : arwGetTrackerOptions(count, o, v));
+    if (v) env->ReleasePrimitiveArrayCritical(values, v, 0);
+    if (o) env->ReleasePrimitiveArrayCritical(options, o, JNI_ABORT);
+    return (ok ? JNI_TRUE : JNI_FALSE);
+}
+
+JNIEXPORT jboolean JNICALL JNIFUNCTION(arwGetTrackerOptions(JNIEnv *env, jobject obj, jint count, jintArray options, jintArray values))
+{
+    return trackerOptions(env, count, options, values, false);
+}
+
+JNIEXPORT jboolean JNICALL JNIFUNCTION(arwSetTrackerOptions(JNIEnv *env, jobject obj, jint count, jintArray options, jintArray values))
+{
+    return trackerOptions(env, count, options, values, true);
+}
+
 JNIEXPORT void JNICALL JNIFUNCTION(arwSetTrackableOptionInt(JNIEnv *env, jobject obj, jint trackableUID, jint option, jint value))
 {
     return arwSetTrackableOptionInt(trackableUID, option, value);
@@ -1217,6 +1459,17 @@ JNIEXPORT jint JNICALL JNIFUNCTION(arwAndroidVideoPush2(JNIEnv *env, jobject obj
     return gARTK->androidVideoPush2(env, obj, videoSourceIndex, buf0, buf0PixelStride, buf0RowStride, buf1, buf1PixelStride, buf1RowStride, buf2, buf2PixelStride, buf2RowStride, buf3, buf3PixelStride, buf3RowStride);
 }
 
+JNIEXPORT jint JNICALL JNIFUNCTION(arwAndroidVideoPushChroma(JNIEnv *env, jobject obj, jint videoSourceIndex,
+                                                             jobject buf1, jint buf1PixelStride, jint buf1RowStride,
+                                                             jobject buf2, jint buf2PixelStride, jint buf2RowStride))
+{
+    if (!gARTK) {
+        return -1;
+    }
+
+    return gARTK->androidVideoPushChroma(env, obj, videoSourceIndex, buf1, buf1PixelStride, buf1RowStride, buf2, buf2PixelStride, buf2RowStride);
+}
+
 JNIEXPORT jint JNICALL JNIFUNCTION(arwAndroidVideoPushFinal(JNIEnv *env, jobject obj, jint videoSourceIndex))
 {
     if (!gARTK) {
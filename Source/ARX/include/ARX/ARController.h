@@ -226,6 +226,9 @@ public:
                            jobject buf1, jint buf1PixelStride, jint buf1RowStride,
                            jobject buf2, jint buf2PixelStride, jint buf2RowStride,
                            jobject buf3, jint buf3PixelStride, jint buf3RowStride);
+    jint androidVideoPushChroma(JNIEnv *env, jobject obj, jint videoSourceIndex,
+                                jobject buf1, jint buf1PixelStride, jint buf1RowStride,
+                                jobject buf2, jint buf2PixelStride, jint buf2RowStride);
     jint androidVideoPushFinal(JNIEnv *env, jobject obj, jint videoSourceIndex);
 #endif
     
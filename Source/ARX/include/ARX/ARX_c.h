@@ -452,6 +452,32 @@ extern "C" {
      * @return floating-point value of option, or NAN if an error occurred.
      */
     ARX_EXTERN float arwGetTrackerOptionFloat(int option);
+
+    /**
+     * Get several options associated with a tracker at once.
+     *
+     * Values are returned as ints: boolean options as 0 or 1, floating-point options as the bit
+     * pattern of the float, and integer options as they are.
+     * @param count The number of options to get.
+     * @param options An array of count symbolic constants identifying the tracker options to get.
+     * @param values An array of count ints to populate with the values of the options.
+     * @return true if successful, false if an error occurred.
+     */
+    ARX_EXTERN bool arwGetTrackerOptions(int count, const int *options, int *values);
+
+    /**
+     * Set several options associated with a tracker at once.
+     *
+     * Equivalent to calling arwSetTrackerOptionBool, arwSetTrackerOptionInt or arwSetTrackerOptionFloat
+     * for each option in turn, followed by the corresponding getter.
+     * @param count The number of options to set.
+     * @param options An array of count symbolic constants identifying the tracker options to set.
+     * @param values An array of count values to set, encoded as for arwGetTrackerOptions. On return,
+     *     holds the value of each option after it was set, which differs from the value passed if
+     *     the tracker rejected it.
+     * @return true if successful, false if an error occurred.
+     */
+    ARX_EXTERN bool arwSetTrackerOptions(int count, const int *options, int *values);
     
     // ----------------------------------------------------------------------------------------------------
 #pragma mark  Trackable management
@@ -522,6 +548,38 @@ extern "C" {
 	 * @return			true if the specified trackable is visible, false if not, or an error occurred
 	 */
 	ARX_EXTERN bool arwQueryTrackableVisibilityAndTransformationStereo(int trackableUID, float matrixL[16], float matrixR[16]);
+
+	/**
+	 * Returns the visibility and pose of several trackables at once.
+	 *
+	 * Equivalent to calling arwQueryTrackableVisibilityAndTransformation for each trackable in turn,
+	 * but allows callers with many trackables to make a single call per frame.
+	 * @param count		The number of trackables to query.
+	 * @param trackableUIDs	An array of count unique identifiers (UIDs) of the trackables to query.
+	 * @param visibility	An array of (count + 31) / 32 ints to populate with a visibility bitset. Bit (i % 32)
+	 *     of element (i / 32) is set if trackable i is visible, and cleared otherwise.
+	 * @param matrices	An array of count * 16 floats to populate with OpenGL-compatible transformation matrices.
+	 *     The matrix of trackable i is written at offset i * 16. The matrix of a trackable which could not be
+	 *     located is left unchanged.
+	 * @return			The number of visible trackables, or -1 if an error occurred.
+	 */
+	ARX_EXTERN int arwQueryTrackableVisibilityAndTransformations(int count, const int *trackableUIDs, int *visibility, float *matrices);
+
+	/**
+	 * Returns the visibility and stereo pose of several trackables at once.
+	 *
+	 * Equivalent to calling arwQueryTrackableVisibilityAndTransformationStereo for each trackable in turn.
+	 * @param count		The number of trackables to query.
+	 * @param trackableUIDs	An array of count unique identifiers (UIDs) of the trackables to query.
+	 * @param visibility	An array of (count + 31) / 32 ints to populate with a visibility bitset, as for
+	 *     arwQueryTrackableVisibilityAndTransformations.
+	 * @param matricesL	An array of count * 16 floats to populate with transformation matrices for the left camera.
+	 * @param matricesR	An array of count * 16 floats to populate with transformation matrices for the right camera.
+	 *     The matrices of trackable i are written at offset i * 16.
+	 * @return			The number of visible trackables, or -1 if an error occurred.
+	 * @see arwQueryTrackableVisibilityAndTransformations
+	 */
+	ARX_EXTERN int arwQueryTrackableVisibilityAndTransformationsStereo(int count, const int *trackableUIDs, int *visibility, float *matricesL, float *matricesR);
 	
 	/**
 	 * Returns the number of pattern images associated with the specified trackable. A single square marker trackable has
@@ -68,10 +68,18 @@ import org.artoolkitx.arx.arxj.camera.CameraAccessHandler;
 import org.artoolkitx.arx.arxj.camera.CameraEventListener;
 import org.artoolkitx.arx.arxj.camera.CameraEventListenerImpl;
 import org.artoolkitx.arx.arxj.camera.CameraPreferencesActivity;
+import org.artoolkitx.arx.arxj.camera.CameraThreadingModel;
+import org.artoolkitx.arx.arxj.camera.FrameDropPolicy;
+import org.artoolkitx.arx.arxj.camera.FrameRing;
 import org.artoolkitx.arx.arxj.camera.FrameListener;
 import org.artoolkitx.arx.arxj.camera.FrameListenerImpl;
+import org.artoolkitx.arx.arxj.camera.FrameRecorder;
+import org.artoolkitx.arx.arxj.camera.FrameSource;
+import org.artoolkitx.arx.arxj.camera.StereoCameraEventListener;
 import org.artoolkitx.arx.arxj.rendering.ARRenderer;
 
+import java.io.File;
+
 /**
  * An activity which can be subclassed to create an AR application. ARActivity handles almost all of
  * the required operations to create a simple augmented reality application.
@@ -108,6 +116,11 @@ public abstract class ARActivity extends /*AppCompat*/Activity implements View.O
 
     private Context mContext;
     private CameraAccessHandler mCameraAccessHandler;
+    /**
+     * Handler of the right camera when tracking in stereo, otherwise null.
+     */
+    private CameraAccessHandler mRightCameraAccessHandler;
+    private FrameSource mFrameSource;
     private ImageButton mConfigButton;
     private GLSurfaceView mGlView;
 
@@ -152,6 +165,58 @@ public abstract class ARActivity extends /*AppCompat*/Activity implements View.O
      */
     protected abstract FrameLayout supplyFrameLayout();
 
+    /**
+     * Allows subclasses to choose on which threads camera frames are acquired and processed.
+     * By default frames are acquired on a camera thread and tracked on a separate detection thread.
+     *
+     * @return The {@link CameraThreadingModel} to use.
+     */
+    protected CameraThreadingModel supplyCameraThreadingModel() {
+        return CameraThreadingModel.CAMERA_AND_DETECTION_THREADS;
+    }
+
+    /**
+     * Allows subclasses to choose what happens to new camera frames while detection is falling
+     * behind. Only used with {@link CameraThreadingModel#CAMERA_AND_DETECTION_THREADS}.
+     *
+     * @return The {@link FrameDropPolicy} to use.
+     */
+    protected FrameDropPolicy supplyFrameDropPolicy() {
+        return FrameDropPolicy.DROP_OLDEST;
+    }
+
+    /**
+     * Allows subclasses to supply frames from a source other than the device camera, e.g. a
+     * recorded sequence. When a source is supplied, the camera is not opened.
+     *
+     * @return The {@link FrameSource} to use, or null to use the device camera (the default).
+     */
+    protected FrameSource supplyFrameSource() {
+        return null;
+    }
+
+    /**
+     * Allows subclasses to record the frames passed to the ARController into a file, for later
+     * replay with {@link org.artoolkitx.arx.arxj.camera.RecordingFrameSource}.
+     *
+     * @return The file to record to, or null not to record (the default).
+     */
+    protected File supplyFrameRecordingFile() {
+        return null;
+    }
+
+    /**
+     * Allows subclasses to track with a stereo pair of cameras. When a listener is supplied, the
+     * cameras it names are opened in place of the camera chosen in the preferences, and frame
+     * sources and recording are not used.
+     *
+     * @param frameListener The listener to pass to the {@link StereoCameraEventListener}.
+     * @return The {@link StereoCameraEventListener} to use, or null to track with a single camera (the default).
+     */
+    protected StereoCameraEventListener supplyStereoCameraEventListener(FrameListener frameListener) {
+        return null;
+    }
+
     @Override
     protected void onStart() {
         super.onStart();
@@ -186,8 +251,31 @@ public abstract class ARActivity extends /*AppCompat*/Activity implements View.O
         mGlView = new GLSurfaceView(this);
 
         FrameListener frameListener = new FrameListenerImpl(renderer, this, mGlView);
-        CameraEventListener cameraEventListener = new CameraEventListenerImpl(this, frameListener);
-        mCameraAccessHandler = AndroidUtils.createCameraAccessHandler(this, cameraEventListener);
+        StereoCameraEventListener stereoListener = supplyStereoCameraEventListener(frameListener);
+        CameraEventListener cameraEventListener;
+        if (stereoListener != null) {
+            cameraEventListener = stereoListener.getLeftListener();
+            mFrameSource = null;
+        } else {
+            cameraEventListener = new CameraEventListenerImpl(this, frameListener);
+            File recordingFile = supplyFrameRecordingFile();
+            if (recordingFile != null) {
+                cameraEventListener = new FrameRecorder(cameraEventListener, recordingFile);
+            }
+            mFrameSource = supplyFrameSource();
+        }
+        if (mFrameSource == null) {
+            mCameraAccessHandler = AndroidUtils.createCameraAccessHandler(this, cameraEventListener, supplyCameraThreadingModel());
+            mCameraAccessHandler.getCameraSurfaceView().setFrameQueue(FrameRing.DEFAULT_CAPACITY, supplyFrameDropPolicy());
+        }
+        if (stereoListener != null) {
+            mCameraAccessHandler.getCameraSurfaceView().setCameraDeviceId(stereoListener.getLeftCameraDeviceId());
+            mRightCameraAccessHandler = AndroidUtils.createCameraAccessHandler(this, stereoListener.getRightListener(), supplyCameraThreadingModel());
+            mRightCameraAccessHandler.getCameraSurfaceView().setFrameQueue(FrameRing.DEFAULT_CAPACITY, supplyFrameDropPolicy());
+            mRightCameraAccessHandler.getCameraSurfaceView().setCameraDeviceId(stereoListener.getRightCameraDeviceId());
+        } else {
+            mRightCameraAccessHandler = null;
+        }
 
         // Request an OpenGL ES 2.0 compatible context.
         mGlView.setEGLContextClientVersion(2);
@@ -197,7 +285,12 @@ public abstract class ARActivity extends /*AppCompat*/Activity implements View.O
         }
 
         mGlView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY); // Only render when we have a frame (must call requestRender()).
-        mGlView.addOnLayoutChangeListener(new LayoutChangeListenerImpl(this, mCameraAccessHandler));
+        if (mCameraAccessHandler != null) {
+            mGlView.addOnLayoutChangeListener(new LayoutChangeListenerImpl(this, mCameraAccessHandler));
+        }
+        if (mRightCameraAccessHandler != null) {
+            mGlView.addOnLayoutChangeListener(new LayoutChangeListenerImpl(this, mRightCameraAccessHandler));
+        }
 
         Log.i(TAG, "onResume(): GLSurfaceView created");
 
@@ -206,6 +299,13 @@ public abstract class ARActivity extends /*AppCompat*/Activity implements View.O
         Log.i(TAG, "onResume(): Views added to main layout.");
         mGlView.onResume();
 
+        if (mFrameSource != null) {
+            if (!mFrameSource.start(cameraEventListener)) {
+                notifyFinish("The frame source could not be started.");
+            }
+            return;
+        }
+
         if (mCameraAccessHandler.getCameraAccessPermissions()) {
             //No need to go further, must ask user to allow access to the camera first.
             return;
@@ -222,7 +322,12 @@ public abstract class ARActivity extends /*AppCompat*/Activity implements View.O
     protected void onPause() {
         Log.i(TAG, "onPause(): called");
 
-        mCameraAccessHandler.closeCamera();
+        if (mFrameSource != null) {
+            mFrameSource.stop();
+        } else {
+            mCameraAccessHandler.closeCamera();
+            if (mRightCameraAccessHandler != null) mRightCameraAccessHandler.closeCamera();
+        }
 
         if (mGlView != null) {
             mGlView.onPause();
@@ -307,6 +412,7 @@ public abstract class ARActivity extends /*AppCompat*/Activity implements View.O
             }
             Log.i(TAG, "onRequestPermissionsResult(): reset ask for cam access perm");
             mCameraAccessHandler.resetCameraAccessPermissionsFromUser();
+            if (mRightCameraAccessHandler != null) mRightCameraAccessHandler.resetCameraAccessPermissionsFromUser();
         } else {
             super.onRequestPermissionsResult(requestCode, permissions, grantResults);
         }
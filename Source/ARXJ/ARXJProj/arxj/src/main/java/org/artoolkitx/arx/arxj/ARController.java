@@ -39,9 +39,16 @@
 package org.artoolkitx.arx.arxj;
 
 import android.opengl.Matrix;
+import android.os.SystemClock;
 import android.util.Log;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The ARController class is a singleton which manages access to the underlying
@@ -65,6 +72,149 @@ public class ARController {
      * Single instance of the ARController class.
      */
     private static ARController instance = null;
+    /**
+     * Reused by {@link #convert(ByteBuffer[], int[], int[])} to describe array-based frames. One per
+     * thread, as the left and right cameras may push concurrently.
+     */
+    private final ThreadLocal<VideoFrame> convertFrame = new ThreadLocal<VideoFrame>() {
+        @Override
+        protected VideoFrame initialValue() {
+            return new VideoFrame();
+        }
+    };
+    /**
+     * Receives the planes pushed by {@link #convert(int, VideoFrame)}. Test hook only: unit tests,
+     * which run without the native library, replace it through {@link #setVideoPush(VideoPush)}.
+     */
+    interface VideoPush {
+        int push(int videoSourceIndex,
+                 ByteBuffer buf0, int buf0PixelStride, int buf0RowStride,
+                 ByteBuffer buf1, int buf1PixelStride, int buf1RowStride,
+                 ByteBuffer buf2, int buf2PixelStride, int buf2RowStride,
+                 ByteBuffer buf3, int buf3PixelStride, int buf3RowStride);
+
+        int pushChroma(int videoSourceIndex,
+                       ByteBuffer buf1, int buf1PixelStride, int buf1RowStride,
+                       ByteBuffer buf2, int buf2PixelStride, int buf2RowStride);
+    }
+    private static final VideoPush NATIVE_VIDEO_PUSH = new VideoPush() {
+        @Override
+        public int push(int videoSourceIndex,
+                        ByteBuffer buf0, int buf0PixelStride, int buf0RowStride,
+                        ByteBuffer buf1, int buf1PixelStride, int buf1RowStride,
+                        ByteBuffer buf2, int buf2PixelStride, int buf2RowStride,
+                        ByteBuffer buf3, int buf3PixelStride, int buf3RowStride) {
+            return ARX_jni.arwAndroidVideoPush2(videoSourceIndex,
+                    buf0, buf0PixelStride, buf0RowStride,
+                    buf1, buf1PixelStride, buf1RowStride,
+                    buf2, buf2PixelStride, buf2RowStride,
+                    buf3, buf3PixelStride, buf3RowStride);
+        }
+
+        @Override
+        public int pushChroma(int videoSourceIndex,
+                              ByteBuffer buf1, int buf1PixelStride, int buf1RowStride,
+                              ByteBuffer buf2, int buf2PixelStride, int buf2RowStride) {
+            return ARX_jni.arwAndroidVideoPushChroma(videoSourceIndex,
+                    buf1, buf1PixelStride, buf1RowStride,
+                    buf2, buf2PixelStride, buf2RowStride);
+        }
+    };
+    // Not volatile, so that the push path pays nothing for the hook; only set before frames are pushed.
+    private VideoPush videoPush = NATIVE_VIDEO_PUSH;
+    /**
+     * UIDs of the trackables added through this class, in the order they were added.
+     */
+    private int[] trackableUIDs = new int[16];
+    private int trackableCount = 0;
+    /**
+     * Incremented whenever the set of trackables changes.
+     */
+    private volatile int trackableSetVersion = 0;
+    /**
+     * Copy of the trackable UIDs, and scratch arrays, for the visibility query made on the
+     * detection path. Refreshed when the set of trackables changes.
+     */
+    private int[] detectionUIDs = new int[0];
+    private int[] detectionVisibility = new int[0];
+    private float[] detectionMatrices = new float[0];
+    private int detectionCount = 0;
+    private int detectionSetVersion = -1;
+    private volatile DetectionGovernor detectionGovernor = null;
+    /**
+     * Set when the governor should return to detecting every frame. Consumed by the detection
+     * thread, as the governor is confined to it.
+     */
+    private volatile boolean governorResetRequested = false;
+    /**
+     * When set, only the luma plane of planar frames is pushed with the frame. Chroma is pushed
+     * separately, and only when the video background needs it.
+     */
+    private volatile boolean lumaOnlyPush = false;
+    /**
+     * Bit i is set when the video background of source i has shown a new frame since chroma was
+     * last pushed to it.
+     */
+    private final AtomicInteger chromaRequested = new AtomicInteger();
+    /**
+     * Number of frames pushed luma-only to each source, and the number the video background of
+     * each source had seen when it was last drawn. Only counted while luma-only push is enabled.
+     */
+    private final AtomicLongArray lumaOnlyFrameCounts = new AtomicLongArray(2);
+    private final long[] drawnLumaOnlyFrameCounts = new long[2];
+    /**
+     * Set while running with two pushed video sources. Frames may be pushed to each source
+     * concurrently under that source's lock; detection holds both locks, taken in source order, and
+     * runs once both sources hold a frame which has not yet been detected.
+     */
+    private volatile boolean stereo = false;
+    private final Object[] sourceLocks = {new Object(), new Object()};
+    private final boolean[] stereoPending = new boolean[2];
+    /**
+     * ID and sensor timestamp of the most recently pushed frame.
+     */
+    private volatile long frameId = 0;
+    private volatile long frameTimestamp = 0;
+    /**
+     * ID and sensor timestamp of the frame from which the current trackable poses were computed.
+     * poseSequence is odd while detection is updating the poses.
+     */
+    private volatile long poseFrameId = 0;
+    private volatile long poseTimestamp = 0;
+    private volatile long poseSequence = 0;
+    /**
+     * Number of times a pose query is repeated when detection completes while it is being made.
+     */
+    private static final int POSE_READ_RETRIES = 1;
+    /**
+     * Buffer registered with native code for pose queries. Read without a lock by the queries, which
+     * native code serialises with registration; registrations are serialised by poseBufferLock.
+     */
+    private volatile FloatBuffer poseBuffer = null;
+    private final Object poseBufferLock = new Object();
+    private RelativePoseCache relativePoseCache = null;
+    private final TrackableEventDispatcher trackableEvents = new TrackableEventDispatcher();
+    /**
+     * Most recent tracking snapshot, and the snapshots owned by the detection thread for reuse.
+     */
+    // One snapshot published, one held by the renderer while the next is published, and one being filled.
+    private static final int FRAME_POOL_SIZE = 3;
+    private final AtomicReference<ARFrame> publishedFrame = new AtomicReference<ARFrame>();
+    private final ARFrame[] framePool = new ARFrame[FRAME_POOL_SIZE];
+    private boolean framePoolExhausted = false;
+    private volatile boolean framePublishing = false;
+    private volatile float frameNearPlane = 10.0f;
+    private volatile float frameFarPlane = 10000.0f;
+    private final float[] frameProjection = new float[16];
+    private final float[] frameProjectionR = new float[16];
+    private final ProjectionMatrixCache projectionCache = new ProjectionMatrixCache();
+    /**
+     * Java-side copy of the tracker options, loaded on first use. Also the lock for the scratch arrays.
+     */
+    private final TrackerConfig trackerConfig = new TrackerConfig();
+    private boolean trackerConfigLoaded = false;
+    private final int[] trackerOptions = new int[TrackerConfig.FIELD_COUNT];
+    private final int[] trackerValues = new int[TrackerConfig.FIELD_COUNT];
 
     static {
         loadedNative = ARX_jni.loadNativeLibrary();
@@ -109,6 +259,7 @@ public class ARController {
         if (!ARX_jni.arwChangeToResourcesDir(resourcesDirectoryPath)) {
             Log.i(TAG, "Error while attempting to change working directory to resources directory.");
         }
+        invalidateTrackerConfig();
         initedNative = true;
         return true;
     }
@@ -138,6 +289,8 @@ public class ARController {
             return false;
         }
 
+        projectionCache.invalidate();
+        invalidateTrackerConfig();
         if (!ARX_jni.arwStartRunning("", cameraParaPath)) {
             Log.e(TAG, "startWithPushedVideo(): Error starting");
             return false;
@@ -152,6 +305,60 @@ public class ARController {
         return true;
     }
 
+    /**
+     * Initialises the ARController for stereo tracking, with the left and right cameras pushing
+     * frames to video sources 0 and 1 respectively. Frames are then passed in with
+     * {@link #convertAndDetectStereo(int, VideoFrame)}.
+     *
+     * @param videoWidthL     The width of the left video image in pixels.
+     * @param videoHeightL    The height of the left video image in pixels.
+     * @param videoWidthR     The width of the right video image in pixels.
+     * @param videoHeightR    The height of the right video image in pixels.
+     * @param pixelFormat     String with format in which buffers will be pushed by both cameras.
+     * @param cameraParaPathL Path to the camera parameter file of the left camera, as for
+     *                        {@link #startWithPushedVideo(int, int, String, String, int, boolean)}.
+     * @param cameraParaPathR Path to the camera parameter file of the right camera.
+     * @param transL2RPath    Path to the file holding the transformation from the left to the right camera.
+     * @param cameraIndexL    Integer 0-based index of the left camera.
+     * @param cameraIndexR    Integer 0-based index of the right camera.
+     * @return true if initialisation was successful.
+     */
+    public boolean startWithPushedVideoStereo(int videoWidthL, int videoHeightL, int videoWidthR, int videoHeightR, String pixelFormat,
+                                              String cameraParaPathL, String cameraParaPathR, String transL2RPath,
+                                              int cameraIndexL, int cameraIndexR) {
+
+        if (!initedNative) {
+            Log.e(TAG, "startWithPushedVideoStereo(): Cannot start because native interface not inited.");
+            return false;
+        }
+
+        projectionCache.invalidate();
+        invalidateTrackerConfig();
+        if (!ARX_jni.arwStartRunningStereo("", cameraParaPathL, "", cameraParaPathR, transL2RPath)) {
+            Log.e(TAG, "startWithPushedVideoStereo(): Error starting");
+            return false;
+        }
+        if (ARX_jni.arwAndroidVideoPushInit(0, videoWidthL, videoHeightL, pixelFormat, cameraIndexL, 0) < 0 ||
+                ARX_jni.arwAndroidVideoPushInit(1, videoWidthR, videoHeightR, pixelFormat, cameraIndexR, 0) < 0) {
+            Log.e(TAG, "startWithPushedVideoStereo(): Error initialising Android video");
+            return false;
+        }
+        synchronized (stereoPending) {
+            stereoPending[0] = stereoPending[1] = false;
+        }
+        stereo = true;
+
+        return true;
+    }
+
+    /**
+     * Returns true while running with two pushed video sources, as started by
+     * {@link #startWithPushedVideoStereo(int, int, int, int, String, String, String, String, int, int)}.
+     */
+    public boolean isStereo() {
+        return stereo;
+    }
+
     /**
      * Unity helper function to only push the video as opposed to {@link #startWithPushedVideo(int, int, String, String, int, boolean)}
      * which also calls {@link ARX_jni#arwStartRunning(String, String)}
@@ -165,6 +372,7 @@ public class ARController {
      */
     public boolean onlyPushVideo(int videoWidth, int videoHeight, String pixelFormat, int cameraIndex, boolean cameraIsFrontFacing) {
         if(isInited()) {
+            projectionCache.invalidate();
             return (ARX_jni.arwAndroidVideoPushInit(0, videoWidth, videoHeight, pixelFormat,
                     cameraIndex, (cameraIsFrontFacing ? 1 : 0)) < 0);
         }
@@ -178,7 +386,9 @@ public class ARController {
      */
     public boolean getDebugMode() {
         if (!initedNative) return false;
-        return ARX_jni.arwGetTrackerOptionBool(ARX_jni.ARW_TRACKER_OPTION_SQUARE_DEBUG_MODE);
+        synchronized (trackerConfig) {
+            return loadTrackerConfig() && trackerConfig.getDebugMode();
+        }
     }
 
     /**
@@ -188,7 +398,7 @@ public class ARController {
      */
     public void setDebugMode(boolean debug) {
         if (!initedNative) return;
-        ARX_jni.arwSetTrackerOptionBool(ARX_jni.ARW_TRACKER_OPTION_SQUARE_DEBUG_MODE, debug);
+        setTrackerOption(ARX_jni.ARW_TRACKER_OPTION_SQUARE_DEBUG_MODE, debug ? 1 : 0);
     }
 
     /**
@@ -199,7 +409,11 @@ public class ARController {
      */
     public int getThreshold() {
         if (!initedNative) return -1;
-        return ARX_jni.arwGetTrackerOptionInt(ARX_jni.ARW_TRACKER_OPTION_SQUARE_THRESHOLD);
+        synchronized (trackerConfig) {
+            if (!loadTrackerConfig()) return -1;
+            refreshAutoThreshold();
+            return trackerConfig.getThreshold();
+        }
     }
 
     /**
@@ -209,37 +423,211 @@ public class ARController {
      */
     public void setThreshold(int threshold) {
         if (!initedNative) return;
-        ARX_jni.arwSetTrackerOptionInt(ARX_jni.ARW_TRACKER_OPTION_SQUARE_THRESHOLD, threshold);
+        setTrackerOption(ARX_jni.ARW_TRACKER_OPTION_SQUARE_THRESHOLD, threshold);
     }
 
     public float getBorderSize() {
         if (!initedNative) return 0.0f;
-        return ARX_jni.arwGetTrackerOptionFloat(ARX_jni.ARW_TRACKER_OPTION_SQUARE_BORDER_SIZE);
+        synchronized (trackerConfig) {
+            return loadTrackerConfig() ? trackerConfig.getBorderSize() : 0.0f;
+        }
     }
 
     public void setBorderSize(float size) {
         if (!initedNative) return;
-        ARX_jni.arwSetTrackerOptionFloat(ARX_jni.ARW_TRACKER_OPTION_SQUARE_BORDER_SIZE, size);
+        setTrackerOption(ARX_jni.ARW_TRACKER_OPTION_SQUARE_BORDER_SIZE, Float.floatToRawIntBits(size));
     }
 
     public int getPatternSize() {
         if (!initedNative) return 0;
-        return ARX_jni.arwGetTrackerOptionInt(ARX_jni.ARW_TRACKER_OPTION_SQUARE_PATTERN_SIZE);
+        synchronized (trackerConfig) {
+            return loadTrackerConfig() ? trackerConfig.getPatternSize() : 0;
+        }
     }
 
     public void setPatternSize(int size) {
         if (!initedNative) return;
-        ARX_jni.arwSetTrackerOptionInt(ARX_jni.ARW_TRACKER_OPTION_SQUARE_PATTERN_SIZE, size);
+        setTrackerOption(ARX_jni.ARW_TRACKER_OPTION_SQUARE_PATTERN_SIZE, size);
+    }
+
+    /**
+     * Returns the pattern detection mode used by the square tracker.
+     *
+     * @return One of the ARX_jni.AR_TEMPLATE_MATCHING_* or ARX_jni.AR_MATRIX_CODE_DETECTION values, or -1 if the
+     * mode could not be retrieved.
+     */
+    public int getPatternDetectionMode() {
+        if (!initedNative) return -1;
+        synchronized (trackerConfig) {
+            return loadTrackerConfig() ? trackerConfig.getPatternDetectionMode() : -1;
+        }
+    }
+
+    /**
+     * Sets the pattern detection mode used by the square tracker. If luma-only push is enabled
+     * and the new mode requires colour, luma-only push is disabled.
+     *
+     * @param mode One of the ARX_jni.AR_TEMPLATE_MATCHING_* or ARX_jni.AR_MATRIX_CODE_DETECTION values.
+     */
+    public void setPatternDetectionMode(int mode) {
+        if (!initedNative) return;
+        setTrackerOption(ARX_jni.ARW_TRACKER_OPTION_SQUARE_PATTERN_DETECTION_MODE, mode);
+        checkLumaOnlyPush(mode);
+    }
+
+    private void checkLumaOnlyPush(int mode) {
+        if (lumaOnlyPush && !isLumaSufficient(mode)) {
+            Log.w(TAG, "setPatternDetectionMode(): Mode " + mode + " requires colour, disabling luma-only push.");
+            lumaOnlyPush = false;
+        }
+    }
+
+    private static boolean isLumaSufficient(int patternDetectionMode) {
+        return patternDetectionMode == ARX_jni.AR_TEMPLATE_MATCHING_MONO
+                || patternDetectionMode == ARX_jni.AR_MATRIX_CODE_DETECTION
+                || patternDetectionMode == ARX_jni.AR_TEMPLATE_MATCHING_MONO_AND_MATRIX;
+    }
+
+    /**
+     * Enables or disables luma-only push of planar (NV21, NV12, YUV_420_888) frames.
+     * <p/>
+     * When enabled, only the Y plane of each frame is pushed to native code with the frame, which
+     * is all that mono template matching and matrix code detection need. Chroma goes to the video
+     * background through a separate push, made only for a frame following one which the background
+     * has shown (see {@link #drawVideoSettings(int)}), so at most once per frame however often the
+     * background is drawn. Without a video background, chroma is never pushed, and frames which
+     * arrive faster than the background is drawn mostly go without it; the background then shows
+     * them with the chroma of an earlier frame. A background which shows every frame still needs
+     * the chroma of every frame, so in that case nothing is saved. Frames pushed without chroma are
+     * not converted to RGBA by a video source configured to do so.
+     * Luma-only push can only be enabled while the pattern detection mode is one of
+     * AR_TEMPLATE_MATCHING_MONO, AR_MATRIX_CODE_DETECTION or AR_TEMPLATE_MATCHING_MONO_AND_MATRIX.
+     *
+     * @param enable Whether to push only the luma plane.
+     * @return true if the requested setting is now in effect.
+     */
+    public boolean setLumaOnlyPush(boolean enable) {
+        if (!enable) {
+            lumaOnlyPush = false;
+            return true;
+        }
+        if (!isLumaSufficient(getPatternDetectionMode())) {
+            Log.w(TAG, "setLumaOnlyPush(): Current pattern detection mode requires colour.");
+            return false;
+        }
+        lumaOnlyPush = true;
+        return true;
+    }
+
+    public boolean isLumaOnlyPush() {
+        return lumaOnlyPush;
     }
 
     public int getPatternCountMax() {
         if (!initedNative) return 0;
-        return ARX_jni.arwGetTrackerOptionInt(ARX_jni.ARW_TRACKER_OPTION_SQUARE_PATTERN_COUNT_MAX);
+        synchronized (trackerConfig) {
+            return loadTrackerConfig() ? trackerConfig.getPatternCountMax() : 0;
+        }
     }
 
     public void setPatternCountMax(int count) {
         if (!initedNative) return;
-        ARX_jni.arwSetTrackerOptionInt(ARX_jni.ARW_TRACKER_OPTION_SQUARE_PATTERN_COUNT_MAX, count);
+        setTrackerOption(ARX_jni.ARW_TRACKER_OPTION_SQUARE_PATTERN_COUNT_MAX, count);
+    }
+
+    /**
+     * Copies the current tracker options into a {@link TrackerConfig}, with no fields dirty.
+     * <p/>
+     * The options are read from native code once, and afterwards served from a copy kept up to date by
+     * the setters of this class and by {@link #applyTrackerConfig(TrackerConfig)}, so this call is
+     * normally free. The exception is the threshold while an automatic threshold mode is in use, since
+     * the tracker then changes it on every frame; it is read from native code on each call.
+     *
+     * @param config The config to fill.
+     * @return true if successful, false if the options could not be read.
+     */
+    public boolean getTrackerConfig(TrackerConfig config) {
+        if (!initedNative) return false;
+        synchronized (trackerConfig) {
+            if (!loadTrackerConfig()) return false;
+            refreshAutoThreshold();
+            config.set(trackerConfig);
+        }
+        return true;
+    }
+
+    /**
+     * Sets the dirty fields of a {@link TrackerConfig} in the tracker, all in one native call. Each
+     * field set is read back afterwards, so if the tracker rejects a value, the field holds the value in
+     * effect. The fields are then no longer dirty.
+     *
+     * @param config The config to apply.
+     * @return true if successful, false if the options could not be set.
+     */
+    public boolean applyTrackerConfig(TrackerConfig config) {
+        if (!initedNative) return false;
+        int patternDetectionMode;
+        synchronized (trackerConfig) {
+            if (!config.isDirty()) return true;
+            if (!loadTrackerConfig()) return false;
+            int count = config.getDirtyOptions(trackerOptions, trackerValues);
+            if (!ARX_jni.arwSetTrackerOptions(count, trackerOptions, trackerValues)) return false;
+            trackerConfig.setOptions(count, trackerOptions, trackerValues);
+            config.setOptions(count, trackerOptions, trackerValues);
+            patternDetectionMode = trackerConfig.getPatternDetectionMode();
+        }
+        checkLumaOnlyPush(patternDetectionMode);
+        return true;
+    }
+
+    /**
+     * Discards the cached tracker options, so that they are read again from native code on next use.
+     * Only needed if options are changed other than through this class.
+     */
+    public void invalidateTrackerConfig() {
+        synchronized (trackerConfig) {
+            trackerConfigLoaded = false;
+        }
+    }
+
+    /**
+     * Reads all tracker options into the cached config, unless already loaded. Must be called with the
+     * trackerConfig lock held.
+     */
+    private boolean loadTrackerConfig() {
+        if (trackerConfigLoaded) return true;
+        System.arraycopy(TrackerConfig.OPTIONS, 0, trackerOptions, 0, TrackerConfig.FIELD_COUNT);
+        if (!ARX_jni.arwGetTrackerOptions(TrackerConfig.FIELD_COUNT, trackerOptions, trackerValues)) return false;
+        trackerConfig.setOptions(TrackerConfig.FIELD_COUNT, trackerOptions, trackerValues);
+        trackerConfigLoaded = true;
+        return true;
+    }
+
+    /**
+     * Rereads the threshold if the tracker chooses it automatically. Must be called with the
+     * trackerConfig lock held, after {@link #loadTrackerConfig()}.
+     */
+    private void refreshAutoThreshold() {
+        if (trackerConfig.getThresholdMode() == ARX_jni.AR_LABELING_THRESH_MODE_MANUAL) return;
+        trackerOptions[0] = ARX_jni.ARW_TRACKER_OPTION_SQUARE_THRESHOLD;
+        if (ARX_jni.arwGetTrackerOptions(1, trackerOptions, trackerValues)) {
+            trackerConfig.setOptions(1, trackerOptions, trackerValues);
+        }
+    }
+
+    /**
+     * Sets a single tracker option and updates the cached config with the value read back.
+     *
+     * @param value The value, encoded as for {@link ARX_jni#arwSetTrackerOptions(int, int[], int[])}.
+     */
+    private void setTrackerOption(int option, int value) {
+        synchronized (trackerConfig) {
+            trackerOptions[0] = option;
+            trackerValues[0] = value;
+            if (ARX_jni.arwSetTrackerOptions(1, trackerOptions, trackerValues) && trackerConfigLoaded) {
+                trackerConfig.setOptions(1, trackerOptions, trackerValues);
+            }
+        }
     }
 
 
@@ -249,10 +637,41 @@ public class ARController {
      * @param nearPlane The value to use for the near OpenGL clipping plane.
      * @param farPlane The value to use for the far OpenGL clipping plane.
      * @return A float array containing the OpenGL compatible projection matrix, or null if an error occurred.
+     * @see #getProjectionMatrix(float, float, float[])
      */
     public float[] getProjectionMatrix(float nearPlane, float farPlane) {
-        if (!initedNative) return null;
-        return ARX_jni.arwGetProjectionMatrix(nearPlane, farPlane);
+        float[] matrix = new float[16];
+        return getProjectionMatrix(nearPlane, farPlane, matrix) ? matrix : null;
+    }
+
+    /**
+     * Copies the projection matrix calculated from camera parameters into an existing array. Matrices
+     * are cached per near and far plane until video is restarted, so repeated calls for the same planes
+     * neither call native code nor allocate.
+     *
+     * @param nearPlane The value to use for the near OpenGL clipping plane.
+     * @param farPlane  The value to use for the far OpenGL clipping plane.
+     * @param matrix    Array of 16 floats to receive the OpenGL compatible projection matrix.
+     * @return true if successful, false if an error occurred.
+     */
+    public boolean getProjectionMatrix(float nearPlane, float farPlane, float[] matrix) {
+        if (!initedNative) return false;
+        return projectionCache.get(nearPlane, farPlane, matrix);
+    }
+
+    /**
+     * Copies the projection matrices of the left and right cameras into existing arrays. Only
+     * available in stereo mode, and cached in the same way as {@link #getProjectionMatrix(float, float, float[])}.
+     *
+     * @param nearPlane The value to use for the near OpenGL clipping plane.
+     * @param farPlane  The value to use for the far OpenGL clipping plane.
+     * @param matrixL   Array of 16 floats to receive the projection matrix of the left camera.
+     * @param matrixR   Array of 16 floats to receive the projection matrix of the right camera.
+     * @return true if successful, false if not in stereo mode or an error occurred.
+     */
+    public boolean getProjectionMatrixStereo(float nearPlane, float farPlane, float[] matrixL, float[] matrixR) {
+        if (!initedNative || !stereo) return false;
+        return projectionCache.getStereo(nearPlane, farPlane, matrixL, matrixR);
     }
 
     /**
@@ -268,7 +687,87 @@ public class ARController {
      */
     public int addTrackable(String cfg) {
         if (!initedNative) return -1;
-        return ARX_jni.arwAddTrackable(cfg);
+        int trackableUID = ARX_jni.arwAddTrackable(cfg);
+        if (trackableUID >= 0) {
+            synchronized (this) {
+                if (trackableCount == trackableUIDs.length) {
+                    int[] grown = new int[trackableUIDs.length * 2];
+                    System.arraycopy(trackableUIDs, 0, grown, 0, trackableCount);
+                    trackableUIDs = grown;
+                }
+                trackableUIDs[trackableCount++] = trackableUID;
+                trackableSetVersion++;
+            }
+            governorResetRequested = true;
+        }
+        return trackableUID;
+    }
+
+    /**
+     * Removes the trackable with the specified UID from the set of currently active trackables.
+     *
+     * @param trackableUID The unique identifier (UID) of the trackable to remove.
+     * @return true if the trackable was removed.
+     */
+    public boolean removeTrackable(int trackableUID) {
+        if (!initedNative) return false;
+        synchronized (this) {
+            for (int i = 0; i < trackableCount; i++) {
+                if (trackableUIDs[i] == trackableUID) {
+                    System.arraycopy(trackableUIDs, i + 1, trackableUIDs, i, trackableCount - i - 1);
+                    trackableCount--;
+                    trackableSetVersion++;
+                    break;
+                }
+            }
+        }
+        return ARX_jni.arwRemoveTrackable(trackableUID);
+    }
+
+    /**
+     * Removes all trackables from the set of currently active trackables.
+     *
+     * @return The number of trackables removed.
+     */
+    public int removeAllTrackables() {
+        if (!initedNative) return 0;
+        synchronized (this) {
+            trackableCount = 0;
+            trackableSetVersion++;
+        }
+        return ARX_jni.arwRemoveAllTrackables();
+    }
+
+    /**
+     * Returns the number of trackables added through {@link #addTrackable(String)} and not yet removed.
+     */
+    public synchronized int getTrackableCount() {
+        return trackableCount;
+    }
+
+    /**
+     * Copies the UIDs of the currently active trackables into the given array.
+     *
+     * @param uids Array to receive the UIDs. Should hold at least {@link #getTrackableCount()} entries.
+     * @return The number of UIDs copied.
+     */
+    public synchronized int getTrackableUIDs(int[] uids) {
+        int count = Math.min(uids.length, trackableCount);
+        System.arraycopy(trackableUIDs, 0, uids, 0, count);
+        return count;
+    }
+
+    /**
+     * Installs a governor which thins out marker detection while tracking is stable.
+     *
+     * @param governor The governor to use, or null to run detection on every frame (the default).
+     */
+    public void setDetectionGovernor(DetectionGovernor governor) {
+        this.detectionGovernor = governor;
+    }
+
+    public DetectionGovernor getDetectionGovernor() {
+        return detectionGovernor;
     }
 
     /**
@@ -282,6 +781,325 @@ public class ARController {
         return ARX_jni.arwQueryTrackableVisibilityAndTransformation(trackableUID, matrix);
     }
 
+    /**
+     * Returns whether the marker with the specified ID is currently visible, and if visible the trackable
+     * transformation, together with the identity of the frame the transformation was computed from.
+     * <p/>
+     * The query never waits for detection. If detection is updating the poses while the query is made,
+     * the returned frame identity is that of the poses detection started from; if detection completes
+     * while the query is being made, the query is repeated once against the new poses.
+     *
+     * @param trackableUID The unique identifier (UID) of the trackable to query.
+     * @param matrix       Array of 16 floats to receive the transformation.
+     * @param frameInfo    Array of at least 2 longs. Receives the frame ID in element 0 and the sensor
+     *                     timestamp in nanoseconds in element 1. Both are 0 if no frame has been detected yet.
+     * @return true if the marker is visible and tracked in the current video frame.
+     */
+    public boolean queryTrackableVisibilityAndTransformation(int trackableUID, float[] matrix, long[] frameInfo) {
+        if (!initedNative) return false;
+        boolean visible;
+        long sequence = poseSequence;
+        for (int attempt = 0; ; attempt++) {
+            visible = ARX_jni.arwQueryTrackableVisibilityAndTransformation(trackableUID, matrix);
+            frameInfo[0] = poseFrameId;
+            frameInfo[1] = poseTimestamp;
+            long after = poseSequence;
+            if (after == sequence || attempt == POSE_READ_RETRIES) break;
+            sequence = after;
+        }
+        return visible;
+    }
+
+    /**
+     * Returns the ID of the frame from which the current trackable poses were computed, or 0 if
+     * no frame has been detected yet. When the detection governor skips frames, this trails
+     * {@link #getFrameId()}.
+     */
+    public long getPoseFrameId() {
+        return poseFrameId;
+    }
+
+    /**
+     * Returns the sensor timestamp in nanoseconds of the frame from which the current trackable
+     * poses were computed, or 0 if no frame has been detected yet.
+     */
+    public long getPoseTimestamp() {
+        return poseTimestamp;
+    }
+
+    /**
+     * Returns a value which changes whenever detection updates the trackable poses. The value is
+     * odd while detection is running. To read poses together with the identity of their frame
+     * without waiting, read the sequence, the poses and {@link #getPoseFrameId()} or
+     * {@link #getPoseTimestamp()}, and discard the read if the sequence was odd or has changed.
+     */
+    long getPoseSequence() {
+        return poseSequence;
+    }
+
+    int getTrackableSetVersion() {
+        return trackableSetVersion;
+    }
+
+    /**
+     * Enables or disables the publication of an {@link ARFrame} snapshot after every detection.
+     * Disabled by default; enabled by {@link org.artoolkitx.arx.arxj.rendering.ARRenderer}.
+     */
+    public void setFramePublishing(boolean enable) {
+        framePublishing = enable;
+        if (!enable) {
+            ARFrame frame = publishedFrame.getAndSet(null);
+            if (frame != null) frame.release();
+        }
+    }
+
+    public boolean isFramePublishing() {
+        return framePublishing;
+    }
+
+    /**
+     * Sets the near and far planes of the projection matrix stored in each {@link ARFrame}.
+     * Defaults to 10 and 10000.
+     */
+    public void setFrameProjectionPlanes(float nearPlane, float farPlane) {
+        frameNearPlane = nearPlane;
+        frameFarPlane = farPlane;
+    }
+
+    /**
+     * Returns the tracking snapshot of the most recent detection, or null if none has been published.
+     * The snapshot stays consistent until it is returned with {@link ARFrame#release()}, which the
+     * caller must do once it is finished with it, on any thread. Neither this call nor reading the
+     * snapshot takes a lock or calls native code. Snapshots come from a small fixed pool, so while
+     * readers hold more than one old snapshot, new detections are not published.
+     */
+    public ARFrame acquireFrame() {
+        while (true) {
+            ARFrame frame = publishedFrame.get();
+            if (frame == null) return null;
+            if (frame.tryRetain()) {
+                // The frame may have been recycled and republished between reading and retaining it.
+                if (publishedFrame.get() == frame) return frame;
+                frame.release();
+            }
+        }
+    }
+
+    /**
+     * Fills a free snapshot with the results of the detection which has just completed, and publishes
+     * it in place of the previous one.
+     */
+    private void publishFrame(long detectedFrameId, long detectedTimestamp) {
+        ARFrame frame = null;
+        for (int i = 0; i < framePool.length; i++) {
+            if (framePool[i] == null) framePool[i] = new ARFrame();
+            if (framePool[i].isFree()) {
+                frame = framePool[i];
+                break;
+            }
+        }
+        if (frame == null) {
+            // Every snapshot is published or still held by a reader. Keep the published one rather
+            // than allocate; a reader which never releases its snapshot would otherwise grow the pool
+            // without bound.
+            if (!framePoolExhausted) {
+                Log.w(TAG, "publishFrame(): All " + FRAME_POOL_SIZE + " snapshots are in use; not publishing frame " + detectedFrameId + ". Check that every acquired ARFrame is released.");
+                framePoolExhausted = true;
+            }
+            return;
+        }
+        framePoolExhausted = false;
+        float nearPlane = frameNearPlane, farPlane = frameFarPlane;
+        boolean filled;
+        if (stereo) {
+            boolean hasProjection = projectionCache.getStereo(nearPlane, farPlane, frameProjection, frameProjectionR);
+            filled = frame.fill(this, detectedFrameId, detectedTimestamp, hasProjection ? frameProjection : null, hasProjection ? frameProjectionR : null, nearPlane, farPlane);
+        } else {
+            boolean hasProjection = projectionCache.get(nearPlane, farPlane, frameProjection);
+            filled = frame.fill(this, detectedFrameId, detectedTimestamp, hasProjection ? frameProjection : null, null, nearPlane, farPlane);
+        }
+        if (!filled) {
+            // Keep the previous snapshot rather than publish one with every trackable lost. The
+            // unpublished frame holds no references, so it stays free in the pool.
+            Log.w(TAG, "publishFrame(): Unable to query trackable poses for frame " + detectedFrameId + ".");
+            return;
+        }
+        frame.publish();
+        ARFrame previous = publishedFrame.getAndSet(frame);
+        if (previous != null) previous.release();
+    }
+
+    /**
+     * Registers a listener to be told when trackables are found or lost. After each detection, the
+     * visibility of all trackables is compared with the previous detection and the changes are
+     * delivered on the given executor, so that apps need not poll every trackable on every frame.
+     * Visibility is only queried while at least one listener is registered.
+     *
+     * @param listener       The listener to register.
+     * @param executor       Executor on which to call the listener, or null to call it directly on the
+     *                       detection thread.
+     * @param includeUpdates If true, the listener is also called for every trackable which remains
+     *                       visible, on every detection.
+     */
+    public void addTrackableEventListener(TrackableEventListener listener, Executor executor, boolean includeUpdates) {
+        trackableEvents.addListener(listener, executor, includeUpdates);
+    }
+
+    public void removeTrackableEventListener(TrackableEventListener listener) {
+        trackableEvents.removeListener(listener);
+    }
+
+    /**
+     * Returns a cache of trackable poses and relative poses for the current detection frame. The
+     * cache is shared and not thread-safe, so should only be used from a single thread, normally the
+     * rendering thread. Callers needing a cache on another thread can create their own
+     * {@link RelativePoseCache}.
+     */
+    public synchronized RelativePoseCache getRelativePoseCache() {
+        if (relativePoseCache == null) relativePoseCache = new RelativePoseCache(this);
+        return relativePoseCache;
+    }
+
+    /**
+     * Returns the ID of the most recently pushed frame, or 0 if no frame has been pushed yet.
+     */
+    public long getFrameId() {
+        return frameId;
+    }
+
+    /**
+     * Returns the sensor timestamp in nanoseconds of the most recently pushed frame. For frames
+     * pushed without a timestamp, this is the time of the push on the
+     * SystemClock.elapsedRealtimeNanos() time base.
+     */
+    public long getFrameTimestamp() {
+        return frameTimestamp;
+    }
+
+    /**
+     * Records the identity of a frame which has just been pushed. Frames pushed without an ID are
+     * given a new one, and the time of the push as their timestamp.
+     */
+    private void onFramePushed(long pushedFrameId, long pushedTimestamp) {
+        if (pushedFrameId == 0) {
+            pushedFrameId = VideoFrame.nextFrameId();
+            pushedTimestamp = SystemClock.elapsedRealtimeNanos();
+        }
+        frameTimestamp = pushedTimestamp;
+        frameId = pushedFrameId;
+    }
+
+    /**
+     * Returns the visibility and pose of several trackables with a single call to native code.
+     * The caller owns all arrays and can reuse them from frame to frame.
+     *
+     * @param count         The number of trackables to query.
+     * @param trackableUIDs The unique identifiers (UIDs) of the trackables to query, in the first count elements.
+     * @param visibility    Receives a visibility bitset; must hold at least (count + 31) / 32 ints.
+     *                      Use {@link #isVisible(int[], int)} to test it.
+     * @param matrices      Receives the transformation of trackable i at offset i * 16; must hold at least count * 16 floats.
+     * @return The number of visible trackables, or -1 if an error occurred.
+     */
+    public int queryTrackableVisibilityAndTransformations(int count, int[] trackableUIDs, int[] visibility, float[] matrices) {
+        if (!initedNative) return -1;
+        return ARX_jni.arwQueryTrackableVisibilityAndTransformations(count, trackableUIDs, visibility, matrices);
+    }
+
+    /**
+     * Returns the visibility and the poses relative to the left and right cameras of several
+     * trackables with a single call to native code. Only available in stereo mode.
+     *
+     * @param count         The number of trackables to query.
+     * @param trackableUIDs The unique identifiers (UIDs) of the trackables to query, in the first count elements.
+     * @param visibility    Receives a visibility bitset; must hold at least (count + 31) / 32 ints.
+     * @param matricesL     Receives the transformation of trackable i relative to the left camera at offset i * 16.
+     * @param matricesR     Receives the transformation of trackable i relative to the right camera at offset i * 16.
+     * @return The number of visible trackables, or -1 if not in stereo mode or an error occurred.
+     * @see #queryTrackableVisibilityAndTransformations(int, int[], int[], float[])
+     */
+    public int queryTrackableVisibilityAndTransformationsStereo(int count, int[] trackableUIDs, int[] visibility, float[] matricesL, float[] matricesR) {
+        if (!initedNative || !stereo) return -1;
+        return ARX_jni.arwQueryTrackableVisibilityAndTransformationsStereo(count, trackableUIDs, visibility, matricesL, matricesR);
+    }
+
+    /**
+     * Allocates a buffer suitable for {@link #setPoseBuffer(FloatBuffer)}.
+     *
+     * @param matrixCount The number of 4x4 matrices the buffer is to hold.
+     * @return A direct, native-ordered FloatBuffer of matrixCount * 16 floats.
+     */
+    public static FloatBuffer allocatePoseBuffer(int matrixCount) {
+        return ByteBuffer.allocateDirect(matrixCount * 16 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /**
+     * Registers a buffer into which native code writes trackable poses directly, with no
+     * intermediate Java array. The buffer can then be passed straight to e.g. glUniformMatrix4fv.
+     * Register the buffer once and reuse it for every frame.
+     * <p/>
+     * A buffer may be registered or unregistered while other threads are querying; queries in progress
+     * complete into the previous buffer before it is released.
+     *
+     * @param buffer A direct FloatBuffer in native byte order, e.g. from {@link #allocatePoseBuffer(int)},
+     *               or null to unregister the current buffer.
+     * @return true if the buffer was registered.
+     */
+    public boolean setPoseBuffer(FloatBuffer buffer) {
+        if (!initedNative) return false;
+        if (buffer != null && (!buffer.isDirect() || buffer.order() != ByteOrder.nativeOrder())) {
+            Log.e(TAG, "setPoseBuffer(): Pose buffer must be a direct buffer in native byte order.");
+            return false;
+        }
+        synchronized (poseBufferLock) {
+            boolean ok = ARX_jni.arwSetPoseBuffer(buffer);
+            // A rejected buffer also unregisters the previous one.
+            poseBuffer = (ok ? buffer : null);
+            return ok;
+        }
+    }
+
+    public FloatBuffer getPoseBuffer() {
+        return poseBuffer;
+    }
+
+    /**
+     * Returns whether the specified trackable is currently visible, and writes its transformation
+     * into the buffer registered with {@link #setPoseBuffer(FloatBuffer)}.
+     *
+     * @param trackableUID The unique identifier (UID) of the trackable to query.
+     * @param poseIndex    0-based index of the matrix in the pose buffer; the transformation is written at float offset poseIndex * 16.
+     * @return true if the marker is visible and tracked in the current video frame.
+     */
+    public boolean queryTrackableVisibilityAndTransformation(int trackableUID, int poseIndex) {
+        if (!initedNative || poseBuffer == null) return false;
+        return ARX_jni.arwQueryTrackableVisibilityAndTransformationToPoseBuffer(trackableUID, poseIndex);
+    }
+
+    /**
+     * Returns the visibility of several trackables with a single call to native code, and writes
+     * their transformations into the buffer registered with {@link #setPoseBuffer(FloatBuffer)}.
+     *
+     * @param count         The number of trackables to query.
+     * @param trackableUIDs The unique identifiers (UIDs) of the trackables to query, in the first count elements.
+     * @param visibility    Receives a visibility bitset; must hold at least (count + 31) / 32 ints.
+     * @return The number of visible trackables, or -1 if an error occurred.
+     */
+    public int queryTrackableVisibilityAndTransformations(int count, int[] trackableUIDs, int[] visibility) {
+        if (!initedNative || poseBuffer == null) return -1;
+        return ARX_jni.arwQueryTrackableVisibilityAndTransformationsToPoseBuffer(count, trackableUIDs, visibility);
+    }
+
+    /**
+     * Tests the visibility bitset filled by {@link #queryTrackableVisibilityAndTransformations(int, int[], int[], float[])}.
+     *
+     * @param visibility The visibility bitset.
+     * @param index      0-based index of the trackable in the queried set.
+     * @return true if the trackable was visible.
+     */
+    public static boolean isVisible(int[] visibility, int index) {
+        return (visibility[index >>> 5] & (1 << (index & 31))) != 0;
+    }
+
 	/**
 	 * Queries whether artoolkitX is initialized. This will be true
 	 * after a call to {@link #initialiseNative(String)}. At
@@ -323,15 +1141,34 @@ public class ARController {
         if (ARX_jni.arwAndroidVideoPush1(0, frame, frameSize) < 0) {
             return false;
         }
-        //noinspection SimplifiableIfStatement
-        if (!ARX_jni.arwCapture()) {
-            return false;
-        }
-        return ARX_jni.arwUpdateAR();
+        onFramePushed(0, 0);
+        return detect();
     }
 
     public boolean convert1(byte[] frame, int frameSize){
-        return ARX_jni.arwAndroidVideoPush1(0,frame,frameSize) < 0;
+        if (ARX_jni.arwAndroidVideoPush1(0,frame,frameSize) < 0) return true;
+        onFramePushed(0, 0);
+        return false;
+    }
+
+    /**
+     * Takes an incoming frame from the Android camera and passes it to native
+     * code for conversion and tracking.
+     *
+     * @param frame New video frame to process.
+     * @return true if successful, otherwise false.
+     */
+    public boolean convertAndDetect2(VideoFrame frame) {
+
+        if ((!initedNative) || (frame == null)) {
+            return false;
+        }
+
+        //Convert
+        if (!convert(frame)) return false;
+
+        //Detect
+        return detect();
     }
 
     /**
@@ -351,49 +1188,198 @@ public class ARController {
         if (!convert(framePlanes, framePlanePixelStrides, framePlaneRowStrides)) return false;
 
         //Detect
-        //noinspection SimplifiableIfStatement
+        return detect();
+    }
+
+    /**
+     * Takes an incoming frame from one camera of a stereo pair and passes it to native code for
+     * conversion. Once both cameras have pushed a frame since the last detection, tracking runs on
+     * the pair, on the thread whose frame completed it.
+     * <p/>
+     * The left and right cameras may call this concurrently from their own threads. A push waits
+     * only for a detection in progress, never for a push to the other source. The identity of a
+     * stereo frame is that of its left frame.
+     *
+     * @param videoSourceIndex 0 for the left camera, 1 for the right camera.
+     * @param frame            New video frame to process.
+     * @return true if the frame completed a pair and tracking ran successfully, otherwise false.
+     */
+    public boolean convertAndDetectStereo(int videoSourceIndex, VideoFrame frame) {
+
+        if ((!initedNative) || (frame == null) || videoSourceIndex < 0 || videoSourceIndex > 1) {
+            return false;
+        }
+
+        //Convert
+        synchronized (sourceLocks[videoSourceIndex]) {
+            if (!stereo || !convert(videoSourceIndex, frame)) return false;
+        }
+        boolean pairComplete;
+        synchronized (stereoPending) {
+            stereoPending[videoSourceIndex] = true;
+            pairComplete = stereoPending[0] && stereoPending[1];
+            if (pairComplete) stereoPending[0] = stereoPending[1] = false;
+        }
+        if (!pairComplete) return false;
+
+        //Detect
+        synchronized (sourceLocks[0]) {
+            synchronized (sourceLocks[1]) {
+                return stereo && detect();
+            }
+        }
+    }
+
+    /**
+     * Captures the most recently pushed frame and, unless the detection governor skips this
+     * frame, runs marker detection on it. The time reported to the governor covers both.
+     */
+    private boolean detect() {
+        long start = System.nanoTime();
         if (!ARX_jni.arwCapture()) {
             return false;
         }
-        return ARX_jni.arwUpdateAR();
+        DetectionGovernor governor = detectionGovernor;
+        if (governor == null) {
+            return updateAR();
+        }
+        if (governorResetRequested) {
+            governorResetRequested = false;
+            governor.reset();
+        }
+        if (!governor.shouldDetect()) {
+            // The captured frame still updates the video background; poses are kept from the last detection.
+            return true;
+        }
+        boolean ok = updateAR();
+        long detectionNanos = System.nanoTime() - start;
+        governor.onDetection(detectionNanos, ok && allTrackablesVisible());
+        return ok;
     }
 
-    public boolean convert(ByteBuffer[] framePlanes, int[] framePlanePixelStrides, int[] framePlaneRowStrides) {
-        int framePlaneCount = Math.min(framePlanes.length, 4); // Maximum 4 planes can be passed to native.
-        if (framePlaneCount == 1) {
-            if (ARX_jni.arwAndroidVideoPush2(0,
-                    framePlanes[0], framePlanePixelStrides[0], framePlaneRowStrides[0],
-                    null, 0, 0,
-                    null, 0, 0,
-                    null, 0, 0) < 0) {
-                return false;
-            }
-        } else if (framePlaneCount == 2) {
-            if (ARX_jni.arwAndroidVideoPush2(0,
-                    framePlanes[0], framePlanePixelStrides[0], framePlaneRowStrides[0],
-                    framePlanes[1], framePlanePixelStrides[1], framePlaneRowStrides[1],
-                    null, 0, 0,
-                    null, 0, 0) < 0) {
-                return false;
+    /**
+     * Runs marker detection on the captured frame and stamps the resulting poses with its identity.
+     */
+    private boolean updateAR() {
+        long detectedFrameId = frameId;
+        long detectedTimestamp = frameTimestamp;
+        boolean ok = false;
+        poseSequence++;
+        try {
+            ok = ARX_jni.arwUpdateAR();
+            if (ok) {
+                poseFrameId = detectedFrameId;
+                poseTimestamp = detectedTimestamp;
             }
-        } else if (framePlaneCount == 3) {
-            if (ARX_jni.arwAndroidVideoPush2(0,
-                    framePlanes[0], framePlanePixelStrides[0], framePlaneRowStrides[0],
-                    framePlanes[1], framePlanePixelStrides[1], framePlaneRowStrides[1],
-                    framePlanes[2], framePlanePixelStrides[2], framePlaneRowStrides[2],
-                    null, 0, 0) < 0) {
-                return false;
+        } finally {
+            // Readers discard reads made while the sequence is odd, so it must never be left odd.
+            poseSequence++;
+        }
+        if (ok) {
+            if (framePublishing) publishFrame(detectedFrameId, detectedTimestamp);
+            trackableEvents.onDetection(this, detectedFrameId, detectedTimestamp);
+        }
+        return ok;
+    }
+
+    /**
+     * Queries all trackables with a single call to native code. Called only on the detection path.
+     *
+     * @return true if at least one trackable has been added and all added trackables are visible.
+     */
+    private boolean allTrackablesVisible() {
+        if (detectionSetVersion != trackableSetVersion) {
+            synchronized (this) {
+                if (detectionUIDs.length < trackableCount) {
+                    detectionUIDs = new int[trackableCount];
+                    detectionVisibility = new int[(trackableCount + 31) / 32];
+                    detectionMatrices = new float[trackableCount * 16];
+                }
+                System.arraycopy(trackableUIDs, 0, detectionUIDs, 0, trackableCount);
+                detectionCount = trackableCount;
+                detectionSetVersion = trackableSetVersion;
             }
-        } else if (framePlaneCount == 4) {
-            if (ARX_jni.arwAndroidVideoPush2(0,
-                    framePlanes[0], framePlanePixelStrides[0], framePlaneRowStrides[0],
-                    framePlanes[1], framePlanePixelStrides[1], framePlaneRowStrides[1],
-                    framePlanes[2], framePlanePixelStrides[2], framePlaneRowStrides[2],
-                    framePlanes[3], framePlanePixelStrides[3], framePlaneRowStrides[3]) < 0) {
-                return false;
+        }
+        if (detectionCount == 0) return false;
+        return ARX_jni.arwQueryTrackableVisibilityAndTransformations(detectionCount, detectionUIDs, detectionVisibility, detectionMatrices) == detectionCount;
+    }
+
+    /**
+     * Pushes the planes of a video frame to native code. Planes beyond the frame's plane count
+     * are passed as null, so a single native call covers frames with 1 to 4 planes.
+     *
+     * @param frame Video frame to push.
+     * @return true if successful, otherwise false.
+     */
+    public boolean convert(VideoFrame frame) {
+        return convert(0, frame);
+    }
+
+    /**
+     * Pushes the planes of a video frame to the given video source. Only frames pushed to source 0
+     * update {@link #getFrameId()} and {@link #getFrameTimestamp()}.
+     *
+     * @param videoSourceIndex 0, or in stereo mode, 1 for the right camera.
+     * @param frame            Video frame to push.
+     * @return true if successful, otherwise false.
+     */
+    public boolean convert(int videoSourceIndex, VideoFrame frame) {
+        VideoPush push = videoPush;
+        boolean ok;
+        int sourceBit = 1 << videoSourceIndex;
+        if (lumaOnlyPush && frame.getPlaneCount() > 1) {
+            // Chroma goes first, as pushing the luma marks the frame new for the video background.
+            if ((chromaRequested.get() & sourceBit) != 0) {
+                setChromaRequested(videoSourceIndex, false);
+                push.pushChroma(videoSourceIndex,
+                        frame.getPlane(1), frame.getPixelStride(1), frame.getRowStride(1),
+                        frame.getPlane(2), frame.getPixelStride(2), frame.getRowStride(2));
             }
+            ok = push.push(videoSourceIndex,
+                    frame.getPlane(0), frame.getPixelStride(0), frame.getRowStride(0),
+                    null, 0, 0,
+                    null, 0, 0,
+                    null, 0, 0) >= 0;
+            if (ok) lumaOnlyFrameCounts.incrementAndGet(videoSourceIndex);
+        } else {
+            ok = push.push(videoSourceIndex,
+                    frame.getPlane(0), frame.getPixelStride(0), frame.getRowStride(0),
+                    frame.getPlane(1), frame.getPixelStride(1), frame.getRowStride(1),
+                    frame.getPlane(2), frame.getPixelStride(2), frame.getRowStride(2),
+                    frame.getPlane(3), frame.getPixelStride(3), frame.getRowStride(3)) >= 0;
+        }
+        if (ok && videoSourceIndex == 0) onFramePushed(frame.getFrameId(), frame.getTimestamp());
+        return ok;
+    }
+
+    /**
+     * Replaces the native push used by {@link #convert(int, VideoFrame)}. For unit tests only, and
+     * must be called before frames are pushed, on the thread which pushes them.
+     *
+     * @param push The push to use, or null to restore the native push.
+     */
+    void setVideoPush(VideoPush push) {
+        videoPush = (push == null ? NATIVE_VIDEO_PUSH : push);
+    }
+
+    private void setChromaRequested(int videoSourceIndex, boolean requested) {
+        int sourceBit = 1 << videoSourceIndex;
+        while (true) {
+            int current = chromaRequested.get();
+            if (chromaRequested.compareAndSet(current, requested ? (current | sourceBit) : (current & ~sourceBit))) return;
         }
-        return true;
+    }
+
+    public boolean convert(ByteBuffer[] framePlanes, int[] framePlanePixelStrides, int[] framePlaneRowStrides) {
+        VideoFrame convertFrame = this.convertFrame.get();
+        int framePlaneCount = Math.min(framePlanes.length, VideoFrame.MAX_PLANES);
+        for (int i = 0; i < framePlaneCount; i++) {
+            convertFrame.setPlane(i, framePlanes[i], framePlanePixelStrides[i], framePlaneRowStrides[i]);
+        }
+        convertFrame.setPlaneCount(framePlaneCount);
+        boolean ok = convert(convertFrame);
+        convertFrame.clear();
+        return ok;
     }
 
     /**
@@ -403,9 +1389,27 @@ public class ARController {
 
         if (!initedNative) return;
 
+        trackableEvents.onStop(frameId, frameTimestamp);
+        ARFrame frame = publishedFrame.getAndSet(null);
+        if (frame != null) frame.release();
+        if (stereo) {
+            // Waits for pushes and detection in progress on the other camera's thread.
+            synchronized (sourceLocks[0]) {
+                synchronized (sourceLocks[1]) {
+                    stereo = false;
+                    ARX_jni.arwAndroidVideoPushFinal(1);
+                }
+            }
+        }
         ARX_jni.arwAndroidVideoPushFinal(0);
         ARX_jni.arwStopRunning();
         ARX_jni.arwShutdownAR();
+        projectionCache.invalidate();
+        invalidateTrackerConfig();
+        synchronized (this) {
+            trackableCount = 0;
+            trackableSetVersion++;
+        }
 
         initedNative = false;
     }
@@ -416,25 +1420,123 @@ public class ARController {
         }
     }
 
+    /**
+     * Status returned by the relative pose queries when the pose was computed.
+     */
+    public static final int RELATIVE_POSE_OK = 0;
+    /**
+     * Status returned by the relative pose queries when the base trackable is not visible.
+     */
+    public static final int RELATIVE_POSE_BASE_NOT_VISIBLE = 1;
+    /**
+     * Status returned by the relative pose queries when the base trackable is visible but the other trackable is not.
+     */
+    public static final int RELATIVE_POSE_TARGET_NOT_VISIBLE = 2;
+    /**
+     * Status returned by the relative pose queries when the native library is not initialised.
+     */
+    public static final int RELATIVE_POSE_NOT_INITED = -1;
+
+    /**
+     * Calculates the transformation of one trackable relative to another, without allocating or logging.
+     *
+     * @param baseTrackableUID   UID of the reference trackable.
+     * @param targetTrackableUID UID of the trackable whose pose is calculated relative to the reference.
+     * @param result             Receives the transformation from the reference trackable to the other trackable.
+     * @param resultOffset       Offset of the transformation in result.
+     * @param scratch            Working storage of at least 32 floats.
+     * @return {@link #RELATIVE_POSE_OK} if the transformation was calculated, otherwise one of the other RELATIVE_POSE_* status codes.
+     */
+    public int queryRelativePose(int baseTrackableUID, int targetTrackableUID, float[] result, int resultOffset, float[] scratch) {
+        if (!initedNative) return RELATIVE_POSE_NOT_INITED;
+        int status = queryPosePair(baseTrackableUID, targetTrackableUID, scratch);
+        if (status != RELATIVE_POSE_OK) return status;
+        RigidTransform.relative(result, resultOffset, scratch, 16, scratch, 0);
+        return RELATIVE_POSE_OK;
+    }
+
+    /**
+     * Calculates the distance between the origins of two trackables, without allocating or logging.
+     *
+     * @param baseTrackableUID   UID of the reference trackable.
+     * @param targetTrackableUID UID of the other trackable.
+     * @param distance           Receives the distance in element 0.
+     * @param scratch            Working storage of at least 32 floats.
+     * @return {@link #RELATIVE_POSE_OK} if the distance was calculated, otherwise one of the other RELATIVE_POSE_* status codes.
+     */
+    public int queryDistance(int baseTrackableUID, int targetTrackableUID, float[] distance, float[] scratch) {
+        if (!initedNative) return RELATIVE_POSE_NOT_INITED;
+        int status = queryPosePair(baseTrackableUID, targetTrackableUID, scratch);
+        if (status != RELATIVE_POSE_OK) return status;
+        // A rigid transformation preserves distances, so no relative transformation is needed.
+        float dx = scratch[12] - scratch[28], dy = scratch[13] - scratch[29], dz = scratch[14] - scratch[30];
+        distance[0] = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        return RELATIVE_POSE_OK;
+    }
+
+    /**
+     * Transforms a point from the coordinate system of one trackable into that of another, without allocating or logging.
+     *
+     * @param baseTrackableUID   UID of the trackable into whose coordinate system the point is transformed.
+     * @param targetTrackableUID UID of the trackable in whose coordinate system the point is given.
+     * @param point              The point (x, y, z) at offset 0.
+     * @param result             Receives the transformed point (x, y, z, 1) at offset 0.
+     * @param scratch            Working storage of at least 48 floats.
+     * @return {@link #RELATIVE_POSE_OK} if the point was transformed, otherwise one of the other RELATIVE_POSE_* status codes.
+     */
+    public int queryRelativePosition(int baseTrackableUID, int targetTrackableUID, float[] point, float[] result, float[] scratch) {
+        int status = queryRelativePose(baseTrackableUID, targetTrackableUID, scratch, 32, scratch);
+        if (status != RELATIVE_POSE_OK) return status;
+        float x = point[0], y = point[1], z = point[2];
+        for (int i = 0; i < 3; i++) {
+            result[i] = scratch[32 + i] * x + scratch[36 + i] * y + scratch[40 + i] * z + scratch[44 + i];
+        }
+        result[3] = 1.0f;
+        return RELATIVE_POSE_OK;
+    }
+
+    /**
+     * UIDs and visibility bits for {@link #queryPosePair(int, int, float[])}.
+     */
+    private static final class PosePairScratch {
+        final int[] uids = new int[2];
+        final int[] visibility = new int[1];
+    }
+
+    // One per thread, as relative pose queries may be made from any thread.
+    private static final ThreadLocal<PosePairScratch> posePairScratch = new ThreadLocal<PosePairScratch>() {
+        @Override
+        protected PosePairScratch initialValue() {
+            return new PosePairScratch();
+        }
+    };
+
+    /**
+     * Queries the pose of the target trackable into scratch[0..15] and that of the base trackable into scratch[16..31].
+     * Both are read in a single call to native code, so that they always come from the same detection.
+     */
+    private static int queryPosePair(int baseTrackableUID, int targetTrackableUID, float[] scratch) {
+        PosePairScratch pair = posePairScratch.get();
+        pair.uids[0] = targetTrackableUID;
+        pair.uids[1] = baseTrackableUID;
+        if (ARX_jni.arwQueryTrackableVisibilityAndTransformations(2, pair.uids, pair.visibility, scratch) < 0) return RELATIVE_POSE_NOT_INITED;
+        if (!isVisible(pair.visibility, 1)) return RELATIVE_POSE_BASE_NOT_VISIBLE;
+        if (!isVisible(pair.visibility, 0)) return RELATIVE_POSE_TARGET_NOT_VISIBLE;
+        return RELATIVE_POSE_OK;
+    }
+
     /**
      * Calculates the reference matrix for the given markers. First marker is the base.
      *
      * @param idMarkerBase Reference base
      * @param idMarker2    Marker that will be depending on that base
      * @return Matrix that contains the transformation from @idMarkerBase to @idMarker2
+     * @see #queryRelativePose(int, int, float[], int, float[])
      */
     @SuppressWarnings("WeakerAccess")
     public float[] calculateReferenceMatrix(int idMarkerBase, int idMarker2) {
-        float[] referenceMarkerTranslationMatrix = new float[16];
-        float[] secondMarkerTranslationMatrix = new float[16];
-        if (this.queryTrackableVisibilityAndTransformation(idMarkerBase, referenceMarkerTranslationMatrix) && this.queryTrackableVisibilityAndTransformation(idMarker2, secondMarkerTranslationMatrix)) {
-            float[] invertedMatrixOfReferenceMarker = new float[16];
-
-            Matrix.invertM(invertedMatrixOfReferenceMarker, 0, referenceMarkerTranslationMatrix, 0);
-
-            float[] transformationFromMarker1ToMarker2 = new float[16];
-            Matrix.multiplyMM(transformationFromMarker1ToMarker2, 0, invertedMatrixOfReferenceMarker, 0, secondMarkerTranslationMatrix, 0);
-
+        float[] transformationFromMarker1ToMarker2 = new float[16];
+        if (queryRelativePose(idMarkerBase, idMarker2, transformationFromMarker1ToMarker2, 0, new float[32]) == RELATIVE_POSE_OK) {
             return transformationFromMarker1ToMarker2;
         } else {
             //It seems like ARToolkit might be faster with updating then the Android part. Because of that
@@ -451,6 +1553,7 @@ public class ARController {
      * @param referenceMarker Reference base. Marker from which the distance is calculated
      * @param markerId2       Marker to which the distance is calculated
      * @return distance
+     * @see #queryDistance(int, int, float[], float[])
      */
     public float distance(int referenceMarker, int markerId2) {
 
@@ -476,6 +1579,7 @@ public class ARController {
      * @param referenceMarkerId           Reference marker id
      * @param markerIdToGetThePositionFor Id of the marker for which the position is calculated
      * @return Position vector with length 4 x,y,z,1
+     * @see #queryRelativePosition(int, int, float[], float[], float[])
      */
     public float[] retrievePosition(int referenceMarkerId, int markerIdToGetThePositionFor) {
         float[] initialVector = {1f, 1f, 1f, 1f};
@@ -496,6 +1600,7 @@ public class ARController {
      * @return true if successful
      */
     public boolean drawVideoInit(int videoSourceIndex){
+        setChromaRequested(videoSourceIndex, true);
         return ARX_jni.arwDrawVideoInit(videoSourceIndex);
     }
 
@@ -517,6 +1622,13 @@ public class ARController {
      */
     @SuppressWarnings("WeakerAccess")
     public boolean drawVideoSettings(int videoSourceIndex) {
+        // With luma-only push, a draw which shows a new frame requests chroma for the next pushed
+        // frame. Draws which show the same frame again request nothing.
+        long pushed = lumaOnlyFrameCounts.get(videoSourceIndex);
+        if (pushed != drawnLumaOnlyFrameCounts[videoSourceIndex]) {
+            drawnLumaOnlyFrameCounts[videoSourceIndex] = pushed;
+            setChromaRequested(videoSourceIndex, true);
+        }
         return ARX_jni.arwDrawVideo(videoSourceIndex);
     }
     
@@ -528,6 +1640,7 @@ public class ARController {
      */
     @SuppressWarnings("WeakerAccess")
     public boolean drawVideoFinal(int videoSourceIndex) {
+        setChromaRequested(videoSourceIndex, false);
         return ARX_jni.arwDrawVideoFinal(videoSourceIndex);
     }
 }
@@ -0,0 +1,270 @@
+/*
+ *  ARFrame.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A consistent snapshot of the tracking state after one detection: the identity of the detected
+ * frame, the projection matrix, and the visibility and pose of every trackable.
+ * <p/>
+ * Snapshots are published by the detection thread through
+ * {@link ARController#acquireFrame()}, so that a renderer can draw a whole frame from one detection
+ * without calling into native code. A snapshot does not change while it is held. It must be
+ * returned with {@link #release()} once the reader is done with it, after which it is recycled for a
+ * later detection and must no longer be used.
+ * <p/>
+ * In stereo mode, the snapshot additionally holds the poses and projection matrix of the right
+ * camera; the non-stereo accessors return those of the left camera.
+ */
+public final class ARFrame {
+
+    // 0 when free for reuse; otherwise one reference for being the published frame plus one per reader.
+    private final AtomicInteger references = new AtomicInteger();
+
+    private long frameId;
+    private long timestamp;
+    private int trackableCount;
+    private int[] uids = new int[0];
+    private int[] visibility = new int[0];
+    private float[] poses = new float[0];
+    private final float[] projection = new float[16];
+    private boolean hasProjection;
+    // Poses and projection relative to the right camera, in stereo mode.
+    private boolean stereo;
+    private float[] posesR = new float[0];
+    private final float[] projectionR = new float[16];
+    private float nearPlane, farPlane;
+
+    ARFrame() {
+    }
+
+    /**
+     * Refills a free snapshot from the current tracking state. Only called by the detection thread.
+     *
+     * @return false if the trackable poses could not be queried.
+     */
+    boolean fill(ARController arController, long frameId, long timestamp, float[] projectionMatrix, float[] projectionMatrixR, float nearPlane, float farPlane) {
+        this.frameId = frameId;
+        this.timestamp = timestamp;
+        this.nearPlane = nearPlane;
+        this.farPlane = farPlane;
+        stereo = arController.isStereo();
+        hasProjection = projectionMatrix != null && (!stereo || projectionMatrixR != null);
+        if (hasProjection) {
+            System.arraycopy(projectionMatrix, 0, projection, 0, 16);
+            if (stereo) System.arraycopy(projectionMatrixR, 0, projectionR, 0, 16);
+        }
+
+        int capacity = arController.getTrackableCount();
+        if (uids.length < capacity) {
+            uids = new int[capacity];
+            visibility = new int[(capacity + 31) / 32];
+            poses = new float[capacity * 16];
+        }
+        if (stereo && posesR.length < poses.length) posesR = new float[poses.length];
+        trackableCount = arController.getTrackableUIDs(uids);
+        int visibleCount = 0;
+        if (trackableCount > 0) {
+            visibleCount = stereo ? arController.queryTrackableVisibilityAndTransformationsStereo(trackableCount, uids, visibility, poses, posesR)
+                                  : arController.queryTrackableVisibilityAndTransformations(trackableCount, uids, visibility, poses);
+        }
+        if (visibleCount < 0) {
+            for (int i = 0; i < (trackableCount + 31) / 32; i++) visibility[i] = 0;
+            return false;
+        }
+        return true;
+    }
+
+    boolean isFree() {
+        return references.get() == 0;
+    }
+
+    /**
+     * Takes the reference held while this is the published frame.
+     */
+    void publish() {
+        references.set(1);
+    }
+
+    /**
+     * Takes a reader's reference, unless the frame has already been released to the pool.
+     */
+    boolean tryRetain() {
+        while (true) {
+            int count = references.get();
+            if (count == 0) return false;
+            if (references.compareAndSet(count, count + 1)) return true;
+        }
+    }
+
+    /**
+     * Returns a snapshot obtained from {@link ARController#acquireFrame()}.
+     */
+    public void release() {
+        references.decrementAndGet();
+    }
+
+    /**
+     * Returns the ID of the frame the snapshot was detected in.
+     */
+    public long getFrameId() {
+        return frameId;
+    }
+
+    /**
+     * Returns the sensor timestamp in nanoseconds of the frame the snapshot was detected in.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getTrackableCount() {
+        return trackableCount;
+    }
+
+    public int getTrackableUID(int index) {
+        return uids[index];
+    }
+
+    public boolean isTrackableVisible(int index) {
+        return ARController.isVisible(visibility, index);
+    }
+
+    /**
+     * Returns whether the trackable at an index between 0 and {@link #getTrackableCount()} is visible,
+     * and if visible copies its pose. Iterating by index avoids looking up each trackable by UID.
+     *
+     * @param index  Index of the trackable in this snapshot.
+     * @param matrix Array of 16 floats to receive the pose.
+     * @return true if the trackable was visible in this frame.
+     */
+    public boolean getTrackablePose(int index, float[] matrix) {
+        if (!ARController.isVisible(visibility, index)) return false;
+        System.arraycopy(poses, index * 16, matrix, 0, 16);
+        return true;
+    }
+
+    /**
+     * Returns whether the trackable at an index is visible, and if visible copies its poses relative
+     * to the left and right cameras, as for {@link #getTrackablePose(int, float[])}. Returns false if
+     * the snapshot is not stereo.
+     */
+    public boolean getTrackablePoseStereo(int index, float[] matrixL, float[] matrixR) {
+        if (!stereo || !ARController.isVisible(visibility, index)) return false;
+        System.arraycopy(poses, index * 16, matrixL, 0, 16);
+        System.arraycopy(posesR, index * 16, matrixR, 0, 16);
+        return true;
+    }
+
+    /**
+     * Returns whether a trackable is visible, and if visible copies its pose.
+     *
+     * @param trackableUID The unique identifier (UID) of the trackable to query.
+     * @param matrix       Array of 16 floats to receive the pose.
+     * @return true if the trackable was visible in this frame.
+     */
+    public boolean queryTrackableVisibilityAndTransformation(int trackableUID, float[] matrix) {
+        for (int i = 0; i < trackableCount; i++) {
+            if (uids[i] != trackableUID) continue;
+            if (!ARController.isVisible(visibility, i)) return false;
+            System.arraycopy(poses, i * 16, matrix, 0, 16);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the snapshot was detected in stereo, and so holds poses and a projection
+     * matrix for the right camera.
+     */
+    public boolean isStereo() {
+        return stereo;
+    }
+
+    /**
+     * Returns whether a trackable is visible, and if visible copies its poses relative to the left
+     * and right cameras. Returns false for every trackable if the snapshot is not stereo.
+     *
+     * @param trackableUID The unique identifier (UID) of the trackable to query.
+     * @param matrixL      Array of 16 floats to receive the pose relative to the left camera.
+     * @param matrixR      Array of 16 floats to receive the pose relative to the right camera.
+     * @return true if the trackable was visible in this frame.
+     */
+    public boolean queryTrackableVisibilityAndTransformationStereo(int trackableUID, float[] matrixL, float[] matrixR) {
+        if (!stereo) return false;
+        for (int i = 0; i < trackableCount; i++) {
+            if (uids[i] != trackableUID) continue;
+            if (!ARController.isVisible(visibility, i)) return false;
+            System.arraycopy(poses, i * 16, matrixL, 0, 16);
+            System.arraycopy(posesR, i * 16, matrixR, 0, 16);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Copies the projection matrix for the near and far planes set with
+     * {@link ARController#setFrameProjectionPlanes(float, float)}.
+     *
+     * @return false if no projection matrix was available.
+     */
+    public boolean getProjectionMatrix(float[] matrix) {
+        if (!hasProjection) return false;
+        System.arraycopy(projection, 0, matrix, 0, 16);
+        return true;
+    }
+
+    /**
+     * Copies the projection matrices of the left and right cameras, as for
+     * {@link #getProjectionMatrix(float[])}.
+     *
+     * @return false if the snapshot is not stereo or no projection matrix was available.
+     */
+    public boolean getProjectionMatrixStereo(float[] matrixL, float[] matrixR) {
+        if (!stereo || !hasProjection) return false;
+        System.arraycopy(projection, 0, matrixL, 0, 16);
+        System.arraycopy(projectionR, 0, matrixR, 0, 16);
+        return true;
+    }
+
+    public float getNearPlane() {
+        return nearPlane;
+    }
+
+    public float getFarPlane() {
+        return farPlane;
+    }
+}
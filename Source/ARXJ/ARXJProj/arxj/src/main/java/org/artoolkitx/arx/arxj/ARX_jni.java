@@ -41,6 +41,7 @@ package org.artoolkitx.arx.arxj;
 import android.util.Log;
 
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 
 /**
  * The ARX_jni class contains the JNI function signatures for
@@ -442,6 +443,61 @@ public class ARX_jni {
      */
     public static native boolean arwQueryTrackableVisibilityAndTransformationStereo(int trackableUID, float[] matrixL, float[] matrixR);
 
+    /**
+     * Returns the visibility and pose of several markers in a single call.
+     *
+     * @param count         The number of trackables to query.
+     * @param trackableUIDs An array holding the unique identifiers (UIDs) of the trackables to query in its first count elements.
+     * @param visibility    An array of at least (count + 31) / 32 ints to populate with a visibility bitset. Bit (i % 32)
+     *                      of element (i / 32) is set if trackable i is visible.
+     * @param matrices      An array of at least count * 16 floats to populate with OpenGL-compatible transformation matrices.
+     *                      The matrix of trackable i is written at offset i * 16.
+     * @return The number of visible trackables, or -1 if an error occurred.
+     */
+    public static native int arwQueryTrackableVisibilityAndTransformations(int count, int[] trackableUIDs, int[] visibility, float[] matrices);
+
+    /**
+     * Returns the visibility and stereo pose of several markers in a single call.
+     *
+     * @param count         The number of trackables to query.
+     * @param trackableUIDs An array holding the unique identifiers (UIDs) of the trackables to query in its first count elements.
+     * @param visibility    An array of at least (count + 31) / 32 ints to populate with a visibility bitset.
+     * @param matricesL     An array of at least count * 16 floats to populate with transformation matrices for the left camera.
+     * @param matricesR     An array of at least count * 16 floats to populate with transformation matrices for the right camera.
+     * @return The number of visible trackables, or -1 if an error occurred.
+     */
+    public static native int arwQueryTrackableVisibilityAndTransformationsStereo(int count, int[] trackableUIDs, int[] visibility, float[] matricesL, float[] matricesR);
+
+    /**
+     * Registers a direct buffer into which the *ToPoseBuffer functions write poses. The buffer must
+     * use native byte order. It is kept referenced by native code until another buffer (or null) is
+     * registered.
+     *
+     * @param buffer A direct, native-ordered FloatBuffer with room for at least one matrix, or null to unregister.
+     * @return true if the buffer was registered.
+     */
+    public static native boolean arwSetPoseBuffer(FloatBuffer buffer);
+
+    /**
+     * Returns the visibility of the specified marker, and writes its pose into the registered pose buffer.
+     *
+     * @param trackableUID The unique identifier (UID) of the trackable to check
+     * @param index        0-based index of the matrix in the pose buffer; the pose is written at float offset index * 16.
+     * @return true if the marker is currently visible, otherwise false
+     */
+    public static native boolean arwQueryTrackableVisibilityAndTransformationToPoseBuffer(int trackableUID, int index);
+
+    /**
+     * Returns the visibility of several markers, and writes their poses into the registered pose buffer.
+     *
+     * @param count         The number of trackables to query.
+     * @param trackableUIDs An array holding the unique identifiers (UIDs) of the trackables to query in its first count elements.
+     * @param visibility    An array of at least (count + 31) / 32 ints to populate with a visibility bitset. Bit (i % 32)
+     *                      of element (i / 32) is set if trackable i is visible.
+     * @return The number of visible trackables, or -1 if an error occurred.
+     */
+    public static native int arwQueryTrackableVisibilityAndTransformationsToPoseBuffer(int count, int[] trackableUIDs, int[] visibility);
+
     public static final int ARW_TRACKER_OPTION_NFT_MULTIMODE = 0,                          ///< bool.
     						ARW_TRACKER_OPTION_SQUARE_THRESHOLD = 1,                       ///< Threshold value used for image binarization. int in range [0-255].
     						ARW_TRACKER_OPTION_SQUARE_THRESHOLD_MODE = 2,                  ///< Threshold mode used for image binarization. int.
@@ -500,6 +556,28 @@ public class ARX_jni {
 
     public static native float arwGetTrackerOptionFloat(int option);
 
+    /**
+     * Gets several tracker options in one call.
+     *
+     * @param count   The number of options to get.
+     * @param options The ARW_TRACKER_OPTION_* values of the options to get.
+     * @param values  Receives the value of each option: 0 or 1 for boolean options, the bits of the float
+     *                (see Float.intBitsToFloat) for floating-point options, and the value itself for integer options.
+     * @return true if successful, false if an error occurred.
+     */
+    public static native boolean arwGetTrackerOptions(int count, int[] options, int[] values);
+
+    /**
+     * Sets several tracker options in one call.
+     *
+     * @param count   The number of options to set.
+     * @param options The ARW_TRACKER_OPTION_* values of the options to set.
+     * @param values  The values to set, encoded as for {@link #arwGetTrackerOptions(int, int[], int[])}. On
+     *                return, holds the value of each option as read back after setting it.
+     * @return true if successful, false if an error occurred.
+     */
+    public static native boolean arwSetTrackerOptions(int count, int[] options, int[] values);
+
     public static final int ARW_TRACKABLE_OPTION_FILTERED = 1,
     						ARW_TRACKABLE_OPTION_FILTER_SAMPLE_RATE = 2,
     						ARW_TRACKABLE_OPTION_FILTER_CUTOFF_FREQ = 3,
@@ -566,6 +644,9 @@ public class ARX_jni {
     /**
      * Pushes a video frame to the native library.
      * May only be made after calling arwAndroidVideoPushInit and may not be made after a call to arwAndroidVideoPushFinal.
+     * For planar NV21, NV12 and YUV_420_888 formats, passing null for all chroma planes pushes the luma plane only.
+     * The chroma plane held by the native library then keeps the contents of the most recent full push or
+     * arwAndroidVideoPushChroma call, and the frame is only converted to RGBA if chroma was pushed for it.
      * @param videoSourceIndex Zero-based index of the video source which is being pushed. Normally 0, but for the second camera in a stereo pair, 1.
      * @param buf0			For interleaved formats (e.g. RGBA), reference to a byte buffer holding the frame data. For interleaved formats this will be the only plane. For planar formats, reference to a byte buffer holding plane 0 of the frame. For planar NV21 and YUV_420_888 formats, this will be the luma plane.
      * @param buf0Size		The length (in bytes) of the buffer referred to by buf0.
@@ -583,6 +664,20 @@ public class ARX_jni {
 												  ByteBuffer buf2, int buf2PixelStride, int buf2RowStride,
 												  ByteBuffer buf3, int buf3PixelStride, int buf3RowStride);
 
+    /**
+     * Pushes the chroma of the next video frame to the native library, for drawing the video background
+     * when frames are otherwise pushed luma-only. Must be followed by a luma-only arwAndroidVideoPush2
+     * call for the same frame, which also converts the frame to RGBA if the video source is configured to.
+     * May only be made after calling arwAndroidVideoPushInit and may not be made after a call to arwAndroidVideoPushFinal.
+     * @param videoSourceIndex Zero-based index of the video source which is being pushed. Normally 0, but for the second camera in a stereo pair, 1.
+     * @param buf1			For planar NV21 and NV12 formats, reference to a byte buffer holding the chroma plane. For planar YUV_420_888 format, the Cb chroma plane.
+     * @param buf2			For planar YUV_420_888 format, reference to a byte buffer holding the Cr chroma plane. Otherwise null.
+     * @return				0 if no error occurred, otherwise an error value less than 0.
+     */
+    public static native int arwAndroidVideoPushChroma(int videoSourceIndex,
+													   ByteBuffer buf1, int buf1PixelStride, int buf1RowStride,
+													   ByteBuffer buf2, int buf2PixelStride, int buf2RowStride);
+
     /**
      * Tells the native library that no further frames will be pushed.
      * This call may only be made before a call to arwStopRunning.
@@ -50,6 +50,7 @@ import android.view.View;
 import org.artoolkitx.arx.arxj.camera.CameraAccessHandler;
 import org.artoolkitx.arx.arxj.camera.CameraAccessHandlerImpl;
 import org.artoolkitx.arx.arxj.camera.CameraEventListener;
+import org.artoolkitx.arx.arxj.camera.CameraThreadingModel;
 
 import java.io.File;
 import java.text.DecimalFormat;
@@ -214,9 +215,14 @@ public class AndroidUtils {
 
     @NonNull
     public static CameraAccessHandler createCameraAccessHandler(Activity activity, CameraEventListener cameraEventListener) {
+        return createCameraAccessHandler(activity, cameraEventListener, CameraThreadingModel.CAMERA_AND_DETECTION_THREADS);
+    }
+
+    @NonNull
+    public static CameraAccessHandler createCameraAccessHandler(Activity activity, CameraEventListener cameraEventListener, CameraThreadingModel threadingModel) {
         CameraAccessHandler cameraAccessHandler;
         // Create the camera preview
-        cameraAccessHandler = new CameraAccessHandlerImpl(activity, cameraEventListener) {
+        cameraAccessHandler = new CameraAccessHandlerImpl(activity, cameraEventListener, threadingModel) {
         };
         Log.i(TAG, "onResume(): Cam2CaptureSurface constructed");
 
@@ -0,0 +1,167 @@
+/*
+ *  DetectionGovernor.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj;
+
+/**
+ * Decides on which video frames marker detection ({@link ARX_jni#arwUpdateAR()}) is run.
+ * <p/>
+ * While any registered trackable is not visible, detection runs on every frame. Once all
+ * registered trackables have been visible for a number of consecutive detections, detection is
+ * thinned out to every n-th frame, where n is at least {@link #setStableDetectionInterval(int)}
+ * and is raised further if the measured detection time exceeds the per-frame time budget. As soon
+ * as a trackable is lost, detection returns to every frame. Frames on which detection is skipped
+ * are still pushed and captured, so the video background keeps its full frame rate and
+ * trackables keep their last pose.
+ * <p/>
+ * A governor is installed with {@link ARController#setDetectionGovernor(DetectionGovernor)}.
+ * It is not thread-safe and should only be used by the thread which runs detection; the
+ * controller defers the reset made when a trackable is added to that thread.
+ */
+public final class DetectionGovernor {
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private long frameBudgetNanos = 8 * NANOS_PER_MILLI;
+    private int stableFrameThreshold = 10;
+    private int stableDetectionInterval = 2;
+    private int maxDetectionInterval = 4;
+
+    private long averageDetectionNanos;
+    private int stableFrameCount;
+    private int detectionInterval = 1;
+    private int framesSinceDetection;
+    private long detectedFrameCount;
+    private long skippedFrameCount;
+
+    /**
+     * Sets the share of each frame's time which detection may use on average while tracking is
+     * stable. Defaults to 8 ms.
+     *
+     * @param frameBudgetMillis Per-frame detection time budget in milliseconds.
+     */
+    public void setFrameBudget(float frameBudgetMillis) {
+        frameBudgetNanos = (long) (frameBudgetMillis * NANOS_PER_MILLI);
+    }
+
+    /**
+     * @param count Number of consecutive detections with all trackables visible after which
+     *              tracking is considered stable. Defaults to 10.
+     */
+    public void setStableFrameThreshold(int count) {
+        stableFrameThreshold = Math.max(1, count);
+    }
+
+    /**
+     * @param interval Minimum detection interval, in frames, while tracking is stable. Defaults to 2.
+     */
+    public void setStableDetectionInterval(int interval) {
+        stableDetectionInterval = Math.max(1, interval);
+    }
+
+    /**
+     * @param interval Upper limit of the detection interval, in frames. Defaults to 4.
+     */
+    public void setMaxDetectionInterval(int interval) {
+        maxDetectionInterval = Math.max(1, interval);
+    }
+
+    /**
+     * Called for every frame before detection.
+     *
+     * @return true if detection should be run on this frame.
+     */
+    public boolean shouldDetect() {
+        if (++framesSinceDetection >= detectionInterval) {
+            framesSinceDetection = 0;
+            detectedFrameCount++;
+            return true;
+        }
+        skippedFrameCount++;
+        return false;
+    }
+
+    /**
+     * Called after each detection which {@link #shouldDetect()} allowed.
+     *
+     * @param detectionNanos     Time taken by the capture and detection of the frame, in nanoseconds.
+     * @param allTrackablesFound true if every registered trackable was visible after detection.
+     */
+    public void onDetection(long detectionNanos, boolean allTrackablesFound) {
+        // Exponential moving average over roughly the last 8 detections.
+        if (averageDetectionNanos == 0) averageDetectionNanos = detectionNanos;
+        else averageDetectionNanos += (detectionNanos - averageDetectionNanos) / 8;
+
+        if (!allTrackablesFound) {
+            stableFrameCount = 0;
+            detectionInterval = 1;
+            return;
+        }
+        if (stableFrameCount < stableFrameThreshold) {
+            stableFrameCount++;
+            if (stableFrameCount < stableFrameThreshold) return;
+        }
+        int interval = stableDetectionInterval;
+        if (frameBudgetNanos > 0) {
+            int budgetInterval = (int) ((averageDetectionNanos + frameBudgetNanos - 1) / frameBudgetNanos);
+            if (budgetInterval > interval) interval = budgetInterval;
+        }
+        detectionInterval = Math.min(interval, maxDetectionInterval);
+    }
+
+    /**
+     * Returns to detecting every frame, e.g. after the set of trackables has changed.
+     */
+    public void reset() {
+        stableFrameCount = 0;
+        detectionInterval = 1;
+        framesSinceDetection = 0;
+    }
+
+    public int getDetectionInterval() {
+        return detectionInterval;
+    }
+
+    public float getAverageDetectionMillis() {
+        return averageDetectionNanos / (float) NANOS_PER_MILLI;
+    }
+
+    public long getDetectedFrameCount() {
+        return detectedFrameCount;
+    }
+
+    public long getSkippedFrameCount() {
+        return skippedFrameCount;
+    }
+}
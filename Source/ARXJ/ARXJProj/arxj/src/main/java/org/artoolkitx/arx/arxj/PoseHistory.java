@@ -0,0 +1,424 @@
+/*
+ *  PoseHistory.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj;
+
+/**
+ * Records the recent poses of every trackable, with the sensor timestamps of the frames they were
+ * detected in, and estimates the motion of trackables from them.
+ * <p/>
+ * The poses of each trackable are held in a ring buffer of fixed capacity. All ring buffers share
+ * flat, preallocated arrays, so recording a frame and querying motion do not allocate. Call
+ * {@link #update()} once per rendered frame, or after each detection pass; it records a sample for
+ * each visible trackable only when detection has produced new poses since the previous call. A
+ * renderer drawing from a tracking snapshot should call {@link #update(ARFrame)} with it instead.
+ * <p/>
+ * Velocities are in trackable units (normally millimetres) or radians per second, in camera
+ * coordinates. They are only estimated from samples no further apart than
+ * {@link #setMaxSampleInterval(long)}, so that a trackable which has been lost and found again does
+ * not appear to have jumped. A PoseHistory is not thread-safe.
+ */
+public final class PoseHistory {
+
+    private static final long DEFAULT_MAX_SAMPLE_INTERVAL_NS = 250000000L;
+
+    private static final int EMPTY = -1;
+
+    private final ARController arController;
+    private final int capacity;
+    private long maxSampleInterval = DEFAULT_MAX_SAMPLE_INTERVAL_NS;
+
+    private int trackableCount;
+    private int[] uids = new int[0];
+    private int[] visibility = new int[0];
+    private float[] framePoses = new float[0];
+
+    // Open-addressed map from trackable UID to slot.
+    private int[] slotKeys = new int[0];
+    private int[] slotValues = new int[0];
+
+    // Ring buffers, indexed by slot * capacity + ring index.
+    private float[] poses = new float[0];
+    private long[] timestamps = new long[0];
+    private int[] newest = new int[0];
+    private int[] sampleCounts = new int[0];
+
+    private long poseSequence = -1;
+    private int trackableSetVersion = -1;
+    private long latestTimestamp;
+
+    /**
+     * @param arController The controller whose trackables to record.
+     * @param capacity     Number of poses to keep per trackable, at least 3.
+     */
+    public PoseHistory(ARController arController, int capacity) {
+        if (capacity < 3) throw new IllegalArgumentException("capacity must be at least 3");
+        this.arController = arController;
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Sets the largest time between two consecutive samples for them to be used in a velocity or
+     * acceleration estimate.
+     *
+     * @param nanoseconds Maximum interval in nanoseconds. Defaults to 250 ms.
+     */
+    public void setMaxSampleInterval(long nanoseconds) {
+        maxSampleInterval = nanoseconds;
+    }
+
+    public long getMaxSampleInterval() {
+        return maxSampleInterval;
+    }
+
+    /**
+     * Records the current pose of every visible trackable, if detection has run since the last
+     * call.
+     *
+     * @return true if a new frame was recorded.
+     */
+    public boolean update() {
+        int setVersion = arController.getTrackableSetVersion();
+        if (setVersion != trackableSetVersion) {
+            remap();
+            trackableSetVersion = setVersion;
+        }
+        long sequence = arController.getPoseSequence();
+        if (sequence == poseSequence || trackableCount == 0) return false;
+        // Never wait for detection; a read made while it runs is retried on the next call.
+        if ((sequence & 1) != 0) return false;
+
+        int result = arController.queryTrackableVisibilityAndTransformations(trackableCount, uids, visibility, framePoses);
+        long timestamp = arController.getPoseTimestamp();
+        if (sequence != arController.getPoseSequence()) return false;
+        poseSequence = sequence;
+        if (result < 0 || timestamp == 0 || timestamp == latestTimestamp) return false;
+        latestTimestamp = timestamp;
+
+        for (int slot = 0; slot < trackableCount; slot++) {
+            if (ARController.isVisible(visibility, slot)) record(slot, framePoses, slot * 16, timestamp);
+        }
+        return true;
+    }
+
+    /**
+     * Records the pose of every trackable visible in a tracking snapshot, unless the snapshot's
+     * frame has already been recorded. Unlike {@link #update()}, this does not query the
+     * controller, so the recorded poses are exactly those of the snapshot.
+     *
+     * @param frame The snapshot, e.g. from {@link ARController#acquireFrame()}.
+     * @return true if a new frame was recorded.
+     */
+    public boolean update(ARFrame frame) {
+        int setVersion = arController.getTrackableSetVersion();
+        if (setVersion != trackableSetVersion) {
+            remap();
+            trackableSetVersion = setVersion;
+        }
+        long timestamp = frame.getTimestamp();
+        if (trackableCount == 0 || timestamp == 0 || timestamp == latestTimestamp) return false;
+        latestTimestamp = timestamp;
+
+        for (int i = 0; i < frame.getTrackableCount(); i++) {
+            int slot = findSlot(frame.getTrackableUID(i));
+            if (slot != EMPTY && frame.getTrackablePose(i, framePoses)) record(slot, framePoses, 0, timestamp);
+        }
+        return true;
+    }
+
+    /**
+     * Appends a pose to the ring buffer of a slot.
+     */
+    private void record(int slot, float[] pose, int poseOffset, long timestamp) {
+        int index = (newest[slot] + 1) % capacity;
+        newest[slot] = index;
+        if (sampleCounts[slot] < capacity) sampleCounts[slot]++;
+        int sample = slot * capacity + index;
+        System.arraycopy(pose, poseOffset, poses, sample * 16, 16);
+        timestamps[sample] = timestamp;
+    }
+
+    /**
+     * Discards all recorded poses.
+     */
+    public void clear() {
+        for (int slot = 0; slot < trackableCount; slot++) sampleCounts[slot] = 0;
+        latestTimestamp = 0;
+    }
+
+    /**
+     * Returns the sensor timestamp in nanoseconds of the most recently recorded frame, or 0 if no
+     * frame has been recorded.
+     */
+    public long getLatestTimestamp() {
+        return latestTimestamp;
+    }
+
+    /**
+     * Returns the number of poses recorded for a trackable, at most {@link #getCapacity()}.
+     */
+    public int getSampleCount(int trackableUID) {
+        int slot = findSlot(trackableUID);
+        return slot < 0 ? 0 : sampleCounts[slot];
+    }
+
+    /**
+     * Copies a recorded pose of a trackable.
+     *
+     * @param age 0 for the most recent pose, 1 for the one before, and so on.
+     * @return true if a pose of that age has been recorded.
+     */
+    public boolean getPose(int trackableUID, int age, float[] result, int resultOffset) {
+        int sample = findSample(findSlot(trackableUID), age);
+        if (sample < 0) return false;
+        System.arraycopy(poses, sample * 16, result, resultOffset, 16);
+        return true;
+    }
+
+    /**
+     * Returns the sensor timestamp in nanoseconds of a recorded pose of a trackable, or 0 if no pose
+     * of that age has been recorded.
+     *
+     * @param age 0 for the most recent pose, 1 for the one before, and so on.
+     */
+    public long getTimestamp(int trackableUID, int age) {
+        int sample = findSample(findSlot(trackableUID), age);
+        return sample < 0 ? 0 : timestamps[sample];
+    }
+
+    /**
+     * Returns the time in nanoseconds from the last frame in which a trackable was visible to the
+     * most recently recorded frame, which is 0 if it is currently visible, or -1 if the trackable has
+     * never been seen.
+     */
+    public long getTimeSinceLastSeen(int trackableUID) {
+        long lastSeen = getTimestamp(trackableUID, 0);
+        return lastSeen == 0 ? -1 : latestTimestamp - lastSeen;
+    }
+
+    /**
+     * Estimates the linear velocity of a trackable's origin from its two most recent poses.
+     *
+     * @param result Array of 3 floats to receive the velocity in units per second.
+     * @return true if the velocity could be estimated.
+     */
+    public boolean getLinearVelocity(int trackableUID, float[] result) {
+        return getLinearVelocity(trackableUID, 0, result);
+    }
+
+    /**
+     * Estimates the linear velocity of a trackable's origin between two consecutive recorded poses.
+     *
+     * @param age    Age of the newer of the two poses; 0 uses the two most recent poses.
+     * @param result Array of 3 floats to receive the velocity in units per second.
+     * @return true if the velocity could be estimated.
+     */
+    public boolean getLinearVelocity(int trackableUID, int age, float[] result) {
+        int slot = findSlot(trackableUID);
+        int s0 = findSample(slot, age);
+        int s1 = findSample(slot, age + 1);
+        if (s1 < 0) return false;
+        long dt = timestamps[s0] - timestamps[s1];
+        if (dt <= 0 || dt > maxSampleInterval) return false;
+        float inverseSeconds = 1.0e9f / dt;
+        for (int i = 0; i < 3; i++) {
+            result[i] = (poses[s0 * 16 + 12 + i] - poses[s1 * 16 + 12 + i]) * inverseSeconds;
+        }
+        return true;
+    }
+
+    /**
+     * Estimates the linear acceleration of a trackable's origin from its three most recent poses.
+     *
+     * @param result Array of 3 floats to receive the acceleration in units per second squared.
+     * @return true if the acceleration could be estimated.
+     */
+    public boolean getLinearAcceleration(int trackableUID, float[] result) {
+        int slot = findSlot(trackableUID);
+        int s0 = findSample(slot, 0);
+        int s1 = findSample(slot, 1);
+        int s2 = findSample(slot, 2);
+        if (s2 < 0) return false;
+        long dt0 = timestamps[s0] - timestamps[s1];
+        long dt1 = timestamps[s1] - timestamps[s2];
+        if (dt0 <= 0 || dt1 <= 0 || dt0 > maxSampleInterval || dt1 > maxSampleInterval) return false;
+        float inverseSeconds0 = 1.0e9f / dt0;
+        float inverseSeconds1 = 1.0e9f / dt1;
+        float inverseMidpointSeconds = 2.0e9f / (dt0 + dt1);
+        for (int i = 0; i < 3; i++) {
+            float p0 = poses[s0 * 16 + 12 + i], p1 = poses[s1 * 16 + 12 + i], p2 = poses[s2 * 16 + 12 + i];
+            result[i] = ((p0 - p1) * inverseSeconds0 - (p1 - p2) * inverseSeconds1) * inverseMidpointSeconds;
+        }
+        return true;
+    }
+
+    /**
+     * Estimates the angular velocity of a trackable from the rotation between its two most recent
+     * poses.
+     *
+     * @param result Array of 3 floats to receive the angular velocity, as a rotation axis in camera
+     *               coordinates scaled by the rate of rotation in radians per second.
+     * @return true if the angular velocity could be estimated.
+     */
+    public boolean getAngularVelocity(int trackableUID, float[] result) {
+        return getAngularVelocity(trackableUID, 0, result);
+    }
+
+    /**
+     * Estimates the angular velocity of a trackable from the rotation between two consecutive
+     * recorded poses.
+     *
+     * @param age    Age of the newer of the two poses; 0 uses the two most recent poses.
+     * @param result Array of 3 floats to receive the angular velocity, as a rotation axis in camera
+     *               coordinates scaled by the rate of rotation in radians per second.
+     * @return true if the angular velocity could be estimated.
+     */
+    public boolean getAngularVelocity(int trackableUID, int age, float[] result) {
+        int slot = findSlot(trackableUID);
+        int s0 = findSample(slot, age);
+        int s1 = findSample(slot, age + 1);
+        if (s1 < 0) return false;
+        long dt = timestamps[s0] - timestamps[s1];
+        if (dt <= 0 || dt > maxSampleInterval) return false;
+
+        // Rotation from the older to the newer pose, in camera coordinates: R = R0 * transpose(R1).
+        // Matrices are column-major, so element (row, col) is at col * 4 + row.
+        int a = s0 * 16, b = s1 * 16;
+        float r00 = 0, r11 = 0, r22 = 0, r01 = 0, r10 = 0, r02 = 0, r20 = 0, r12 = 0, r21 = 0;
+        for (int k = 0; k < 3; k++) {
+            int ak = a + k * 4, bk = b + k * 4;
+            r00 += poses[ak] * poses[bk];
+            r11 += poses[ak + 1] * poses[bk + 1];
+            r22 += poses[ak + 2] * poses[bk + 2];
+            r01 += poses[ak] * poses[bk + 1];
+            r10 += poses[ak + 1] * poses[bk];
+            r02 += poses[ak] * poses[bk + 2];
+            r20 += poses[ak + 2] * poses[bk];
+            r12 += poses[ak + 1] * poses[bk + 2];
+            r21 += poses[ak + 2] * poses[bk + 1];
+        }
+        float wx = r21 - r12, wy = r02 - r20, wz = r10 - r01;
+        float twiceSin = (float) Math.sqrt(wx * wx + wy * wy + wz * wz);
+        float inverseSeconds = 1.0e9f / dt;
+        if (twiceSin < 1.0e-6f) {
+            result[0] = result[1] = result[2] = 0.0f;
+            return true;
+        }
+        float angle = (float) Math.atan2(twiceSin * 0.5f, (r00 + r11 + r22 - 1.0f) * 0.5f);
+        float scale = angle / twiceSin * inverseSeconds;
+        result[0] = wx * scale;
+        result[1] = wy * scale;
+        result[2] = wz * scale;
+        return true;
+    }
+
+    /**
+     * Returns the index of the sample of the given age in the ring buffer of a slot, or -1.
+     */
+    private int findSample(int slot, int age) {
+        if (slot < 0 || age < 0 || age >= sampleCounts[slot]) return -1;
+        int index = newest[slot] - age;
+        if (index < 0) index += capacity;
+        return slot * capacity + index;
+    }
+
+    private void buildSlotMap() {
+        int mapCapacity = 16;
+        while (mapCapacity < trackableCount * 2) mapCapacity <<= 1;
+        if (slotKeys.length != mapCapacity) {
+            slotKeys = new int[mapCapacity];
+            slotValues = new int[mapCapacity];
+        }
+        for (int i = 0; i < mapCapacity; i++) slotValues[i] = EMPTY;
+        int mask = mapCapacity - 1;
+        for (int slot = 0; slot < trackableCount; slot++) {
+            int i = (int) (mix(uids[slot]) & mask);
+            while (slotValues[i] != EMPTY) i = (i + 1) & mask;
+            slotKeys[i] = uids[slot];
+            slotValues[i] = slot;
+        }
+    }
+
+    private int findSlot(int trackableUID) {
+        if (slotKeys.length == 0) return EMPTY;
+        int mask = slotKeys.length - 1;
+        int i = (int) (mix(trackableUID) & mask);
+        while (slotValues[i] != EMPTY) {
+            if (slotKeys[i] == trackableUID) return slotValues[i];
+            i = (i + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    private static long mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return key ^ (key >>> 32);
+    }
+
+    /**
+     * Rebuilds the ring buffers for the current set of trackables, keeping the history of
+     * trackables which are still present.
+     */
+    private void remap() {
+        int count = arController.getTrackableCount();
+        int[] newUids = new int[count];
+        count = arController.getTrackableUIDs(newUids);
+        float[] newPoses = new float[count * capacity * 16];
+        long[] newTimestamps = new long[count * capacity];
+        int[] newNewest = new int[count];
+        int[] newSampleCounts = new int[count];
+        for (int slot = 0; slot < count; slot++) {
+            int oldSlot = findSlot(newUids[slot]);
+            if (oldSlot < 0) continue;
+            System.arraycopy(poses, oldSlot * capacity * 16, newPoses, slot * capacity * 16, capacity * 16);
+            System.arraycopy(timestamps, oldSlot * capacity, newTimestamps, slot * capacity, capacity);
+            newNewest[slot] = newest[oldSlot];
+            newSampleCounts[slot] = sampleCounts[oldSlot];
+        }
+        uids = newUids;
+        poses = newPoses;
+        timestamps = newTimestamps;
+        newest = newNewest;
+        sampleCounts = newSampleCounts;
+        visibility = new int[(count + 31) / 32];
+        framePoses = new float[count * 16];
+        trackableCount = count;
+        buildSlotMap();
+        poseSequence = -1;
+    }
+}
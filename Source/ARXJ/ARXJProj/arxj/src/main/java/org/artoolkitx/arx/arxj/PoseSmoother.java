@@ -0,0 +1,368 @@
+/*
+ *  PoseSmoother.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj;
+
+/**
+ * Smooths the poses of all trackables with a One-Euro filter, an adaptive low-pass filter whose
+ * cutoff frequency rises with the speed of the trackable: jitter is suppressed while a trackable is
+ * still, and lag is kept low while it moves.
+ * <p/>
+ * Each pose is split into a translation and a unit quaternion, and the seven components of all
+ * trackables are held as a structure of arrays, one array per component. {@link #update()} fetches
+ * all poses with a single batch query, then filters each component array in one loop over the
+ * trackables, so smoothing costs neither allocation nor a native call per trackable. Filter
+ * parameters can be set per trackable on the Java side, rather than through the native
+ * {@link ARX_jni#ARW_TRACKABLE_OPTION_FILTERED} options, which should be left disabled for trackables
+ * smoothed here.
+ * <p/>
+ * The minimum cutoff sets the smoothing of a still trackable: lower values smooth more. Beta sets how
+ * quickly the cutoff rises with speed: higher values lag less. Translation and rotation take separate
+ * parameters, because their speeds are in different units (trackable units and quaternion units per
+ * second). A PoseSmoother is not thread-safe.
+ */
+public final class PoseSmoother {
+
+    private static final int COMPONENTS = 7;
+    private static final int TX = 0, TY = 1, TZ = 2, QX = 3, QY = 4, QZ = 5, QW = 6;
+    private static final float TWO_PI = (float) (2.0 * Math.PI);
+
+    private final ARController arController;
+
+    private float defaultTranslationMinCutoff = 1.0f;
+    private float defaultTranslationBeta = 0.01f;
+    private float defaultRotationMinCutoff = 1.0f;
+    private float defaultRotationBeta = 0.5f;
+    private float derivativeCutoff = 1.0f;
+
+    private int trackableCount;
+    private int capacity;
+    private int[] uids = new int[0];
+    private int[] visibility = new int[0];
+    private float[] rawPoses = new float[0];
+    private float[] smoothedPoses = new float[0];
+
+    // Per-trackable state and parameters.
+    private long[] lastTimestamps = new long[0];
+    private float[] intervals = new float[0];
+    private boolean[] reset = new boolean[0];
+    private float[] translationMinCutoffs = new float[0];
+    private float[] translationBetas = new float[0];
+    private float[] rotationMinCutoffs = new float[0];
+    private float[] rotationBetas = new float[0];
+
+    // Structure of arrays, indexed by component * capacity + slot.
+    private float[] values = new float[0];
+    private float[] filtered = new float[0];
+    private float[] derivatives = new float[0];
+
+    private long poseSequence = -1;
+    private int trackableSetVersion = -1;
+
+    public PoseSmoother(ARController arController) {
+        this.arController = arController;
+    }
+
+    /**
+     * Sets the parameters used for trackables which have not been given their own.
+     *
+     * @param translationMinCutoff Minimum cutoff frequency for the translation, in Hz.
+     * @param translationBeta      Speed coefficient for the translation.
+     * @param rotationMinCutoff    Minimum cutoff frequency for the rotation, in Hz.
+     * @param rotationBeta         Speed coefficient for the rotation.
+     */
+    public void setDefaultParameters(float translationMinCutoff, float translationBeta, float rotationMinCutoff, float rotationBeta) {
+        defaultTranslationMinCutoff = translationMinCutoff;
+        defaultTranslationBeta = translationBeta;
+        defaultRotationMinCutoff = rotationMinCutoff;
+        defaultRotationBeta = rotationBeta;
+    }
+
+    /**
+     * Sets the filter parameters of one trackable. The parameters are kept for as long as the
+     * trackable remains added to the controller.
+     *
+     * @return false if no trackable with that UID has been added.
+     */
+    public boolean setParameters(int trackableUID, float translationMinCutoff, float translationBeta, float rotationMinCutoff, float rotationBeta) {
+        if (arController.getTrackableSetVersion() != trackableSetVersion) remap();
+        int slot = findSlot(trackableUID);
+        if (slot < 0) return false;
+        translationMinCutoffs[slot] = translationMinCutoff;
+        translationBetas[slot] = translationBeta;
+        rotationMinCutoffs[slot] = rotationMinCutoff;
+        rotationBetas[slot] = rotationBeta;
+        return true;
+    }
+
+    /**
+     * Sets the cutoff frequency of the low-pass filter applied to the speed estimates, in Hz.
+     * Defaults to 1 Hz.
+     */
+    public void setDerivativeCutoff(float hz) {
+        derivativeCutoff = hz;
+    }
+
+    /**
+     * Filters the current trackable poses, if detection has run since the last call. Should be called
+     * once per rendered frame, before querying poses.
+     *
+     * @return true if new poses were filtered.
+     */
+    public boolean update() {
+        if (arController.getTrackableSetVersion() != trackableSetVersion) remap();
+        long sequence = arController.getPoseSequence();
+        if (sequence == poseSequence || trackableCount == 0) return false;
+        poseSequence = sequence;
+        if (arController.queryTrackableVisibilityAndTransformations(trackableCount, uids, visibility, rawPoses) < 0) return false;
+        long timestamp = arController.getPoseTimestamp();
+
+        decompose(timestamp);
+        for (int component = 0; component < COMPONENTS; component++) {
+            if (component < QX) {
+                filter(component * capacity, translationMinCutoffs, translationBetas);
+            } else {
+                filter(component * capacity, rotationMinCutoffs, rotationBetas);
+            }
+        }
+        recompose();
+        return true;
+    }
+
+    /**
+     * Discards the filter state, so that the next poses are passed through unsmoothed.
+     */
+    public void clear() {
+        for (int slot = 0; slot < trackableCount; slot++) reset[slot] = true;
+    }
+
+    /**
+     * Returns whether a trackable is visible, and if so copies its smoothed pose.
+     */
+    public boolean getPose(int trackableUID, float[] matrix, int matrixOffset) {
+        int slot = findSlot(trackableUID);
+        if (slot < 0 || !ARController.isVisible(visibility, slot)) return false;
+        System.arraycopy(smoothedPoses, slot * 16, matrix, matrixOffset, 16);
+        return true;
+    }
+
+    /**
+     * Splits the pose of each visible trackable into translation and quaternion components, and
+     * works out the time since its previous pose.
+     */
+    private void decompose(long timestamp) {
+        for (int slot = 0; slot < trackableCount; slot++) {
+            if (!ARController.isVisible(visibility, slot)) {
+                intervals[slot] = 0.0f;
+                reset[slot] = true;
+                continue;
+            }
+            int m = slot * 16;
+            float[] p = rawPoses;
+            values[TX * capacity + slot] = p[m + 12];
+            values[TY * capacity + slot] = p[m + 13];
+            values[TZ * capacity + slot] = p[m + 14];
+
+            // Rotation matrix to quaternion. Matrices are column-major: element (row, col) is at col * 4 + row.
+            float m00 = p[m], m11 = p[m + 5], m22 = p[m + 10];
+            float trace = m00 + m11 + m22;
+            float qx, qy, qz, qw;
+            if (trace > 0.0f) {
+                float s = (float) Math.sqrt(trace + 1.0f) * 2.0f;
+                qw = 0.25f * s;
+                qx = (p[m + 6] - p[m + 9]) / s;
+                qy = (p[m + 8] - p[m + 2]) / s;
+                qz = (p[m + 1] - p[m + 4]) / s;
+            } else if (m00 > m11 && m00 > m22) {
+                float s = (float) Math.sqrt(1.0f + m00 - m11 - m22) * 2.0f;
+                qw = (p[m + 6] - p[m + 9]) / s;
+                qx = 0.25f * s;
+                qy = (p[m + 4] + p[m + 1]) / s;
+                qz = (p[m + 8] + p[m + 2]) / s;
+            } else if (m11 > m22) {
+                float s = (float) Math.sqrt(1.0f + m11 - m00 - m22) * 2.0f;
+                qw = (p[m + 8] - p[m + 2]) / s;
+                qx = (p[m + 4] + p[m + 1]) / s;
+                qy = 0.25f * s;
+                qz = (p[m + 9] + p[m + 6]) / s;
+            } else {
+                float s = (float) Math.sqrt(1.0f + m22 - m00 - m11) * 2.0f;
+                qw = (p[m + 1] - p[m + 4]) / s;
+                qx = (p[m + 8] + p[m + 2]) / s;
+                qy = (p[m + 9] + p[m + 6]) / s;
+                qz = 0.25f * s;
+            }
+            // q and -q are the same rotation; keep the one nearest the filtered rotation so that the
+            // filter does not interpolate through the long way round.
+            if (!reset[slot] && qx * filtered[QX * capacity + slot] + qy * filtered[QY * capacity + slot]
+                    + qz * filtered[QZ * capacity + slot] + qw * filtered[QW * capacity + slot] < 0.0f) {
+                qx = -qx;
+                qy = -qy;
+                qz = -qz;
+                qw = -qw;
+            }
+            values[QX * capacity + slot] = qx;
+            values[QY * capacity + slot] = qy;
+            values[QZ * capacity + slot] = qz;
+            values[QW * capacity + slot] = qw;
+
+            long interval = timestamp - lastTimestamps[slot];
+            if (reset[slot] || interval <= 0) {
+                // Start the filter afresh from this pose.
+                for (int component = 0; component < COMPONENTS; component++) {
+                    int i = component * capacity + slot;
+                    filtered[i] = values[i];
+                    derivatives[i] = 0.0f;
+                }
+                intervals[slot] = 0.0f;
+                reset[slot] = false;
+            } else {
+                intervals[slot] = interval * 1.0e-9f;
+            }
+            lastTimestamps[slot] = timestamp;
+        }
+    }
+
+    /**
+     * Runs the One-Euro filter over one component of all trackables. Trackables with no interval,
+     * because they are not visible or have just been reset, are skipped.
+     */
+    private void filter(int base, float[] minCutoffs, float[] betas) {
+        float derivativeRate = TWO_PI * derivativeCutoff;
+        for (int slot = 0; slot < trackableCount; slot++) {
+            float dt = intervals[slot];
+            if (dt == 0.0f) continue;
+            int i = base + slot;
+            float previous = filtered[i];
+            float value = values[i];
+
+            float r = derivativeRate * dt;
+            float derivative = derivatives[i];
+            derivative += r / (r + 1.0f) * ((value - previous) / dt - derivative);
+            derivatives[i] = derivative;
+
+            r = TWO_PI * (minCutoffs[slot] + betas[slot] * Math.abs(derivative)) * dt;
+            filtered[i] = previous + r / (r + 1.0f) * (value - previous);
+        }
+    }
+
+    /**
+     * Rebuilds the pose matrices of visible trackables from their filtered components.
+     */
+    private void recompose() {
+        for (int slot = 0; slot < trackableCount; slot++) {
+            if (!ARController.isVisible(visibility, slot)) continue;
+            float qx = filtered[QX * capacity + slot], qy = filtered[QY * capacity + slot];
+            float qz = filtered[QZ * capacity + slot], qw = filtered[QW * capacity + slot];
+            float scale = 2.0f / (qx * qx + qy * qy + qz * qz + qw * qw);
+            float xx = qx * qx * scale, yy = qy * qy * scale, zz = qz * qz * scale;
+            float xy = qx * qy * scale, xz = qx * qz * scale, yz = qy * qz * scale;
+            float wx = qw * qx * scale, wy = qw * qy * scale, wz = qw * qz * scale;
+            int m = slot * 16;
+            float[] p = smoothedPoses;
+            p[m] = 1.0f - yy - zz;
+            p[m + 1] = xy + wz;
+            p[m + 2] = xz - wy;
+            p[m + 3] = 0.0f;
+            p[m + 4] = xy - wz;
+            p[m + 5] = 1.0f - xx - zz;
+            p[m + 6] = yz + wx;
+            p[m + 7] = 0.0f;
+            p[m + 8] = xz + wy;
+            p[m + 9] = yz - wx;
+            p[m + 10] = 1.0f - xx - yy;
+            p[m + 11] = 0.0f;
+            p[m + 12] = filtered[TX * capacity + slot];
+            p[m + 13] = filtered[TY * capacity + slot];
+            p[m + 14] = filtered[TZ * capacity + slot];
+            p[m + 15] = 1.0f;
+        }
+    }
+
+    private int findSlot(int trackableUID) {
+        for (int slot = 0; slot < trackableCount; slot++) {
+            if (uids[slot] == trackableUID) return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * Rebuilds the arrays for the current set of trackables, keeping the parameters of trackables
+     * which are still present. Filter state is reset.
+     */
+    private void remap() {
+        int setVersion = arController.getTrackableSetVersion();
+        int count = arController.getTrackableCount();
+        int[] newUids = new int[count];
+        count = arController.getTrackableUIDs(newUids);
+        float[] newTranslationMinCutoffs = new float[count];
+        float[] newTranslationBetas = new float[count];
+        float[] newRotationMinCutoffs = new float[count];
+        float[] newRotationBetas = new float[count];
+        for (int slot = 0; slot < count; slot++) {
+            int oldSlot = findSlot(newUids[slot]);
+            if (oldSlot >= 0) {
+                newTranslationMinCutoffs[slot] = translationMinCutoffs[oldSlot];
+                newTranslationBetas[slot] = translationBetas[oldSlot];
+                newRotationMinCutoffs[slot] = rotationMinCutoffs[oldSlot];
+                newRotationBetas[slot] = rotationBetas[oldSlot];
+            } else {
+                newTranslationMinCutoffs[slot] = defaultTranslationMinCutoff;
+                newTranslationBetas[slot] = defaultTranslationBeta;
+                newRotationMinCutoffs[slot] = defaultRotationMinCutoff;
+                newRotationBetas[slot] = defaultRotationBeta;
+            }
+        }
+        uids = newUids;
+        translationMinCutoffs = newTranslationMinCutoffs;
+        translationBetas = newTranslationBetas;
+        rotationMinCutoffs = newRotationMinCutoffs;
+        rotationBetas = newRotationBetas;
+
+        trackableCount = count;
+        capacity = count;
+        visibility = new int[(count + 31) / 32];
+        rawPoses = new float[count * 16];
+        smoothedPoses = new float[count * 16];
+        lastTimestamps = new long[count];
+        intervals = new float[count];
+        reset = new boolean[count];
+        for (int slot = 0; slot < count; slot++) reset[slot] = true;
+        values = new float[COMPONENTS * count];
+        filtered = new float[COMPONENTS * count];
+        derivatives = new float[COMPONENTS * count];
+        poseSequence = -1;
+        trackableSetVersion = setVersion;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *  ProjectionMatrixCache.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj;
+
+/**
+ * Holds the projection matrices computed by native code for the most recently used pairs of near
+ * and far planes. The matrices only depend on the camera parameters and video size, so the cache is
+ * invalidated when video is (re)started, and otherwise serves each matrix without a native call or
+ * an allocation.
+ */
+final class ProjectionMatrixCache {
+
+    private static final int SLOTS = 4;
+
+    private final float[] nearPlanes = new float[SLOTS];
+    private final float[] farPlanes = new float[SLOTS];
+    private final float[] matrices = new float[SLOTS * 16];
+    private final boolean[] valid = new boolean[SLOTS];
+    // Right camera matrices, in stereo mode. The left matrix is held in matrices.
+    private final float[] matricesR = new float[SLOTS * 16];
+    private final boolean[] validR = new boolean[SLOTS];
+    private int nextSlot;
+
+    /**
+     * Copies the projection matrix for the given planes into result, computing it in native code if
+     * it is not cached.
+     *
+     * @return false if native code could not compute the matrix, e.g. because video is not running.
+     */
+    synchronized boolean get(float nearPlane, float farPlane, float[] result) {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (valid[slot] && nearPlanes[slot] == nearPlane && farPlanes[slot] == farPlane) {
+                System.arraycopy(matrices, slot * 16, result, 0, 16);
+                return true;
+            }
+        }
+        float[] matrix = ARX_jni.arwGetProjectionMatrix(nearPlane, farPlane);
+        if (matrix == null) return false;
+        int slot = takeSlot(nearPlane, farPlane);
+        System.arraycopy(matrix, 0, matrices, slot * 16, 16);
+        valid[slot] = true;
+        System.arraycopy(matrix, 0, result, 0, 16);
+        return true;
+    }
+
+    /**
+     * Copies the left and right projection matrices for the given planes into resultL and resultR,
+     * computing them in native code if they are not cached. Only valid while running in stereo.
+     *
+     * @return false if native code could not compute the matrices.
+     */
+    synchronized boolean getStereo(float nearPlane, float farPlane, float[] resultL, float[] resultR) {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (validR[slot] && nearPlanes[slot] == nearPlane && farPlanes[slot] == farPlane) {
+                System.arraycopy(matrices, slot * 16, resultL, 0, 16);
+                System.arraycopy(matricesR, slot * 16, resultR, 0, 16);
+                return true;
+            }
+        }
+        if (!ARX_jni.arwGetProjectionMatrixStereo(nearPlane, farPlane, resultL, resultR)) return false;
+        int slot = takeSlot(nearPlane, farPlane);
+        System.arraycopy(resultL, 0, matrices, slot * 16, 16);
+        System.arraycopy(resultR, 0, matricesR, slot * 16, 16);
+        valid[slot] = validR[slot] = true;
+        return true;
+    }
+
+    private int takeSlot(float nearPlane, float farPlane) {
+        int slot = nextSlot;
+        nextSlot = (nextSlot + 1) % SLOTS;
+        nearPlanes[slot] = nearPlane;
+        farPlanes[slot] = farPlane;
+        validR[slot] = false;
+        return slot;
+    }
+
+    /**
+     * Discards all cached matrices. Must be called whenever the camera parameters or video size change.
+     */
+    synchronized void invalidate() {
+        for (int slot = 0; slot < SLOTS; slot++) valid[slot] = validR[slot] = false;
+    }
+}
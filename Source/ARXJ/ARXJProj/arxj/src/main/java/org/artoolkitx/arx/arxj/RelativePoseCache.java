@@ -0,0 +1,289 @@
+/*
+ *  RelativePoseCache.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj;
+
+/**
+ * Caches the poses of all trackables, and the relative poses and distances between pairs of
+ * them, for one detection frame. The first query after detection has updated the poses fetches
+ * all trackable poses with a single call to native code; the inverse of each reference
+ * trackable and each pairwise result are then computed on first use and served from the cache
+ * until the next detection. Poses are only refetched once detection has run again, so any
+ * number of pairs can be queried per frame at the cost of one native call.
+ * <p/>
+ * Status codes are those of {@link ARController#queryRelativePose(int, int, float[], int, float[])}.
+ * Once it has grown to the number of trackables and pairs in use, the cache does not allocate.
+ * A cache is not thread-safe.
+ */
+public final class RelativePoseCache {
+
+    private static final int EMPTY = -1;
+
+    private final ARController arController;
+
+    // Trackable poses for the current frame, indexed by slot.
+    private int trackableCount;
+    private int[] uids = new int[0];
+    private int[] visibility = new int[0];
+    private float[] poses = new float[0];
+    private float[] inverses = new float[0];
+    private int[] inverseGeneration = new int[0];
+
+    // Open-addressed map from trackable UID to slot.
+    private int[] slotKeys = new int[0];
+    private int[] slotValues = new int[0];
+
+    // Open-addressed map from (base slot, target slot) to a cached relative pose. Entries from
+    // earlier generations count as empty.
+    private long[] pairKeys = new long[0];
+    private int[] pairGeneration = new int[0];
+    private float[] pairPoses = new float[0];
+    private float[] pairDistances = new float[0];
+    private int pairCount;
+
+    private long poseSequence = -1;
+    private int trackableSetVersion = -1;
+    private int generation = 0;
+
+    /**
+     * Creates a cache of the trackables added through the given controller.
+     */
+    public RelativePoseCache(ARController arController) {
+        this.arController = arController;
+    }
+
+    /**
+     * Discards all cached values, so that the next query refetches the trackable poses.
+     */
+    public void invalidate() {
+        poseSequence = -1;
+    }
+
+    /**
+     * Returns whether the specified trackable was visible in the current detection frame.
+     */
+    public boolean isVisible(int trackableUID) {
+        refresh();
+        int slot = findSlot(trackableUID);
+        return slot != EMPTY && ARController.isVisible(visibility, slot);
+    }
+
+    /**
+     * Copies the pose of a visible trackable.
+     *
+     * @return true if the trackable is visible and its pose was copied.
+     */
+    public boolean getPose(int trackableUID, float[] result, int resultOffset) {
+        refresh();
+        int slot = findSlot(trackableUID);
+        if (slot == EMPTY || !ARController.isVisible(visibility, slot)) return false;
+        System.arraycopy(poses, slot * 16, result, resultOffset, 16);
+        return true;
+    }
+
+    /**
+     * Copies the transformation of one trackable relative to another.
+     *
+     * @return {@link ARController#RELATIVE_POSE_OK} if the transformation was copied, otherwise one of the other RELATIVE_POSE_* status codes.
+     */
+    public int getRelativePose(int baseTrackableUID, int targetTrackableUID, float[] result, int resultOffset) {
+        int pair = findPair(baseTrackableUID, targetTrackableUID);
+        if (pair < 0) return -pair;
+        System.arraycopy(pairPoses, pair * 16, result, resultOffset, 16);
+        return ARController.RELATIVE_POSE_OK;
+    }
+
+    /**
+     * Returns the distance between the origins of two trackables in element 0 of distance.
+     *
+     * @return {@link ARController#RELATIVE_POSE_OK} if the distance was returned, otherwise one of the other RELATIVE_POSE_* status codes.
+     */
+    public int getDistance(int baseTrackableUID, int targetTrackableUID, float[] distance) {
+        int pair = findPair(baseTrackableUID, targetTrackableUID);
+        if (pair < 0) return -pair;
+        distance[0] = pairDistances[pair];
+        return ARController.RELATIVE_POSE_OK;
+    }
+
+    /**
+     * Transforms a point (x, y, z) from the coordinate system of the target trackable into that of
+     * the base trackable, returning (x, y, z, 1) in result.
+     *
+     * @return {@link ARController#RELATIVE_POSE_OK} if the point was transformed, otherwise one of the other RELATIVE_POSE_* status codes.
+     */
+    public int getRelativePosition(int baseTrackableUID, int targetTrackableUID, float[] point, float[] result) {
+        int pair = findPair(baseTrackableUID, targetTrackableUID);
+        if (pair < 0) return -pair;
+        int m = pair * 16;
+        float x = point[0], y = point[1], z = point[2];
+        for (int i = 0; i < 3; i++) {
+            result[i] = pairPoses[m + i] * x + pairPoses[m + 4 + i] * y + pairPoses[m + 8 + i] * z + pairPoses[m + 12 + i];
+        }
+        result[3] = 1.0f;
+        return ARController.RELATIVE_POSE_OK;
+    }
+
+    /**
+     * Returns the ID of the frame the cached poses were detected in.
+     */
+    public long getFrameId() {
+        refresh();
+        return arController.getPoseFrameId();
+    }
+
+    /**
+     * Refetches all trackable poses if detection has run or the set of trackables has changed
+     * since they were last fetched.
+     */
+    private void refresh() {
+        long sequence = arController.getPoseSequence();
+        int setVersion = arController.getTrackableSetVersion();
+        if (sequence == poseSequence && setVersion == trackableSetVersion) return;
+
+        if (setVersion != trackableSetVersion) {
+            int count = arController.getTrackableCount();
+            if (uids.length < count) {
+                uids = new int[count];
+                visibility = new int[(count + 31) / 32];
+                poses = new float[count * 16];
+                inverses = new float[count * 16];
+                inverseGeneration = new int[count];
+            }
+            trackableCount = arController.getTrackableUIDs(uids);
+            buildSlotMap();
+            // Pair keys are slot numbers, which may now refer to other trackables.
+            pairKeys = new long[0];
+            pairGeneration = new int[0];
+            pairCount = 0;
+            trackableSetVersion = setVersion;
+        }
+
+        generation++;
+        pairCount = 0;
+        if (trackableCount > 0 && arController.queryTrackableVisibilityAndTransformations(trackableCount, uids, visibility, poses) < 0) {
+            for (int i = 0; i < visibility.length; i++) visibility[i] = 0;
+        }
+        poseSequence = sequence;
+    }
+
+    /**
+     * @return The slot of the cached relative pose, or the negated status code if it is not available.
+     */
+    private int findPair(int baseTrackableUID, int targetTrackableUID) {
+        refresh();
+        int base = findSlot(baseTrackableUID);
+        if (base == EMPTY || !ARController.isVisible(visibility, base)) return -ARController.RELATIVE_POSE_BASE_NOT_VISIBLE;
+        int target = findSlot(targetTrackableUID);
+        if (target == EMPTY || !ARController.isVisible(visibility, target)) return -ARController.RELATIVE_POSE_TARGET_NOT_VISIBLE;
+
+        long key = ((long) base << 32) | (target & 0xffffffffL);
+        if ((pairCount + 1) * 2 > pairKeys.length) growPairs();
+        int mask = pairKeys.length - 1;
+        int pair = (int) (mix(key) & mask);
+        while (pairGeneration[pair] == generation) {
+            if (pairKeys[pair] == key) return pair;
+            pair = (pair + 1) & mask;
+        }
+
+        // Not yet cached for this frame.
+        if (inverseGeneration[base] != generation) {
+            RigidTransform.invert(inverses, base * 16, poses, base * 16);
+            inverseGeneration[base] = generation;
+        }
+        RigidTransform.multiply(pairPoses, pair * 16, inverses, base * 16, poses, target * 16);
+        pairDistances[pair] = RigidTransform.translationLength(pairPoses, pair * 16);
+        pairKeys[pair] = key;
+        pairGeneration[pair] = generation;
+        pairCount++;
+        return pair;
+    }
+
+    /**
+     * Doubles the capacity of the pair map, keeping the entries of the current generation.
+     */
+    private void growPairs() {
+        long[] oldKeys = pairKeys;
+        int[] oldGeneration = pairGeneration;
+        float[] oldPoses = pairPoses;
+        float[] oldDistances = pairDistances;
+        int capacity = Math.max(64, oldKeys.length * 2);
+        pairKeys = new long[capacity];
+        pairGeneration = new int[capacity];
+        pairPoses = new float[capacity * 16];
+        pairDistances = new float[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldGeneration[i] != generation) continue;
+            int pair = (int) (mix(oldKeys[i]) & mask);
+            while (pairGeneration[pair] == generation) pair = (pair + 1) & mask;
+            pairKeys[pair] = oldKeys[i];
+            pairGeneration[pair] = generation;
+            System.arraycopy(oldPoses, i * 16, pairPoses, pair * 16, 16);
+            pairDistances[pair] = oldDistances[i];
+        }
+    }
+
+    private void buildSlotMap() {
+        int capacity = 16;
+        while (capacity < trackableCount * 2) capacity <<= 1;
+        if (slotKeys.length != capacity) {
+            slotKeys = new int[capacity];
+            slotValues = new int[capacity];
+        }
+        for (int i = 0; i < capacity; i++) slotValues[i] = EMPTY;
+        int mask = capacity - 1;
+        for (int slot = 0; slot < trackableCount; slot++) {
+            int i = (int) (mix(uids[slot]) & mask);
+            while (slotValues[i] != EMPTY) i = (i + 1) & mask;
+            slotKeys[i] = uids[slot];
+            slotValues[i] = slot;
+        }
+    }
+
+    private int findSlot(int trackableUID) {
+        if (slotKeys.length == 0) return EMPTY;
+        int mask = slotKeys.length - 1;
+        int i = (int) (mix(trackableUID) & mask);
+        while (slotValues[i] != EMPTY) {
+            if (slotKeys[i] == trackableUID) return slotValues[i];
+            i = (i + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    private static long mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return key ^ (key >>> 32);
+    }
+}
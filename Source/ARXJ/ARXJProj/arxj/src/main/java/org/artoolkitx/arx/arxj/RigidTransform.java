@@ -0,0 +1,137 @@
+/*
+ *  RigidTransform.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj;
+
+/**
+ * Allocation-free operations on rigid-body transformations (rotation plus translation, no scale
+ * or shear), such as the trackable poses returned by ARController. Matrices are 4x4, column-major
+ * as used by OpenGL, and are addressed by an array and an offset so that packed arrays of poses
+ * can be used directly.
+ * <p/>
+ * The inverse of a rigid transformation is computed in closed form by transposing the rotation,
+ * which is both cheaper and better conditioned than a general matrix inversion.
+ */
+public final class RigidTransform {
+
+    private RigidTransform() {
+    }
+
+    /**
+     * Computes the inverse of a rigid transformation. result and m may not overlap.
+     *
+     * @param result       Receives the inverse.
+     * @param resultOffset Offset of the inverse in result.
+     * @param m            The transformation to invert.
+     * @param mOffset      Offset of the transformation in m.
+     */
+    public static void invert(float[] result, int resultOffset, float[] m, int mOffset) {
+        float tx = m[mOffset + 12], ty = m[mOffset + 13], tz = m[mOffset + 14];
+        for (int col = 0; col < 3; col++) {
+            int r = resultOffset + col * 4;
+            result[r] = m[mOffset + col];
+            result[r + 1] = m[mOffset + 4 + col];
+            result[r + 2] = m[mOffset + 8 + col];
+            result[r + 3] = 0.0f;
+        }
+        result[resultOffset + 12] = -(m[mOffset] * tx + m[mOffset + 1] * ty + m[mOffset + 2] * tz);
+        result[resultOffset + 13] = -(m[mOffset + 4] * tx + m[mOffset + 5] * ty + m[mOffset + 6] * tz);
+        result[resultOffset + 14] = -(m[mOffset + 8] * tx + m[mOffset + 9] * ty + m[mOffset + 10] * tz);
+        result[resultOffset + 15] = 1.0f;
+    }
+
+    /**
+     * Computes a * b, i.e. b applied first and then a. result may not overlap a or b.
+     *
+     * @param result       Receives the product.
+     * @param resultOffset Offset of the product in result.
+     * @param a            The left-hand transformation.
+     * @param aOffset      Offset of the left-hand transformation in a.
+     * @param b            The right-hand transformation.
+     * @param bOffset      Offset of the right-hand transformation in b.
+     */
+    public static void multiply(float[] result, int resultOffset, float[] a, int aOffset, float[] b, int bOffset) {
+        for (int col = 0; col < 4; col++) {
+            int bc = bOffset + col * 4;
+            float x = b[bc], y = b[bc + 1], z = b[bc + 2];
+            int r = resultOffset + col * 4;
+            for (int row = 0; row < 3; row++) {
+                result[r + row] = a[aOffset + row] * x + a[aOffset + 4 + row] * y + a[aOffset + 8 + row] * z;
+            }
+            if (col == 3) {
+                result[r] += a[aOffset + 12];
+                result[r + 1] += a[aOffset + 13];
+                result[r + 2] += a[aOffset + 14];
+            }
+            result[r + 3] = (col == 3 ? 1.0f : 0.0f);
+        }
+    }
+
+    /**
+     * Computes inverse(a) * b, i.e. the transformation b expressed relative to a, without forming
+     * the inverse of a. result may not overlap a or b.
+     *
+     * @param result       Receives the relative transformation.
+     * @param resultOffset Offset of the result in result.
+     * @param a            The reference transformation.
+     * @param aOffset      Offset of the reference transformation in a.
+     * @param b            The transformation to express relative to a.
+     * @param bOffset      Offset of that transformation in b.
+     */
+    public static void relative(float[] result, int resultOffset, float[] a, int aOffset, float[] b, int bOffset) {
+        // Rotation: transpose(Ra) * Rb. Translation: transpose(Ra) * (tb - ta).
+        for (int col = 0; col < 4; col++) {
+            int bc = bOffset + col * 4;
+            float x = b[bc], y = b[bc + 1], z = b[bc + 2];
+            if (col == 3) {
+                x -= a[aOffset + 12];
+                y -= a[aOffset + 13];
+                z -= a[aOffset + 14];
+            }
+            int r = resultOffset + col * 4;
+            result[r] = a[aOffset] * x + a[aOffset + 1] * y + a[aOffset + 2] * z;
+            result[r + 1] = a[aOffset + 4] * x + a[aOffset + 5] * y + a[aOffset + 6] * z;
+            result[r + 2] = a[aOffset + 8] * x + a[aOffset + 9] * y + a[aOffset + 10] * z;
+            result[r + 3] = (col == 3 ? 1.0f : 0.0f);
+        }
+    }
+
+    /**
+     * @return The length of the translation of a transformation.
+     */
+    public static float translationLength(float[] m, int mOffset) {
+        float x = m[mOffset + 12], y = m[mOffset + 13], z = m[mOffset + 14];
+        return (float) Math.sqrt(x * x + y * y + z * z);
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ *  TrackableEventDispatcher.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps the visibility of all trackables as a bitset per detection frame, diffs it against the
+ * previous frame, and delivers the resulting events to registered {@link TrackableEventListener}s.
+ * <p/>
+ * Visibility is only queried, with a single batch call, while listeners are registered. The
+ * events of one frame are copied into a pooled task for each listener, so steady-state dispatch
+ * does not allocate. Only called from the detection thread, except for listener registration.
+ */
+final class TrackableEventDispatcher {
+
+    private static final int POOLED_TASKS = 4;
+
+    private final CopyOnWriteArrayList<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+
+    // Current and previous detection frame. uids are in the order of ARController's trackable list.
+    private int count, previousCount;
+    private int[] uids = new int[0], previousUids = new int[0];
+    private int[] visibility = new int[0], previousVisibility = new int[0];
+    private float[] matrices = new float[0];
+    private int setVersion = -1, previousSetVersion = -1;
+
+    void addListener(TrackableEventListener listener, Executor executor, boolean includeUpdates) {
+        registrations.add(new Registration(listener, executor, includeUpdates));
+    }
+
+    void removeListener(TrackableEventListener listener) {
+        for (Registration registration : registrations) {
+            if (registration.listener == listener) registrations.remove(registration);
+        }
+    }
+
+    boolean hasListeners() {
+        return !registrations.isEmpty();
+    }
+
+    /**
+     * Queries the visibility of all trackables after a successful detection, and dispatches the
+     * changes since the previous detection.
+     */
+    void onDetection(ARController arController, long frameId, long timestamp) {
+        if (registrations.isEmpty()) {
+            // Trackables visible when a listener is next added are reported as found.
+            count = 0;
+            return;
+        }
+        swap();
+        setVersion = arController.getTrackableSetVersion();
+        int capacity = arController.getTrackableCount();
+        if (uids.length < capacity) {
+            uids = new int[capacity];
+            visibility = new int[(capacity + 31) / 32];
+            matrices = new float[capacity * 16];
+        }
+        count = arController.getTrackableUIDs(uids);
+        if (count > 0 && arController.queryTrackableVisibilityAndTransformations(count, uids, visibility, matrices) < 0) {
+            clearBits(visibility, count);
+        }
+        dispatch(frameId, timestamp);
+    }
+
+    /**
+     * Reports all visible trackables as lost, e.g. when tracking stops.
+     */
+    void onStop(long frameId, long timestamp) {
+        if (registrations.isEmpty()) {
+            count = 0;
+            return;
+        }
+        swap();
+        count = 0;
+        setVersion = -1;
+        dispatch(frameId, timestamp);
+    }
+
+    private void swap() {
+        int[] u = previousUids;
+        previousUids = uids;
+        uids = u;
+        int[] v = previousVisibility;
+        previousVisibility = visibility;
+        visibility = v;
+        previousCount = count;
+        previousSetVersion = setVersion;
+        if (uids.length < previousUids.length) {
+            uids = new int[previousUids.length];
+            visibility = new int[previousVisibility.length];
+        }
+    }
+
+    private void dispatch(long frameId, long timestamp) {
+        boolean changed = previousCount != count || previousSetVersion != setVersion;
+        if (!changed) {
+            for (int i = 0; i < (count + 31) / 32; i++) {
+                if (visibility[i] != previousVisibility[i]) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        boolean anyVisible = false;
+        for (int i = 0; i < (count + 31) / 32; i++) {
+            if (visibility[i] != 0) {
+                anyVisible = true;
+                break;
+            }
+        }
+        for (Registration registration : registrations) {
+            if (!changed && !(registration.includeUpdates && anyVisible)) continue;
+            Task task = registration.obtainTask();
+            task.fill(this, frameId, timestamp);
+            if (registration.executor == null) {
+                task.run();
+            } else {
+                registration.executor.execute(task);
+            }
+        }
+    }
+
+    private static void clearBits(int[] bits, int count) {
+        for (int i = 0; i < (count + 31) / 32; i++) bits[i] = 0;
+    }
+
+    private static int indexOf(int[] uids, int count, int uid) {
+        for (int i = 0; i < count; i++) {
+            if (uids[i] == uid) return i;
+        }
+        return -1;
+    }
+
+    private static final class Registration {
+        final TrackableEventListener listener;
+        final Executor executor;
+        final boolean includeUpdates;
+        final ArrayBlockingQueue<Task> pool = new ArrayBlockingQueue<Task>(POOLED_TASKS);
+
+        Registration(TrackableEventListener listener, Executor executor, boolean includeUpdates) {
+            this.listener = listener;
+            this.executor = executor;
+            this.includeUpdates = includeUpdates;
+        }
+
+        Task obtainTask() {
+            Task task = pool.poll();
+            return task != null ? task : new Task(this);
+        }
+    }
+
+    /**
+     * The events of one detection frame for one listener.
+     */
+    private static final class Task implements Runnable {
+        private final Registration registration;
+        private final float[] matrix = new float[16];
+        private int[] uids = new int[0];
+        private int[] found = new int[0], lost = new int[0], updated = new int[0];
+        private float[] matrices = new float[0];
+        private int foundCount, lostCount, updatedCount;
+        private long frameId, timestamp;
+
+        Task(Registration registration) {
+            this.registration = registration;
+        }
+
+        /**
+         * Works out the events between the previous and current frames of the dispatcher. Found and
+         * updated trackables are stored as indices into the copied matrices.
+         */
+        void fill(TrackableEventDispatcher d, long frameId, long timestamp) {
+            this.frameId = frameId;
+            this.timestamp = timestamp;
+            int count = d.count;
+            if (found.length < count) {
+                uids = new int[count];
+                found = new int[count];
+                updated = new int[count];
+                matrices = new float[count * 16];
+            }
+            if (lost.length < d.previousCount) lost = new int[d.previousCount];
+            foundCount = lostCount = updatedCount = 0;
+
+            boolean sameSet = d.setVersion == d.previousSetVersion && count == d.previousCount;
+            for (int i = 0; i < count; i++) {
+                if (!ARController.isVisible(d.visibility, i)) continue;
+                boolean wasVisible;
+                if (sameSet) {
+                    wasVisible = ARController.isVisible(d.previousVisibility, i);
+                } else {
+                    int previous = indexOf(d.previousUids, d.previousCount, d.uids[i]);
+                    wasVisible = previous >= 0 && ARController.isVisible(d.previousVisibility, previous);
+                }
+                if (!wasVisible) {
+                    found[foundCount++] = i;
+                } else if (registration.includeUpdates) {
+                    updated[updatedCount++] = i;
+                } else {
+                    continue;
+                }
+                System.arraycopy(d.matrices, i * 16, matrices, i * 16, 16);
+            }
+            System.arraycopy(d.uids, 0, uids, 0, count);
+            for (int i = 0; i < d.previousCount; i++) {
+                if (!ARController.isVisible(d.previousVisibility, i)) continue;
+                boolean stillVisible;
+                if (sameSet) {
+                    stillVisible = ARController.isVisible(d.visibility, i);
+                } else {
+                    int current = indexOf(d.uids, count, d.previousUids[i]);
+                    stillVisible = current >= 0 && ARController.isVisible(d.visibility, current);
+                }
+                if (!stillVisible) lost[lostCount++] = d.previousUids[i];
+            }
+        }
+
+        @Override
+        public void run() {
+            TrackableEventListener listener = registration.listener;
+            try {
+                for (int i = 0; i < foundCount; i++) {
+                    int index = found[i];
+                    System.arraycopy(matrices, index * 16, matrix, 0, 16);
+                    listener.onTrackableFound(uids[index], matrix, frameId, timestamp);
+                }
+                for (int i = 0; i < lostCount; i++) {
+                    listener.onTrackableLost(lost[i], frameId, timestamp);
+                }
+                for (int i = 0; i < updatedCount; i++) {
+                    int index = updated[i];
+                    System.arraycopy(matrices, index * 16, matrix, 0, 16);
+                    listener.onTrackableUpdated(uids[index], matrix, frameId, timestamp);
+                }
+            } finally {
+                registration.pool.offer(this);
+            }
+        }
+    }
+}
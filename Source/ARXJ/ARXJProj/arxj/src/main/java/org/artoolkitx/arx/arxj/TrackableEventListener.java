@@ -0,0 +1,77 @@
+/*
+ *  TrackableEventListener.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj;
+
+/**
+ * Receives changes in trackable visibility from detection. Register with
+ * {@link ARController#addTrackableEventListener(TrackableEventListener, java.util.concurrent.Executor, boolean)}.
+ * <p/>
+ * For each detection frame, all events of that frame are delivered in one task on the listener's
+ * executor: first the trackables which were found, then those which were lost, then, if requested,
+ * those which remain visible. Events of successive frames are delivered in order only if the
+ * executor runs tasks in order, e.g. a single-threaded executor.
+ */
+public interface TrackableEventListener {
+
+    /**
+     * Called when a trackable becomes visible.
+     *
+     * @param trackableUID The UID of the trackable.
+     * @param matrix       Pose of the trackable. Only valid for the duration of the call.
+     * @param frameId      ID of the frame in which the trackable was detected.
+     * @param timestamp    Sensor timestamp of that frame, in nanoseconds.
+     */
+    void onTrackableFound(int trackableUID, float[] matrix, long frameId, long timestamp);
+
+    /**
+     * Called when a trackable which was visible is no longer visible, or has been removed.
+     *
+     * @param trackableUID The UID of the trackable.
+     * @param frameId      ID of the first frame in which the trackable was not detected.
+     * @param timestamp    Sensor timestamp of that frame, in nanoseconds.
+     */
+    void onTrackableLost(int trackableUID, long frameId, long timestamp);
+
+    /**
+     * Called for each trackable which was visible in the previous detection frame and still is, if
+     * updates were requested when the listener was registered.
+     *
+     * @param trackableUID The UID of the trackable.
+     * @param matrix       Pose of the trackable. Only valid for the duration of the call.
+     * @param frameId      ID of the frame in which the trackable was detected.
+     * @param timestamp    Sensor timestamp of that frame, in nanoseconds.
+     */
+    void onTrackableUpdated(int trackableUID, float[] matrix, long frameId, long timestamp);
+}
@@ -0,0 +1,276 @@
+/*
+ *  TrackerConfig.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj;
+
+import java.util.Arrays;
+
+/**
+ * The tracker options of artoolkitX (the ARX_jni.ARW_TRACKER_OPTION_* values) as a single value.
+ * <p/>
+ * A TrackerConfig is filled with the current settings by
+ * {@link ARController#getTrackerConfig(TrackerConfig)}, which is served from a copy cached in
+ * ARController and so costs no native call. Changing fields marks them dirty, and
+ * {@link ARController#applyTrackerConfig(TrackerConfig)} then sets only the dirty fields, all in one
+ * native call. A TrackerConfig is not thread-safe.
+ */
+public final class TrackerConfig {
+
+    /**
+     * The tracker options held, indexed by field. The ARW_TRACKER_OPTION_* values happen to equal the
+     * field indices, but are listed so that the two can diverge.
+     */
+    static final int[] OPTIONS = {
+            ARX_jni.ARW_TRACKER_OPTION_NFT_MULTIMODE,
+            ARX_jni.ARW_TRACKER_OPTION_SQUARE_THRESHOLD,
+            ARX_jni.ARW_TRACKER_OPTION_SQUARE_THRESHOLD_MODE,
+            ARX_jni.ARW_TRACKER_OPTION_SQUARE_LABELING_MODE,
+            ARX_jni.ARW_TRACKER_OPTION_SQUARE_PATTERN_DETECTION_MODE,
+            ARX_jni.ARW_TRACKER_OPTION_SQUARE_BORDER_SIZE,
+            ARX_jni.ARW_TRACKER_OPTION_SQUARE_MATRIX_CODE_TYPE,
+            ARX_jni.ARW_TRACKER_OPTION_SQUARE_IMAGE_PROC_MODE,
+            ARX_jni.ARW_TRACKER_OPTION_SQUARE_DEBUG_MODE,
+            ARX_jni.ARW_TRACKER_OPTION_SQUARE_PATTERN_SIZE,
+            ARX_jni.ARW_TRACKER_OPTION_SQUARE_PATTERN_COUNT_MAX
+    };
+    static final int FIELD_COUNT = OPTIONS.length;
+
+    private static final int NFT_MULTIMODE = 0;
+    private static final int THRESHOLD = 1;
+    private static final int THRESHOLD_MODE = 2;
+    private static final int LABELING_MODE = 3;
+    private static final int PATTERN_DETECTION_MODE = 4;
+    private static final int BORDER_SIZE = 5;
+    private static final int MATRIX_CODE_TYPE = 6;
+    private static final int IMAGE_PROC_MODE = 7;
+    private static final int DEBUG_MODE = 8;
+    private static final int PATTERN_SIZE = 9;
+    private static final int PATTERN_COUNT_MAX = 10;
+
+    // Values in the encoding of ARX_jni.arwGetTrackerOptions: booleans as 0/1, floats as their bits.
+    private final int[] values = new int[FIELD_COUNT];
+    private int dirty;
+
+    /**
+     * Copies all values and dirty flags of another config.
+     */
+    public void set(TrackerConfig other) {
+        System.arraycopy(other.values, 0, values, 0, FIELD_COUNT);
+        dirty = other.dirty;
+    }
+
+    /**
+     * Returns whether any field has been changed since the config was last read or applied.
+     */
+    public boolean isDirty() {
+        return dirty != 0;
+    }
+
+    public void clearDirty() {
+        dirty = 0;
+    }
+
+    public boolean getNFTMultiMode() {
+        return values[NFT_MULTIMODE] != 0;
+    }
+
+    public void setNFTMultiMode(boolean multiMode) {
+        setField(NFT_MULTIMODE, multiMode ? 1 : 0);
+    }
+
+    /**
+     * @return The threshold used to binarize the video image, in the range 0 to 255.
+     */
+    public int getThreshold() {
+        return values[THRESHOLD];
+    }
+
+    public void setThreshold(int threshold) {
+        setField(THRESHOLD, threshold);
+    }
+
+    /**
+     * @return One of the ARX_jni.AR_LABELING_THRESH_MODE_* values.
+     */
+    public int getThresholdMode() {
+        return values[THRESHOLD_MODE];
+    }
+
+    public void setThresholdMode(int mode) {
+        setField(THRESHOLD_MODE, mode);
+    }
+
+    /**
+     * @return ARX_jni.AR_LABELING_WHITE_REGION or ARX_jni.AR_LABELING_BLACK_REGION.
+     */
+    public int getLabelingMode() {
+        return values[LABELING_MODE];
+    }
+
+    public void setLabelingMode(int mode) {
+        setField(LABELING_MODE, mode);
+    }
+
+    /**
+     * @return One of the ARX_jni.AR_TEMPLATE_MATCHING_* or ARX_jni.AR_MATRIX_CODE_DETECTION values.
+     */
+    public int getPatternDetectionMode() {
+        return values[PATTERN_DETECTION_MODE];
+    }
+
+    public void setPatternDetectionMode(int mode) {
+        setField(PATTERN_DETECTION_MODE, mode);
+    }
+
+    /**
+     * @return The width of the square marker border as a fraction of the marker width, in the range (0, 0.5).
+     */
+    public float getBorderSize() {
+        return Float.intBitsToFloat(values[BORDER_SIZE]);
+    }
+
+    public void setBorderSize(float size) {
+        setField(BORDER_SIZE, Float.floatToRawIntBits(size));
+    }
+
+    /**
+     * @return One of the ARX_jni.AR_MATRIX_CODE_* values.
+     */
+    public int getMatrixCodeType() {
+        return values[MATRIX_CODE_TYPE];
+    }
+
+    public void setMatrixCodeType(int type) {
+        setField(MATRIX_CODE_TYPE, type);
+    }
+
+    /**
+     * @return ARX_jni.AR_IMAGE_PROC_FRAME_IMAGE or ARX_jni.AR_IMAGE_PROC_FIELD_IMAGE.
+     */
+    public int getImageProcMode() {
+        return values[IMAGE_PROC_MODE];
+    }
+
+    public void setImageProcMode(int mode) {
+        setField(IMAGE_PROC_MODE, mode);
+    }
+
+    public boolean getDebugMode() {
+        return values[DEBUG_MODE] != 0;
+    }
+
+    public void setDebugMode(boolean debug) {
+        setField(DEBUG_MODE, debug ? 1 : 0);
+    }
+
+    public int getPatternSize() {
+        return values[PATTERN_SIZE];
+    }
+
+    public void setPatternSize(int size) {
+        setField(PATTERN_SIZE, size);
+    }
+
+    public int getPatternCountMax() {
+        return values[PATTERN_COUNT_MAX];
+    }
+
+    public void setPatternCountMax(int count) {
+        setField(PATTERN_COUNT_MAX, count);
+    }
+
+    private void setField(int field, int value) {
+        if (values[field] == value) return;
+        values[field] = value;
+        dirty |= 1 << field;
+    }
+
+    /**
+     * Copies the options and values of the dirty fields into the given arrays, which must hold at
+     * least {@link #FIELD_COUNT} entries.
+     *
+     * @return The number of dirty fields.
+     */
+    int getDirtyOptions(int[] options, int[] encodedValues) {
+        int count = 0;
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            if ((dirty & (1 << field)) == 0) continue;
+            options[count] = OPTIONS[field];
+            encodedValues[count] = values[field];
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Sets fields from options and values as returned by native code, without marking them dirty.
+     */
+    void setOptions(int count, int[] options, int[] encodedValues) {
+        for (int i = 0; i < count; i++) {
+            for (int field = 0; field < FIELD_COUNT; field++) {
+                if (OPTIONS[field] == options[i]) {
+                    values[field] = encodedValues[i];
+                    dirty &= ~(1 << field);
+                    break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof TrackerConfig && Arrays.equals(values, ((TrackerConfig) o).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return "TrackerConfig{threshold=" + getThreshold()
+                + ", thresholdMode=" + getThresholdMode()
+                + ", labelingMode=" + getLabelingMode()
+                + ", patternDetectionMode=" + getPatternDetectionMode()
+                + ", borderSize=" + getBorderSize()
+                + ", matrixCodeType=" + getMatrixCodeType()
+                + ", imageProcMode=" + getImageProcMode()
+                + ", debugMode=" + getDebugMode()
+                + ", patternSize=" + getPatternSize()
+                + ", patternCountMax=" + getPatternCountMax()
+                + ", nftMultiMode=" + getNFTMultiMode()
+                + "}";
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *  VideoFrame.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Describes the planes of a single video frame as they are handed to native code: one
+ * ByteBuffer per plane together with its pixel and row strides.
+ * <p/>
+ * A VideoFrame is meant to be allocated once by the frame producer and refilled for every
+ * frame, so that no arrays need to be allocated on the per-frame path. The arrays always hold
+ * {@link #MAX_PLANES} entries; entries at or beyond {@link #getPlaneCount()} are cleared to
+ * null/0 so that they can be passed to native code as they are.
+ * <p/>
+ * Each frame also carries a frame ID, taken from {@link #nextFrameId()} by the producer, and the
+ * timestamp at which the sensor captured it. Both are carried through detection so that poses
+ * can be matched to the frame they were computed from.
+ */
+public final class VideoFrame {
+
+    /**
+     * Maximum number of planes that can be passed to native code.
+     */
+    public static final int MAX_PLANES = 4;
+
+    private static final AtomicLong frameIdCounter = new AtomicLong();
+
+    private final ByteBuffer[] planes = new ByteBuffer[MAX_PLANES];
+    private final int[] pixelStrides = new int[MAX_PLANES];
+    private final int[] rowStrides = new int[MAX_PLANES];
+    private int planeCount;
+    private long frameId;
+    private long timestamp;
+
+    /**
+     * Returns a new frame ID. Frame IDs increase monotonically across all frame producers and
+     * start at 1, so 0 can be used to mean "no frame".
+     */
+    public static long nextFrameId() {
+        return frameIdCounter.incrementAndGet();
+    }
+
+    /**
+     * Sets the buffer and strides of one plane. Planes should be set in order, starting at 0.
+     *
+     * @param index       0-based index of the plane, less than {@link #MAX_PLANES}.
+     * @param buffer      The pixel data of the plane.
+     * @param pixelStride The distance in bytes between adjacent pixel samples.
+     * @param rowStride   The distance in bytes between the starts of adjacent rows.
+     */
+    public void setPlane(int index, ByteBuffer buffer, int pixelStride, int rowStride) {
+        planes[index] = buffer;
+        pixelStrides[index] = pixelStride;
+        rowStrides[index] = rowStride;
+    }
+
+    /**
+     * Sets the number of valid planes and clears any planes beyond that count.
+     *
+     * @param count Number of valid planes, clamped to {@link #MAX_PLANES}.
+     */
+    public void setPlaneCount(int count) {
+        if (count > MAX_PLANES) count = MAX_PLANES;
+        for (int i = count; i < MAX_PLANES; i++) {
+            planes[i] = null;
+            pixelStrides[i] = 0;
+            rowStrides[i] = 0;
+        }
+        planeCount = count;
+    }
+
+    /**
+     * Sets the identity of the frame.
+     *
+     * @param frameId   ID of the frame, as returned by {@link #nextFrameId()}.
+     * @param timestamp Time at which the sensor captured the frame, in nanoseconds. For camera
+     *                  frames this is the value of Image.getTimestamp().
+     */
+    public void setFrameInfo(long frameId, long timestamp) {
+        this.frameId = frameId;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Drops all references to plane buffers. Should be called once the buffers are no longer
+     * valid, e.g. after the underlying camera image has been closed.
+     */
+    public void clear() {
+        setPlaneCount(0);
+        frameId = 0;
+        timestamp = 0;
+    }
+
+    public long getFrameId() {
+        return frameId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getPlaneCount() {
+        return planeCount;
+    }
+
+    public ByteBuffer getPlane(int index) {
+        return planes[index];
+    }
+
+    public int getPixelStride(int index) {
+        return pixelStrides[index];
+    }
+
+    public int getRowStride(int index) {
+        return rowStrides[index];
+    }
+}
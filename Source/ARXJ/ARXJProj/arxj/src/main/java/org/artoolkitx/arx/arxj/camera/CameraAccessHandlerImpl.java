@@ -58,9 +58,17 @@ public class CameraAccessHandlerImpl implements CameraAccessHandler {
     private boolean mAskPermissionFirst = false;
 
     public CameraAccessHandlerImpl(Activity activity, CameraEventListener cameraEventListener) {
+        this(activity, cameraEventListener, CameraThreadingModel.CAMERA_AND_DETECTION_THREADS);
+    }
+
+    /**
+     * @param threadingModel Selects the threads used for frame acquisition and for calls to the
+     *                       cameraEventListener. See {@link CameraThreadingModel}.
+     */
+    public CameraAccessHandlerImpl(Activity activity, CameraEventListener cameraEventListener, CameraThreadingModel threadingModel) {
         Log.i(TAG, "CameraAccessHandlerImpl(): ctor called");
         Context mAppContext = activity.getApplicationContext();
-        this.mCameraSurface = new CameraSurfaceImpl(cameraEventListener, mAppContext);
+        this.mCameraSurface = new CameraSurfaceImpl(cameraEventListener, mAppContext, threadingModel);
 
         try {
              if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
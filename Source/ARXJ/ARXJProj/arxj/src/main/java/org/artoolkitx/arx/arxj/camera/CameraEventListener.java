@@ -38,11 +38,15 @@
 
 package org.artoolkitx.arx.arxj.camera;
 
-import java.nio.ByteBuffer;
+import org.artoolkitx.arx.arxj.VideoFrame;
 
 /**
  * The CameraEventListener interface allows an observer to respond to events
  * from a {@link FrameListener}.
+ * <p/>
+ * All methods of a listener are called on the same thread, which is the thread that owns the
+ * ARController push and detection calls. Depending on the {@link CameraThreadingModel} in use
+ * this is the main thread, the camera thread or a dedicated detection thread.
  */
 public interface CameraEventListener {
 
@@ -68,9 +72,11 @@ public interface CameraEventListener {
     /**
      * Called when the camera preview has a new frame ready.
      *
-     * @param framePlanes An array of ByteBuffers from the camera's frame planes, in the camera's capture format.
+     * @param frame The planes of the frame, in the camera's capture format. The frame object is
+     *              reused by the caller for subsequent frames, and its buffers are only valid
+     *              until this method returns.
      */
-    void cameraStreamFrame(ByteBuffer[] framePlanes, int[] framePlanePixelStrides, int[] framePlaneRowStrides);
+    void cameraStreamFrame(VideoFrame frame);
 
     /**
      * Called when the capture preview is stopped. No new frames will be sent.
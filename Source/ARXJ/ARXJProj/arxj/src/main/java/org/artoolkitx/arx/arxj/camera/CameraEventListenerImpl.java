@@ -5,8 +5,7 @@ import android.util.Log;
 import android.widget.Toast;
 
 import org.artoolkitx.arx.arxj.ARController;
-
-import java.nio.ByteBuffer;
+import org.artoolkitx.arx.arxj.VideoFrame;
 
 /*
  *  CameraEventListenerImpl.java
@@ -60,7 +59,7 @@ public class CameraEventListenerImpl implements CameraEventListener {
     }
 
     @Override
-    public void cameraStreamStarted(int width, int height, String pixelFormat, int cameraIndex, boolean cameraIsFrontFacing) {
+    public void cameraStreamStarted(final int width, final int height, String pixelFormat, int cameraIndex, boolean cameraIsFrontFacing) {
         this.cameraIndex = cameraIndex;
         if (ARController.getInstance().startWithPushedVideo(width, height, pixelFormat, null, cameraIndex, cameraIsFrontFacing)) {
             // Expects Data to be already in the cache dir. This can be done with the AssetUnpacker.
@@ -71,7 +70,13 @@ public class CameraEventListenerImpl implements CameraEventListener {
             arActivity.finish();
         }
 
-        Toast.makeText(arActivity, "Camera settings: " + width + "x" + height, Toast.LENGTH_SHORT).show();
+        // Camera events may be delivered on a camera or detection thread.
+        arActivity.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(arActivity, "Camera settings: " + width + "x" + height, Toast.LENGTH_SHORT).show();
+            }
+        });
         firstUpdate = true;
     }
 
@@ -82,20 +87,21 @@ public class CameraEventListenerImpl implements CameraEventListener {
             firstUpdate = false;
         }
 
-        if (ARController.getInstance().convertAndDetect1(frame, frameSize)) {
-            frameListener.onFrameProcessed();
+        ARController arController = ARController.getInstance();
+        if (arController.convertAndDetect1(frame, frameSize)) {
+            frameListener.onFrameProcessed(arController.getFrameId(), arController.getFrameTimestamp());
         }
     }
 
     @Override
-    public void cameraStreamFrame(ByteBuffer[] framePlanes, int[] framePlanePixelStrides, int[] framePlaneRowStrides) {
+    public void cameraStreamFrame(VideoFrame frame) {
         if (firstUpdate) {
             frameListener.firstFrame(cameraIndex);
             firstUpdate = false;
         }
 
-        if (ARController.getInstance().convertAndDetect2(framePlanes, framePlanePixelStrides, framePlaneRowStrides)) {
-            frameListener.onFrameProcessed();
+        if (ARController.getInstance().convertAndDetect2(frame)) {
+            frameListener.onFrameProcessed(frame.getFrameId(), frame.getTimestamp());
         }
     }
 
@@ -38,6 +38,24 @@ package org.artoolkitx.arx.arxj.camera;
  *
  */
 public interface CameraSurface {
+    /**
+     * Configures the queue of frames between the camera thread and the detection thread, used with
+     * {@link CameraThreadingModel#CAMERA_AND_DETECTION_THREADS}. Takes effect the next time the
+     * surface is created.
+     *
+     * @param capacity Number of frames which may be waiting for or undergoing detection.
+     * @param policy   What to do with a new frame when the queue is full.
+     */
+    void setFrameQueue(int capacity, FrameDropPolicy policy);
+
+    /**
+     * Selects the camera to open in place of the one chosen in the preferences, e.g. for one
+     * camera of a stereo pair. Takes effect the next time the surface is created.
+     *
+     * @param cameraDeviceId Camera2 ID of the camera to open, or -1 to use the preferences (the default).
+     */
+    void setCameraDeviceId(int cameraDeviceId);
+
     void surfaceCreated();
 
     void surfaceChanged();
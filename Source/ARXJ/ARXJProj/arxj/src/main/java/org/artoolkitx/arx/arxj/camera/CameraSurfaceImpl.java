@@ -12,6 +12,8 @@ import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CaptureRequest;
 import android.media.Image;
 import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.preference.PreferenceManager;
 import android.support.annotation.NonNull;
 import android.support.v4.content.ContextCompat;
@@ -20,7 +22,8 @@ import android.util.Size;
 import android.view.Surface;
 import android.widget.Toast;
 
-import java.nio.ByteBuffer;
+import org.artoolkitx.arx.arxj.VideoFrame;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -67,7 +70,7 @@ class CameraSurfaceImpl implements CameraSurface {
      * Android logging tag for this class.
      */
     private static final String TAG = CameraSurfaceImpl.class.getSimpleName();
-    private CameraDevice mCameraDevice;
+    private volatile CameraDevice mCameraDevice;
     private ImageReader mImageReader;
     private Size mImageReaderVideoSize;
     private final Context mAppContext;
@@ -100,10 +103,44 @@ class CameraSurfaceImpl implements CameraSurface {
      * Tracks if SurfaceView instance was created.
      */
     private boolean mImageReaderCreated;
+    /**
+     * Describes the planes of the current image. Reused for every frame.
+     */
+    private final VideoFrame mVideoFrame = new VideoFrame();
+
+    private final CameraThreadingModel mThreadingModel;
+    /**
+     * Thread (and its handler) on which camera device callbacks and new images are delivered.
+     * Null when running on the main looper.
+     */
+    private HandlerThread mCameraThread;
+    private Handler mCameraHandler;
+    /**
+     * Thread (and its handler) which owns all calls to the CameraEventListener, and thereby to
+     * the ARController push and detection functions. Null when the listener is called on the
+     * camera thread (or main looper) directly.
+     */
+    private HandlerThread mDetectionThread;
+    private Handler mDetectionHandler;
+    /**
+     * Frames waiting for, or being processed by, the detection thread.
+     */
+    private FrameRing mFrameRing;
+    private int mFrameRingCapacity = FrameRing.DEFAULT_CAPACITY;
+    private FrameDropPolicy mFrameDropPolicy = FrameDropPolicy.DROP_OLDEST;
+    /**
+     * Camera to open, or -1 to open the camera chosen in the preferences.
+     */
+    private int mCameraDeviceIdOverride = -1;
 
     public CameraSurfaceImpl(CameraEventListener cameraEventListener, Context appContext){
+        this(cameraEventListener, appContext, CameraThreadingModel.CAMERA_AND_DETECTION_THREADS);
+    }
+
+    public CameraSurfaceImpl(CameraEventListener cameraEventListener, Context appContext, CameraThreadingModel threadingModel){
         this.mCameraEventListener = cameraEventListener;
         this.mAppContext = appContext;
+        this.mThreadingModel = threadingModel;
     }
 
 
@@ -119,38 +156,142 @@ class CameraSurfaceImpl implements CameraSurface {
                 return;
             }
 
-            // Get a ByteBuffer for each plane.
-            final Image.Plane[] imagePlanes = imageInstance.getPlanes();
-            final int imagePlaneCount = Math.min(4, imagePlanes.length); // We can handle up to 4 planes max.
-            final ByteBuffer[] imageBuffers = new ByteBuffer[imagePlaneCount];
-            final int[] imageBufferPixelStrides = new int[imagePlaneCount];
-            final int[] imageBufferRowStrides = new int[imagePlaneCount];
-            for (int i = 0; i < imagePlaneCount; i++) {
-                imageBuffers[i] = imagePlanes[i].getBuffer();
-                // For ImageFormat.YUV_420_888 the order of planes in the array returned by Image.getPlanes()
-                // is guaranteed such that plane #0 is always Y, plane #1 is always U (Cb), and plane #2 is always V (Cr).
-                // The Y-plane is guaranteed not to be interleaved with the U/V planes (in particular, pixel stride is
-                // always 1 in yPlane.getPixelStride()). The U/V planes are guaranteed to have the same row stride and
-                // pixel stride (in particular, uPlane.getRowStride() == vPlane.getRowStride() and uPlane.getPixelStride() == vPlane.getPixelStride(); ).
-                imageBufferPixelStrides[i] = imagePlanes[i].getPixelStride();
-                imageBufferRowStrides[i] = imagePlanes[i].getRowStride();
+            if (mFrameRing == null) {
+                fillFrame(mVideoFrame, imageInstance);
+                if (mCameraEventListener != null) {
+                    mCameraEventListener.cameraStreamFrame(mVideoFrame);
+                }
+                // The plane buffers become invalid once the image is closed.
+                mVideoFrame.clear();
+                imageInstance.close();
+                return;
             }
 
-            if (mCameraEventListener != null) {
-                mCameraEventListener.cameraStreamFrame(imageBuffers, imageBufferPixelStrides, imageBufferRowStrides);
+            // Hand the image over to the detection thread. The slot closes it once it is released.
+            FrameRing.Slot slot = mFrameRing.acquire();
+            if (slot == null) {
+                imageInstance.close();
+                return;
             }
+            fillFrame(slot.getFrame(), imageInstance);
+            slot.setResource(imageInstance);
+            mFrameRing.publish(slot);
+            mDetectionHandler.post(mDetectionRunnable);
+        }
+    };
 
-            imageInstance.close();
+    /**
+     * Runs on the detection thread and processes all frames waiting in the ring.
+     */
+    private final Runnable mDetectionRunnable = new Runnable() {
+        @Override
+        public void run() {
+            FrameRing.Slot slot;
+            while ((slot = mFrameRing.poll()) != null) {
+                if (mCameraEventListener != null) {
+                    mCameraEventListener.cameraStreamFrame(slot.getFrame());
+                }
+                mFrameRing.release(slot);
+            }
         }
     };
 
+    /**
+     * Describes the planes of an image in a VideoFrame and stamps it with a new frame ID and the
+     * sensor timestamp of the image.
+     */
+    private static void fillFrame(VideoFrame frame, Image imageInstance) {
+        final Image.Plane[] imagePlanes = imageInstance.getPlanes();
+        final int imagePlaneCount = Math.min(VideoFrame.MAX_PLANES, imagePlanes.length); // We can handle up to 4 planes max.
+        for (int i = 0; i < imagePlaneCount; i++) {
+            // For ImageFormat.YUV_420_888 the order of planes in the array returned by Image.getPlanes()
+            // is guaranteed such that plane #0 is always Y, plane #1 is always U (Cb), and plane #2 is always V (Cr).
+            // The Y-plane is guaranteed not to be interleaved with the U/V planes (in particular, pixel stride is
+            // always 1 in yPlane.getPixelStride()). The U/V planes are guaranteed to have the same row stride and
+            // pixel stride (in particular, uPlane.getRowStride() == vPlane.getRowStride() and uPlane.getPixelStride() == vPlane.getPixelStride(); ).
+            frame.setPlane(i, imagePlanes[i].getBuffer(), imagePlanes[i].getPixelStride(), imagePlanes[i].getRowStride());
+        }
+        frame.setPlaneCount(imagePlaneCount);
+        frame.setFrameInfo(VideoFrame.nextFrameId(), imageInstance.getTimestamp());
+    }
+
+    @Override
+    public void setFrameQueue(int capacity, FrameDropPolicy policy) {
+        mFrameRingCapacity = capacity;
+        mFrameDropPolicy = policy;
+    }
+
+    @Override
+    public void setCameraDeviceId(int cameraDeviceId) {
+        mCameraDeviceIdOverride = cameraDeviceId;
+    }
+
+    /**
+     * Runs the given task on the thread which owns the CameraEventListener.
+     */
+    private void runOnDetectionThread(Runnable task) {
+        if (mDetectionHandler != null) {
+            mDetectionHandler.post(task);
+        } else {
+            task.run();
+        }
+    }
+
+    private void startThreads() {
+        if (mThreadingModel != CameraThreadingModel.MAIN_THREAD && mCameraThread == null) {
+            mCameraThread = new HandlerThread("ARXCamera");
+            mCameraThread.start();
+            mCameraHandler = new Handler(mCameraThread.getLooper());
+        }
+        if (mThreadingModel == CameraThreadingModel.CAMERA_AND_DETECTION_THREADS && mDetectionThread == null) {
+            mDetectionThread = new HandlerThread("ARXDetection");
+            mDetectionThread.start();
+            mDetectionHandler = new Handler(mDetectionThread.getLooper());
+            mFrameRing = new FrameRing(mFrameRingCapacity, mFrameDropPolicy);
+        }
+    }
+
+    private void stopCameraThread() {
+        if (mCameraThread != null) {
+            // Let pending image callbacks finish so that they do not run after shutdown.
+            mCameraThread.quitSafely();
+            joinThread(mCameraThread);
+            mCameraThread = null;
+            mCameraHandler = null;
+        }
+    }
+
+    private void stopDetectionThread() {
+        if (mDetectionThread != null) {
+            // Let the in-flight frame and the stop notification complete before returning.
+            mDetectionThread.quitSafely();
+            joinThread(mDetectionThread);
+            mDetectionThread = null;
+            mDetectionHandler = null;
+            mFrameRing = null;
+        }
+    }
+
+    private static void joinThread(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Log.e(TAG, "joinThread(): interrupted while waiting for " + thread.getName());
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @Override
     public void surfaceCreated() {
         Log.i(TAG, "surfaceCreated(): called");
 
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mAppContext);
         int defaultCameraIndexId = mAppContext.getResources().getIdentifier("pref_defaultValue_cameraIndex","string", mAppContext.getPackageName());
-        mCamera2DeviceID = Integer.parseInt(prefs.getString("pref_cameraIndex", mAppContext.getResources().getString(defaultCameraIndexId)));
+        if (mCameraDeviceIdOverride >= 0) {
+            mCamera2DeviceID = mCameraDeviceIdOverride;
+        } else {
+            mCamera2DeviceID = Integer.parseInt(prefs.getString("pref_cameraIndex", mAppContext.getResources().getString(defaultCameraIndexId)));
+        }
         Log.i(TAG, "surfaceCreated(): will attempt to open camera \"" + mCamera2DeviceID +
                 "\", set orientation, set preview surface");
 
@@ -169,9 +310,11 @@ class CameraSurfaceImpl implements CameraSurface {
         // Note that maxImages should be at least 2 for acquireLatestImage() to be any different than acquireNextImage() -
         // discarding all-but-the-newest Image requires temporarily acquiring two Images at once. Or more generally,
         // calling acquireLatestImage() with less than two images of margin, that is (maxImages - currentAcquiredImages < 2)
-        // will not discard as expected.
-        mImageReader = ImageReader.newInstance(mImageReaderVideoSize.getWidth(),mImageReaderVideoSize.getHeight(), ImageFormat.YUV_420_888, /* The maximum number of images the user will want to access simultaneously:*/ 2 );
-        mImageReader.setOnImageAvailableListener(mImageAvailableAndProcessHandler, null);
+        // will not discard as expected. Each slot of the frame ring holds one more image.
+        int maxImages = (mThreadingModel == CameraThreadingModel.CAMERA_AND_DETECTION_THREADS ? 2 + mFrameRingCapacity : 2);
+        startThreads();
+        mImageReader = ImageReader.newInstance(mImageReaderVideoSize.getWidth(),mImageReaderVideoSize.getHeight(), ImageFormat.YUV_420_888, /* The maximum number of images the user will want to access simultaneously:*/ maxImages );
+        mImageReader.setOnImageAvailableListener(mImageAvailableAndProcessHandler, mCameraHandler);
 
         mImageReaderCreated = true;
 
@@ -207,7 +350,7 @@ class CameraSurfaceImpl implements CameraSurface {
         CameraManager camera2DeviceMgr = (CameraManager)mAppContext.getSystemService(Context.CAMERA_SERVICE);
         try {
             if (PackageManager.PERMISSION_GRANTED == ContextCompat.checkSelfPermission(mAppContext, Manifest.permission.CAMERA)) {
-                camera2DeviceMgr.openCamera(Integer.toString(camera2DeviceID), mCamera2DeviceStateCallback, null);
+                camera2DeviceMgr.openCamera(Integer.toString(camera2DeviceID), mCamera2DeviceStateCallback, mCameraHandler);
                 return;
             }
         } catch (CameraAccessException ex) {
@@ -249,11 +392,20 @@ class CameraSurfaceImpl implements CameraSurface {
                         public void onConfigured(@NonNull CameraCaptureSession session) {
                             try {
                                 if (mCameraEventListener != null) {
-                                    mCameraEventListener.cameraStreamStarted(mImageReaderVideoSize.getWidth(), mImageReaderVideoSize.getHeight(), "YUV_420_888", mCamera2DeviceID, false);
+                                    final int width = mImageReaderVideoSize.getWidth();
+                                    final int height = mImageReaderVideoSize.getHeight();
+                                    final int cameraIndex = mCamera2DeviceID;
+                                    // Queued ahead of the first frame on the thread which owns the listener.
+                                    runOnDetectionThread(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            mCameraEventListener.cameraStreamStarted(width, height, "YUV_420_888", cameraIndex, false);
+                                        }
+                                    });
                                 }
                                 mYUV_CaptureAndSendSession = session;
                                 // Session to repeat request to update passed in camSensorSurface
-                                mYUV_CaptureAndSendSession.setRepeatingRequest(mCaptureRequestBuilder.build(), /* CameraCaptureSession.CaptureCallback cameraEventListener: */null, /* Background thread: */ null);
+                                mYUV_CaptureAndSendSession.setRepeatingRequest(mCaptureRequestBuilder.build(), /* CameraCaptureSession.CaptureCallback cameraEventListener: */null, /* Background thread: */ mCameraHandler);
                             } catch (CameraAccessException e) {
                                 e.printStackTrace();
                             }
@@ -264,7 +416,7 @@ class CameraSurfaceImpl implements CameraSurface {
                             Toast.makeText(mAppContext, "Unable to setup camera sensor capture session", Toast.LENGTH_SHORT).show();
                         }
                     }, // Callback for capture session state updates
-                    null); // Secondary thread message queue
+                    mCameraHandler); // Secondary thread message queue
         } catch (CameraAccessException ex) {
             ex.printStackTrace();
         }
@@ -278,11 +430,27 @@ class CameraSurfaceImpl implements CameraSurface {
             mCameraDevice = null;
         }
         if (null != mImageReader) {
-            mImageReader.close();
-            mImageReader = null;
+            mImageReader.setOnImageAvailableListener(null, null);
         }
+        // Closing the ring drops waiting frames and wakes a camera thread blocked on a full ring.
+        if (null != mFrameRing) {
+            mFrameRing.close();
+        }
+        // No frames are handed to the detection thread once the camera thread has stopped.
+        stopCameraThread();
         if (mCameraEventListener != null) {
-            mCameraEventListener.cameraStreamStopped();
+            runOnDetectionThread(new Runnable() {
+                @Override
+                public void run() {
+                    mCameraEventListener.cameraStreamStopped();
+                }
+            });
+        }
+        stopDetectionThread();
+        // Only close the reader once no image acquired from it is in use any more.
+        if (null != mImageReader) {
+            mImageReader.close();
+            mImageReader = null;
         }
         mImageReaderCreated = false;
     }
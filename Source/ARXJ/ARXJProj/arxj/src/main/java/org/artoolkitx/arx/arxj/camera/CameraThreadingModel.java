@@ -0,0 +1,61 @@
+package org.artoolkitx.arx.arxj.camera;
+
+/*
+ *  CameraThreadingModel.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+/**
+ * Selects the threads on which camera frames are acquired and on which the
+ * {@link CameraEventListener} (and thereby the ARController push and detection calls) is run.
+ */
+public enum CameraThreadingModel {
+    /**
+     * Camera callbacks, acquisition and detection all run on the main looper.
+     */
+    MAIN_THREAD,
+    /**
+     * Camera callbacks and acquisition run on a dedicated camera thread. The
+     * CameraEventListener is called synchronously on that thread.
+     */
+    CAMERA_THREAD,
+    /**
+     * Camera callbacks and acquisition run on a dedicated camera thread, and the
+     * CameraEventListener is called on a separate detection thread. Frames are handed over
+     * through a {@link FrameRing}, whose {@link FrameDropPolicy} decides what happens to a new
+     * frame while all slots are in use: by default ({@link FrameDropPolicy#DROP_OLDEST}) the
+     * oldest waiting frame is dropped and the camera thread never waits, whereas with
+     * {@link FrameDropPolicy#BLOCK} the camera thread waits for a slot. See
+     * {@link CameraSurface#setFrameQueue(int, FrameDropPolicy)}.
+     */
+    CAMERA_AND_DETECTION_THREADS
+}
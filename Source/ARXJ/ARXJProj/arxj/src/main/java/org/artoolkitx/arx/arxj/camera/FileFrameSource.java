@@ -0,0 +1,222 @@
+package org.artoolkitx.arx.arxj.camera;
+
+import android.util.Log;
+
+import org.artoolkitx.arx.arxj.VideoFrame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ *  FileFrameSource.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+
+/**
+ * Replays a raw video sequence from a file. The file holds consecutive frames of identical size
+ * with no header, and is memory-mapped so that frames are pushed straight from the page cache
+ * without being copied in Java.
+ * <p/>
+ * Supported pixel formats and their layout in the file:
+ * <ul>
+ * <li>"NV21" and "NV12": a full-size Y plane followed by an interleaved half-size chroma plane.</li>
+ * <li>"YUV_420_888": planar I420, i.e. a full-size Y plane followed by quarter-size U and V planes.</li>
+ * <li>"MONO": a Y plane only.</li>
+ * <li>"RGBA" and "RGB_565": a single interleaved plane.</li>
+ * </ul>
+ */
+public final class FileFrameSource extends ThreadedFrameSource {
+
+    private static final String TAG = FileFrameSource.class.getSimpleName();
+
+    private final File file;
+    private final int width;
+    private final int height;
+    private final String pixelFormat;
+    private final int frameSize;
+    private volatile boolean looping = false;
+
+    // Files larger than 2GB are mapped in several chunks, each holding a whole number of frames.
+    private MappedByteBuffer[] chunks;
+    private int framesPerChunk;
+    private int frameCount;
+    private int frameIndex;
+
+    /**
+     * @param file        The file to replay.
+     * @param width       Width of the frames in pixels.
+     * @param height      Height of the frames in pixels.
+     * @param pixelFormat One of "NV21", "NV12", "YUV_420_888", "MONO", "RGBA" or "RGB_565".
+     * @throws IllegalArgumentException if the pixel format is not supported.
+     */
+    public FileFrameSource(File file, int width, int height, String pixelFormat) {
+        super("ARXFileFrameSource");
+        this.file = file;
+        this.width = width;
+        this.height = height;
+        this.pixelFormat = pixelFormat;
+        this.frameSize = frameSize(width, height, pixelFormat);
+        if (frameSize <= 0) {
+            throw new IllegalArgumentException("Unsupported pixel format " + pixelFormat);
+        }
+    }
+
+    /**
+     * @return The size in bytes of one frame of the given dimensions and pixel format, or -1 if the
+     * pixel format is not supported.
+     */
+    public static int frameSize(int width, int height, String pixelFormat) {
+        switch (pixelFormat) {
+            case "NV21":
+            case "NV12":
+            case "YUV_420_888":
+                return width * height + 2 * (width / 2 * height / 2);
+            case "MONO":
+                return width * height;
+            case "RGBA":
+                return width * height * 4;
+            case "RGB_565":
+                return width * height * 2;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Sets whether replay restarts from the first frame after the last one. Otherwise the source
+     * stops at the end of the file.
+     */
+    public void setLooping(boolean looping) {
+        this.looping = looping;
+    }
+
+    /**
+     * @return The number of whole frames in the file. Valid once the source has been started.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public String getPixelFormat() {
+        return pixelFormat;
+    }
+
+    @Override
+    protected boolean open() {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size / frameSize > Integer.MAX_VALUE || size < frameSize) {
+                Log.e(TAG, "open(): " + file + " holds an unusable number of frames (" + size + " bytes).");
+                return false;
+            }
+            frameCount = (int) (size / frameSize);
+            framesPerChunk = Integer.MAX_VALUE / frameSize;
+            int chunkCount = (frameCount + framesPerChunk - 1) / framesPerChunk;
+            chunks = new MappedByteBuffer[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                long position = (long) i * framesPerChunk * frameSize;
+                long length = (long) Math.min(framesPerChunk, frameCount - i * framesPerChunk) * frameSize;
+                // The mapping stays valid once the channel is closed.
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "open(): Unable to map " + file + ": " + e.getMessage());
+            chunks = null;
+            return false;
+        }
+        frameIndex = 0;
+        return true;
+    }
+
+    @Override
+    protected boolean nextFrame(VideoFrame frame) {
+        if (frameIndex == frameCount) {
+            if (!looping) return false;
+            frameIndex = 0;
+        }
+        MappedByteBuffer chunk = chunks[frameIndex / framesPerChunk];
+        int offset = (frameIndex % framesPerChunk) * frameSize;
+        frameIndex++;
+
+        int lumaSize = width * height;
+        switch (pixelFormat) {
+            case "NV21":
+            case "NV12":
+                frame.setPlane(0, slice(chunk, offset, lumaSize), 1, width);
+                frame.setPlane(1, slice(chunk, offset + lumaSize, frameSize - lumaSize), 2, width);
+                frame.setPlaneCount(2);
+                break;
+            case "YUV_420_888":
+                int chromaSize = width / 2 * height / 2;
+                frame.setPlane(0, slice(chunk, offset, lumaSize), 1, width);
+                frame.setPlane(1, slice(chunk, offset + lumaSize, chromaSize), 1, width / 2);
+                frame.setPlane(2, slice(chunk, offset + lumaSize + chromaSize, chromaSize), 1, width / 2);
+                frame.setPlaneCount(3);
+                break;
+            default:
+                frame.setPlane(0, slice(chunk, offset, frameSize), frameSize / lumaSize, width * (frameSize / lumaSize));
+                frame.setPlaneCount(1);
+                break;
+        }
+        return true;
+    }
+
+    @Override
+    protected void close() {
+        // Mapped buffers are unmapped once they are no longer referenced.
+        chunks = null;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+        return view.slice();
+    }
+}
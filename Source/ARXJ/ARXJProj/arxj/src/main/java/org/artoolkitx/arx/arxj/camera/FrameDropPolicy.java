@@ -0,0 +1,55 @@
+package org.artoolkitx.arx.arxj.camera;
+
+/*
+ *  FrameDropPolicy.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+/**
+ * Decides what happens to a new camera frame when every slot of a {@link FrameRing} is in use.
+ */
+public enum FrameDropPolicy {
+    /**
+     * Discard the oldest frame still waiting for detection and queue the new one in its place.
+     * This keeps latency lowest.
+     */
+    DROP_OLDEST,
+    /**
+     * Discard the new frame and keep the frames already waiting.
+     */
+    DROP_NEWEST,
+    /**
+     * Make the camera thread wait until a slot is released. No frames are dropped by the ring,
+     * but the camera will stall once the ImageReader runs out of images.
+     */
+    BLOCK
+}
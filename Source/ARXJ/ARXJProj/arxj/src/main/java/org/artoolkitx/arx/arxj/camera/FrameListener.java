@@ -41,5 +41,11 @@ package org.artoolkitx.arx.arxj.camera;
 public interface FrameListener {
     void firstFrame(int cameraIndex);
 
-    void onFrameProcessed();
+    /**
+     * Called after a frame has been pushed to ARController and processed.
+     *
+     * @param frameId   ID of the processed frame.
+     * @param timestamp Sensor timestamp of the processed frame, in nanoseconds.
+     */
+    void onFrameProcessed(long frameId, long timestamp);
 }
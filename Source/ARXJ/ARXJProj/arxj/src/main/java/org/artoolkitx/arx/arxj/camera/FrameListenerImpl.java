@@ -72,7 +72,7 @@ public final class FrameListenerImpl implements FrameListener {
     }
 
     @Override
-    public void onFrameProcessed() {
+    public void onFrameProcessed(long frameId, long timestamp) {
         // Update the renderer as the frame has changed
         if (glSurfaceView != null) {
             glSurfaceView.requestRender();
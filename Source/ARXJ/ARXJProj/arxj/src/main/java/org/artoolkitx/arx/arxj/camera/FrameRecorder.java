@@ -0,0 +1,392 @@
+package org.artoolkitx.arx.arxj.camera;
+
+import android.util.Log;
+
+import org.artoolkitx.arx.arxj.VideoFrame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+
+/*
+ *  FrameRecorder.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+
+/**
+ * A {@link CameraEventListener} which records the frames passed to it into a file while passing
+ * all events on to another listener. The planes, strides, frame IDs and timestamps are recorded
+ * exactly as they are handed to the ARController push, so that a recording can be replayed
+ * bit-exactly with {@link RecordingFrameSource}. The file layout is described in
+ * {@link FrameRecordingFormat}.
+ * <p/>
+ * Frames are copied into one of a fixed number of buffers and written to the memory-mapped file
+ * by a background thread, so recording never blocks the listener thread and uses bounded memory.
+ * When all buffers are waiting to be written, the frame is passed on but not recorded, and
+ * counted in {@link #getDroppedFrameCount()}. Frames delivered as byte arrays are passed on but
+ * not recorded.
+ * <p/>
+ * The recording starts with the next call of
+ * {@link #cameraStreamStarted(int, int, String, int, boolean)} and is closed after
+ * {@link #cameraStreamStopped()} has been passed on.
+ */
+public final class FrameRecorder implements CameraEventListener {
+
+    private static final String TAG = FrameRecorder.class.getSimpleName();
+
+    /**
+     * Number of frames which may be waiting to be written when none is specified.
+     */
+    public static final int DEFAULT_BUFFER_COUNT = 4;
+
+    /**
+     * Size of the regions of the file which are mapped for writing at one time.
+     */
+    private static final int REGION_SIZE = 16 * 1024 * 1024;
+
+    private static final class PendingFrame {
+        private long frameId;
+        private long timestamp;
+        private int planeCount;
+        private final int[] pixelStrides = new int[VideoFrame.MAX_PLANES];
+        private final int[] rowStrides = new int[VideoFrame.MAX_PLANES];
+        private final int[] lengths = new int[VideoFrame.MAX_PLANES];
+        private ByteBuffer data;
+    }
+
+    // Queued to the writer thread to end the recording.
+    private static final PendingFrame END = new PendingFrame();
+
+    private final CameraEventListener listener;
+    private final File file;
+    private final int bufferCount;
+    private final BlockingQueue<PendingFrame> freeFrames;
+    private final BlockingQueue<PendingFrame> filledFrames;
+
+    private Thread writerThread;
+    private volatile boolean recording;
+    private volatile long recordedFrameCount;
+    private volatile long droppedFrameCount;
+
+    // Only used on the writer thread.
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private MappedByteBuffer region;
+    private long regionOffset;
+    private long writeOffset;
+    private long[] index = new long[1024];
+    private int indexCount;
+    private final ByteBuffer recordHeader = ByteBuffer.allocate(FrameRecordingFormat.RECORD_HEADER_SIZE
+            + VideoFrame.MAX_PLANES * FrameRecordingFormat.PLANE_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 checksum = new CRC32();
+
+    /**
+     * @param listener The listener to which all events are passed on.
+     * @param file     The file to record to. An existing file is overwritten.
+     */
+    public FrameRecorder(CameraEventListener listener, File file) {
+        this(listener, file, DEFAULT_BUFFER_COUNT);
+    }
+
+    /**
+     * @param listener    The listener to which all events are passed on.
+     * @param file        The file to record to. An existing file is overwritten.
+     * @param bufferCount Number of frames which may be waiting to be written.
+     */
+    public FrameRecorder(CameraEventListener listener, File file, int bufferCount) {
+        if (bufferCount < 1) throw new IllegalArgumentException("bufferCount must be at least 1");
+        this.listener = listener;
+        this.file = file;
+        this.bufferCount = bufferCount;
+        this.freeFrames = new ArrayBlockingQueue<>(bufferCount);
+        this.filledFrames = new ArrayBlockingQueue<>(bufferCount + 1);
+    }
+
+    /**
+     * @return The number of frames written to the current or last recording.
+     */
+    public long getRecordedFrameCount() {
+        return recordedFrameCount;
+    }
+
+    /**
+     * @return The number of frames which were not recorded because all buffers were waiting to be written.
+     */
+    public long getDroppedFrameCount() {
+        return droppedFrameCount;
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    @Override
+    public void cameraStreamStarted(int width, int height, String pixelFormat, int cameraIndex, boolean cameraIsFrontFacing) {
+        startRecording(width, height, pixelFormat, cameraIndex, cameraIsFrontFacing);
+        listener.cameraStreamStarted(width, height, pixelFormat, cameraIndex, cameraIsFrontFacing);
+    }
+
+    @Override
+    public void cameraStreamFrame(byte[] frame, int frameSize) {
+        listener.cameraStreamFrame(frame, frameSize);
+    }
+
+    @Override
+    public void cameraStreamFrame(VideoFrame frame) {
+        if (recording) {
+            PendingFrame pending = freeFrames.poll();
+            if (pending == null) {
+                droppedFrameCount++;
+            } else {
+                copyFrame(frame, pending);
+                filledFrames.add(pending);
+            }
+        }
+        listener.cameraStreamFrame(frame);
+    }
+
+    @Override
+    public void cameraStreamStopped() {
+        listener.cameraStreamStopped();
+        stopRecording();
+    }
+
+    private void startRecording(int width, int height, String pixelFormat, int cameraIndex, boolean cameraIsFrontFacing) {
+        if (recording) stopRecording();
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(0);
+            channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(FrameRecordingFormat.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(FrameRecordingFormat.MAGIC);
+            header.putInt(FrameRecordingFormat.VERSION);
+            header.putInt(width);
+            header.putInt(height);
+            header.putInt(cameraIndex);
+            header.putInt(cameraIsFrontFacing ? 1 : 0);
+            byte[] pixelFormatBytes = pixelFormat.getBytes(FrameRecordingFormat.ASCII);
+            header.put(pixelFormatBytes, 0, Math.min(pixelFormatBytes.length, FrameRecordingFormat.PIXEL_FORMAT_LENGTH));
+            header.clear();
+            channel.write(header, 0);
+        } catch (IOException e) {
+            Log.e(TAG, "startRecording(): Unable to create " + file + ": " + e.getMessage());
+            closeFile();
+            return;
+        }
+        writeOffset = FrameRecordingFormat.HEADER_SIZE;
+        region = null;
+        indexCount = 0;
+        recordedFrameCount = 0;
+        droppedFrameCount = 0;
+        freeFrames.clear();
+        filledFrames.clear();
+        for (int i = 0; i < bufferCount; i++) {
+            freeFrames.add(new PendingFrame());
+        }
+        recording = true;
+        writerThread = new Thread(writerRunnable, "ARXFrameRecorder");
+        writerThread.start();
+    }
+
+    /**
+     * Waits for all pending frames to be written, then writes the index and closes the file.
+     */
+    private void stopRecording() {
+        if (!recording) return;
+        recording = false;
+        filledFrames.add(END);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Log.e(TAG, "stopRecording(): Interrupted while waiting for the recording to be written.");
+            Thread.currentThread().interrupt();
+        }
+        writerThread = null;
+        Log.i(TAG, "stopRecording(): Recorded " + recordedFrameCount + " frames to " + file + ", dropped " + droppedFrameCount + ".");
+    }
+
+    private static void copyFrame(VideoFrame frame, PendingFrame pending) {
+        int planeCount = frame.getPlaneCount();
+        int size = 0;
+        for (int i = 0; i < planeCount; i++) {
+            // Native code reads each plane up to its capacity, so that is what is recorded.
+            size += frame.getPlane(i).capacity();
+        }
+        if (pending.data == null || pending.data.capacity() < size) {
+            pending.data = ByteBuffer.allocate(size);
+        }
+        pending.data.clear();
+        for (int i = 0; i < planeCount; i++) {
+            ByteBuffer plane = frame.getPlane(i).duplicate();
+            plane.clear();
+            pending.pixelStrides[i] = frame.getPixelStride(i);
+            pending.rowStrides[i] = frame.getRowStride(i);
+            pending.lengths[i] = plane.remaining();
+            pending.data.put(plane);
+        }
+        pending.data.flip();
+        pending.planeCount = planeCount;
+        pending.frameId = frame.getFrameId();
+        pending.timestamp = frame.getTimestamp();
+    }
+
+    private final Runnable writerRunnable = new Runnable() {
+        @Override
+        public void run() {
+            boolean failed = false;
+            boolean interrupted = false;
+            while (true) {
+                PendingFrame pending;
+                try {
+                    pending = filledFrames.take();
+                } catch (InterruptedException e) {
+                    // Keep writing until stopRecording() ends the recording, so that the file gets its
+                    // index, and restore the interrupt once done.
+                    interrupted = true;
+                    continue;
+                }
+                if (pending == END) break;
+                if (!failed) {
+                    try {
+                        writeFrame(pending);
+                        recordedFrameCount++;
+                    } catch (IOException e) {
+                        Log.e(TAG, "Unable to write to " + file + ", recording stopped: " + e.getMessage());
+                        failed = true;
+                    }
+                }
+                freeFrames.add(pending);
+            }
+            try {
+                writeIndex();
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to write index of " + file + ": " + e.getMessage());
+            }
+            closeFile();
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    };
+
+    private void writeFrame(PendingFrame pending) throws IOException {
+        int planeBytes = pending.data.remaining();
+        int length = FrameRecordingFormat.recordLength(pending.planeCount, planeBytes);
+        recordHeader.clear();
+        recordHeader.putInt(0); // RECORD_MAGIC, written once the rest of the record is in place.
+        recordHeader.putInt(length);
+        recordHeader.putLong(pending.frameId);
+        recordHeader.putLong(pending.timestamp);
+        recordHeader.putInt(pending.planeCount);
+        recordHeader.putInt(0);
+        for (int i = 0; i < pending.planeCount; i++) {
+            recordHeader.putInt(pending.pixelStrides[i]);
+            recordHeader.putInt(pending.rowStrides[i]);
+            recordHeader.putInt(pending.lengths[i]);
+        }
+        byte[] header = recordHeader.array();
+        checksum.reset();
+        checksum.update(header, 4, FrameRecordingFormat.CHECKSUM_OFFSET - 4);
+        checksum.update(header, FrameRecordingFormat.RECORD_HEADER_SIZE, recordHeader.position() - FrameRecordingFormat.RECORD_HEADER_SIZE);
+        checksum.update(pending.data.array(), pending.data.arrayOffset() + pending.data.position(), planeBytes);
+        recordHeader.putInt(FrameRecordingFormat.CHECKSUM_OFFSET, (int) checksum.getValue());
+        recordHeader.flip();
+
+        ByteBuffer out = reserve(length);
+        int start = out.position();
+        out.put(recordHeader);
+        out.put(pending.data);
+        while (out.position() - start < length) out.put((byte) 0);
+        out.putInt(start, FrameRecordingFormat.RECORD_MAGIC);
+
+        if (indexCount == index.length) {
+            long[] grown = new long[index.length * 2];
+            System.arraycopy(index, 0, grown, 0, indexCount);
+            index = grown;
+        }
+        index[indexCount++] = writeOffset;
+        writeOffset += length;
+    }
+
+    /**
+     * Returns the mapped region positioned at the current write offset, mapping a new region if
+     * fewer than the given number of bytes remain in the current one.
+     */
+    private ByteBuffer reserve(int length) throws IOException {
+        if (region == null || writeOffset + length > regionOffset + region.capacity()) {
+            regionOffset = writeOffset;
+            region = channel.map(FileChannel.MapMode.READ_WRITE, regionOffset, Math.max(REGION_SIZE, length));
+            region.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        region.position((int) (writeOffset - regionOffset));
+        return region;
+    }
+
+    private void writeIndex() throws IOException {
+        if (channel == null) return;
+        region = null;
+        // Mapping regions extends the file beyond the last record.
+        channel.truncate(writeOffset);
+        ByteBuffer out = ByteBuffer.allocate(8 + indexCount * 8 + FrameRecordingFormat.TRAILER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(FrameRecordingFormat.INDEX_MAGIC);
+        out.putInt(indexCount);
+        for (int i = 0; i < indexCount; i++) {
+            out.putLong(index[i]);
+        }
+        out.putLong(writeOffset);
+        out.putInt(FrameRecordingFormat.TRAILER_MAGIC);
+        out.putInt(0);
+        out.flip();
+        long position = writeOffset;
+        while (out.hasRemaining()) {
+            position += channel.write(out, position);
+        }
+    }
+
+    private void closeFile() {
+        region = null;
+        try {
+            if (channel != null) channel.close();
+            if (raf != null) raf.close();
+        } catch (IOException e) {
+            Log.e(TAG, "closeFile(): " + e.getMessage());
+        }
+        channel = null;
+        raf = null;
+    }
+}
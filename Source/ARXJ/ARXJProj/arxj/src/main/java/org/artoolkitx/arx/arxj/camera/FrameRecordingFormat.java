@@ -0,0 +1,103 @@
+package org.artoolkitx.arx.arxj.camera;
+
+import java.nio.charset.Charset;
+
+/*
+ *  FrameRecordingFormat.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+
+/**
+ * Layout of the frame recording files written by {@link FrameRecorder} and read by
+ * {@link FrameRecordingReader}. All values are little-endian.
+ * <pre>
+ * File header (64 bytes):
+ *   0  8 bytes  MAGIC
+ *   8  int      VERSION
+ *  12  int      width
+ *  16  int      height
+ *  20  int      camera index
+ *  24  int      1 if the camera is front-facing, otherwise 0
+ *  28  16 bytes pixel format, ASCII, zero-padded
+ *  44  20 bytes reserved
+ * Frame record, one per frame, starting at offset 64:
+ *   0  int      RECORD_MAGIC
+ *   4  int      total length of the record in bytes, a multiple of 8
+ *   8  long     frame ID
+ *  16  long     sensor timestamp in nanoseconds
+ *  24  int      plane count n
+ *  28  int      checksum: CRC-32 of bytes 4 to 27, then of the plane table and plane bytes
+ *  32  n x (int pixel stride, int row stride, int length)
+ *      followed by the bytes of each plane in order, then zero padding
+ * Index, written when the recording is closed:
+ *   0  int      INDEX_MAGIC
+ *   4  int      frame count m
+ *   8  m x long offset of each frame record
+ * Trailer (16 bytes, at the very end of the file):
+ *   0  long     offset of the index
+ *   8  int      TRAILER_MAGIC
+ *  12  int      reserved
+ * </pre>
+ * A recording which was not closed (e.g. because the process died) has no index or trailer;
+ * the reader then recovers all complete frame records by scanning the file. Since the file is
+ * extended in large steps, a record cut short is followed by zeros rather than by the end of the
+ * file. RECORD_MAGIC is therefore written last, once the rest of the record is in place, and
+ * records whose checksum does not match are not recovered.
+ */
+final class FrameRecordingFormat {
+
+    static final Charset ASCII = Charset.forName("US-ASCII");
+    static final byte[] MAGIC = "ARXFRMS1".getBytes(ASCII);
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int PIXEL_FORMAT_OFFSET = 28;
+    static final int PIXEL_FORMAT_LENGTH = 16;
+    static final int RECORD_MAGIC = 0x4D524641; // "AFRM"
+    static final int RECORD_HEADER_SIZE = 32;
+    static final int CHECKSUM_OFFSET = 28;
+    static final int PLANE_ENTRY_SIZE = 12;
+    static final int INDEX_MAGIC = 0x58444941; // "AIDX"
+    static final int TRAILER_MAGIC = 0x444E4541; // "AEND"
+    static final int TRAILER_SIZE = 16;
+
+    private FrameRecordingFormat() {
+    }
+
+    /**
+     * @return The length of a frame record holding planes of the given total size, padded to a multiple of 8.
+     */
+    static int recordLength(int planeCount, int planeBytes) {
+        int length = RECORD_HEADER_SIZE + planeCount * PLANE_ENTRY_SIZE + planeBytes;
+        return (length + 7) & ~7;
+    }
+}
@@ -0,0 +1,317 @@
+package org.artoolkitx.arx.arxj.camera;
+
+import org.artoolkitx.arx.arxj.VideoFrame;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/*
+ *  FrameRecordingReader.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+
+/**
+ * Gives random access by frame number to a recording written by {@link FrameRecorder}. Frame
+ * planes are returned as slices of the memory-mapped file. If the recording was not closed
+ * properly, all complete frames are recovered by scanning the file, up to the first record which
+ * is incomplete or fails its checksum.
+ * <p/>
+ * A reader is not thread-safe.
+ */
+public final class FrameRecordingReader implements Closeable {
+
+    /**
+     * Size of the regions of the file which are mapped for reading at one time.
+     */
+    private static final int REGION_SIZE = 64 * 1024 * 1024;
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int width;
+    private final int height;
+    private final String pixelFormat;
+    private final int cameraIndex;
+    private final boolean cameraIsFrontFacing;
+    private final long[] offsets;
+    private final ByteBuffer recordHeader = ByteBuffer.allocate(FrameRecordingFormat.RECORD_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private MappedByteBuffer region;
+    private long regionOffset;
+    // Only used while scanning a recording which was not closed.
+    private CRC32 checksum;
+    private byte[] checksumScratch;
+
+    /**
+     * Opens a recording and reads its index.
+     *
+     * @param file The recording to open.
+     * @throws IOException if the file could not be read or is not a frame recording.
+     */
+    public FrameRecordingReader(File file) throws IOException {
+        raf = new RandomAccessFile(file, "r");
+        channel = raf.getChannel();
+        try {
+            fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(FrameRecordingFormat.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, 0);
+            byte[] magic = new byte[FrameRecordingFormat.MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, FrameRecordingFormat.MAGIC)) {
+                throw new IOException(file + " is not a frame recording");
+            }
+            int version = header.getInt();
+            if (version != FrameRecordingFormat.VERSION) {
+                throw new IOException(file + " has unsupported version " + version);
+            }
+            width = header.getInt();
+            height = header.getInt();
+            cameraIndex = header.getInt();
+            cameraIsFrontFacing = (header.getInt() != 0);
+            byte[] pixelFormatBytes = new byte[FrameRecordingFormat.PIXEL_FORMAT_LENGTH];
+            header.get(pixelFormatBytes);
+            int pixelFormatLength = 0;
+            while (pixelFormatLength < pixelFormatBytes.length && pixelFormatBytes[pixelFormatLength] != 0) pixelFormatLength++;
+            pixelFormat = new String(pixelFormatBytes, 0, pixelFormatLength, FrameRecordingFormat.ASCII);
+
+            long[] indexed = readIndex();
+            offsets = (indexed != null ? indexed : scanRecords());
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public String getPixelFormat() {
+        return pixelFormat;
+    }
+
+    public int getCameraIndex() {
+        return cameraIndex;
+    }
+
+    public boolean isCameraFrontFacing() {
+        return cameraIsFrontFacing;
+    }
+
+    public int getFrameCount() {
+        return offsets.length;
+    }
+
+    /**
+     * Fills a VideoFrame with the planes, strides, frame ID and timestamp of a recorded frame. The
+     * plane buffers remain valid until the next call of this method or until the reader is closed.
+     *
+     * @param frameIndex 0-based number of the frame within the recording.
+     * @param frame      The frame to fill.
+     * @throws IOException if the frame could not be read.
+     */
+    public void readFrame(int frameIndex, VideoFrame frame) throws IOException {
+        long offset = offsets[frameIndex];
+        recordHeader.clear();
+        readFully(recordHeader, offset);
+        recordHeader.getInt(); // Magic, checked when the index was read.
+        int length = recordHeader.getInt();
+        long frameId = recordHeader.getLong();
+        long timestamp = recordHeader.getLong();
+        int planeCount = recordHeader.getInt();
+
+        ByteBuffer record = map(offset, length);
+        int entry = record.position() + FrameRecordingFormat.RECORD_HEADER_SIZE;
+        int data = entry + planeCount * FrameRecordingFormat.PLANE_ENTRY_SIZE;
+        for (int i = 0; i < planeCount; i++) {
+            int pixelStride = record.getInt(entry);
+            int rowStride = record.getInt(entry + 4);
+            int planeLength = record.getInt(entry + 8);
+            entry += FrameRecordingFormat.PLANE_ENTRY_SIZE;
+            ByteBuffer plane = record.duplicate();
+            plane.limit(data + planeLength);
+            plane.position(data);
+            frame.setPlane(i, plane.slice(), pixelStride, rowStride);
+            data += planeLength;
+        }
+        frame.setPlaneCount(planeCount);
+        frame.setFrameInfo(frameId, timestamp);
+    }
+
+    /**
+     * @return The ID the frame was recorded with.
+     * @throws IOException if the frame could not be read.
+     */
+    public long getFrameId(int frameIndex) throws IOException {
+        recordHeader.clear();
+        readFully(recordHeader, offsets[frameIndex]);
+        return recordHeader.getLong(8);
+    }
+
+    /**
+     * @return The sensor timestamp the frame was recorded with, in nanoseconds.
+     * @throws IOException if the frame could not be read.
+     */
+    public long getFrameTimestamp(int frameIndex) throws IOException {
+        recordHeader.clear();
+        readFully(recordHeader, offsets[frameIndex]);
+        return recordHeader.getLong(16);
+    }
+
+    @Override
+    public void close() throws IOException {
+        region = null;
+        channel.close();
+        raf.close();
+    }
+
+    /**
+     * @return The record offsets from the index at the end of the file, or null if there is no valid index.
+     */
+    private long[] readIndex() throws IOException {
+        if (fileSize < FrameRecordingFormat.HEADER_SIZE + FrameRecordingFormat.TRAILER_SIZE + 8) return null;
+        ByteBuffer trailer = ByteBuffer.allocate(FrameRecordingFormat.TRAILER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(trailer, fileSize - FrameRecordingFormat.TRAILER_SIZE);
+        long indexOffset = trailer.getLong();
+        if (trailer.getInt() != FrameRecordingFormat.TRAILER_MAGIC) return null;
+        if (indexOffset < FrameRecordingFormat.HEADER_SIZE || indexOffset + 8 > fileSize - FrameRecordingFormat.TRAILER_SIZE) return null;
+
+        ByteBuffer indexHeader = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(indexHeader, indexOffset);
+        if (indexHeader.getInt() != FrameRecordingFormat.INDEX_MAGIC) return null;
+        int count = indexHeader.getInt();
+        if (count < 0 || indexOffset + 8 + (long) count * 8 != fileSize - FrameRecordingFormat.TRAILER_SIZE) return null;
+
+        ByteBuffer index = ByteBuffer.allocate(count * 8).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(index, indexOffset + 8);
+        long[] result = new long[count];
+        index.asLongBuffer().get(result);
+        return result;
+    }
+
+    /**
+     * @return The offsets of all complete frame records, found by walking the records from the start of the file.
+     */
+    private long[] scanRecords() throws IOException {
+        long[] result = new long[1024];
+        int count = 0;
+        long offset = FrameRecordingFormat.HEADER_SIZE;
+        checksum = new CRC32();
+        checksumScratch = new byte[64 * 1024];
+        while (offset + FrameRecordingFormat.RECORD_HEADER_SIZE <= fileSize) {
+            recordHeader.clear();
+            readFully(recordHeader, offset);
+            if (recordHeader.getInt() != FrameRecordingFormat.RECORD_MAGIC) break;
+            int length = recordHeader.getInt();
+            if (length < FrameRecordingFormat.RECORD_HEADER_SIZE || offset + length > fileSize) break;
+            if (!isRecordIntact(offset, length)) break;
+            if (count == result.length) result = Arrays.copyOf(result, count * 2);
+            result[count++] = offset;
+            offset += length;
+        }
+        checksum = null;
+        checksumScratch = null;
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * @return true if the plane table of the record just read into recordHeader matches its length,
+     * and the record matches its checksum.
+     */
+    private boolean isRecordIntact(long offset, int length) throws IOException {
+        int planeCount = recordHeader.getInt(24);
+        if (planeCount < 0 || planeCount > VideoFrame.MAX_PLANES) return false;
+        int tableLength = planeCount * FrameRecordingFormat.PLANE_ENTRY_SIZE;
+        if (FrameRecordingFormat.RECORD_HEADER_SIZE + tableLength > length) return false;
+
+        ByteBuffer record = map(offset, length).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int start = record.position();
+        long planeBytes = 0;
+        for (int i = 0; i < planeCount; i++) {
+            int planeLength = record.getInt(start + FrameRecordingFormat.RECORD_HEADER_SIZE + i * FrameRecordingFormat.PLANE_ENTRY_SIZE + 8);
+            if (planeLength < 0) return false;
+            planeBytes += planeLength;
+        }
+        if (planeBytes > length || FrameRecordingFormat.recordLength(planeCount, (int) planeBytes) != length) return false;
+
+        checksum.reset();
+        updateChecksum(record, start + 4, FrameRecordingFormat.CHECKSUM_OFFSET - 4);
+        updateChecksum(record, start + FrameRecordingFormat.RECORD_HEADER_SIZE, tableLength + (int) planeBytes);
+        return (int) checksum.getValue() == record.getInt(start + FrameRecordingFormat.CHECKSUM_OFFSET);
+    }
+
+    private void updateChecksum(ByteBuffer buffer, int position, int length) {
+        buffer.position(position);
+        while (length > 0) {
+            int chunk = Math.min(length, checksumScratch.length);
+            buffer.get(checksumScratch, 0, chunk);
+            checksum.update(checksumScratch, 0, chunk);
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Returns a buffer positioned at the given offset with at least length bytes remaining,
+     * mapping a new region of the file if necessary.
+     */
+    private ByteBuffer map(long offset, int length) throws IOException {
+        if (region == null || offset < regionOffset || offset + length > regionOffset + region.capacity()) {
+            regionOffset = offset;
+            long regionLength = Math.min(Math.max((long) REGION_SIZE, length), fileSize - offset);
+            region = channel.map(FileChannel.MapMode.READ_ONLY, offset, regionLength);
+            region.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        region.position((int) (offset - regionOffset));
+        return region;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new IOException("Unexpected end of recording");
+            position += read;
+        }
+        buffer.flip();
+    }
+}
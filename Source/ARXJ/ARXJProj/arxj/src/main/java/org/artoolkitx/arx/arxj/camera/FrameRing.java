@@ -0,0 +1,216 @@
+package org.artoolkitx.arx.arxj.camera;
+
+import android.util.Log;
+
+import org.artoolkitx.arx.arxj.VideoFrame;
+
+/*
+ *  FrameRing.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+/**
+ * A bounded ring of preallocated frame slots which hands frames from the camera thread to the
+ * detection thread. The producer {@link #acquire() acquires} a slot, fills its {@link VideoFrame}
+ * and {@link #publish(Slot) publishes} it; the consumer {@link #poll() polls} published slots in
+ * order and {@link #release(Slot) releases} them once processed. When all slots are in use, the
+ * {@link FrameDropPolicy} decides whether a frame is dropped or the producer waits.
+ * <p/>
+ * Each slot may own a resource (e.g. the camera Image backing its planes) which is closed when
+ * the slot is released or its frame is dropped.
+ */
+public final class FrameRing {
+
+    private static final String TAG = FrameRing.class.getSimpleName();
+
+    /**
+     * Number of slots used when none is specified: one frame being detected plus one waiting.
+     */
+    public static final int DEFAULT_CAPACITY = 2;
+
+    public static final class Slot {
+        private final VideoFrame frame = new VideoFrame();
+        private AutoCloseable resource;
+
+        public VideoFrame getFrame() {
+            return frame;
+        }
+
+        /**
+         * @param resource Resource backing the frame's planes, closed when the slot is recycled.
+         */
+        public void setResource(AutoCloseable resource) {
+            this.resource = resource;
+        }
+
+        private void recycle() {
+            frame.clear();
+            if (resource != null) {
+                try {
+                    resource.close();
+                } catch (Exception ex) {
+                    Log.e(TAG, "recycle(): exception closing frame resource, " + ex.getMessage());
+                }
+                resource = null;
+            }
+        }
+    }
+
+    private final FrameDropPolicy policy;
+    private final Slot[] free;
+    private int freeCount;
+    private final Slot[] pending;
+    private int pendingHead;
+    private int pendingCount;
+    private boolean closed;
+    private long droppedFrameCount;
+
+    public FrameRing(int capacity, FrameDropPolicy policy) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        this.policy = policy;
+        free = new Slot[capacity];
+        pending = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            free[i] = new Slot();
+        }
+        freeCount = capacity;
+    }
+
+    public int getCapacity() {
+        return free.length;
+    }
+
+    public FrameDropPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Gets an empty slot for a new frame. Called on the producer thread.
+     *
+     * @return An empty slot, or null if the new frame is to be dropped or the ring is closed.
+     */
+    public Slot acquire() {
+        Slot slot = null;
+        synchronized (this) {
+            while (!closed) {
+                if (freeCount > 0) {
+                    slot = free[--freeCount];
+                    break;
+                }
+                if (policy == FrameDropPolicy.BLOCK) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return null;
+                    }
+                    continue;
+                }
+                droppedFrameCount++;
+                if (policy == FrameDropPolicy.DROP_OLDEST && pendingCount > 0) {
+                    slot = pollPending();
+                }
+                break;
+            }
+        }
+        // A slot taken over from the pending queue still holds the dropped frame.
+        if (slot != null) slot.recycle();
+        return slot;
+    }
+
+    /**
+     * Queues a filled slot for the consumer. If the ring has been closed the slot is released.
+     */
+    public void publish(Slot slot) {
+        synchronized (this) {
+            if (!closed) {
+                pending[(pendingHead + pendingCount) % pending.length] = slot;
+                pendingCount++;
+                notifyAll();
+                return;
+            }
+        }
+        release(slot);
+    }
+
+    /**
+     * Takes the oldest published slot. Called on the consumer thread.
+     *
+     * @return The oldest published slot, or null if none is waiting.
+     */
+    public synchronized Slot poll() {
+        if (pendingCount == 0) return null;
+        return pollPending();
+    }
+
+    /**
+     * Returns a slot obtained from {@link #poll()} (or {@link #acquire()}) to the ring, closing
+     * its resource.
+     */
+    public void release(Slot slot) {
+        slot.recycle();
+        synchronized (this) {
+            free[freeCount++] = slot;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Closes the ring. Waiting frames are dropped, a blocked producer is woken, and later calls
+     * to {@link #acquire()} return null. Slots currently held by the consumer must still be released.
+     */
+    public void close() {
+        Slot slot;
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        while ((slot = poll()) != null) {
+            release(slot);
+        }
+    }
+
+    /**
+     * @return The number of frames dropped because all slots were in use.
+     */
+    public synchronized long getDroppedFrameCount() {
+        return droppedFrameCount;
+    }
+
+    private Slot pollPending() {
+        Slot slot = pending[pendingHead];
+        pending[pendingHead] = null;
+        pendingHead = (pendingHead + 1) % pending.length;
+        pendingCount--;
+        return slot;
+    }
+}
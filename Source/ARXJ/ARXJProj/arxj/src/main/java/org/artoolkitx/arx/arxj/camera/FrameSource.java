@@ -0,0 +1,75 @@
+package org.artoolkitx.arx.arxj.camera;
+
+/*
+ *  FrameSource.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+
+/**
+ * A source of video frames other than the device camera, e.g. a recorded sequence or
+ * generated frames. A FrameSource delivers its frames through the same
+ * {@link CameraEventListener} contract as {@link CameraSurface}, so the ARController push and
+ * detection path can be driven by it unchanged.
+ * <p/>
+ * Frame sources do not depend on the Android framework, so that detection can also be exercised
+ * off-device.
+ */
+public interface FrameSource {
+
+    /**
+     * Sets the rate at which frames are delivered. Takes effect for the next frame.
+     *
+     * @param framesPerSecond Target frame rate, or 0 to deliver frames as fast as the listener
+     *                        consumes them.
+     */
+    void setFrameRate(float framesPerSecond);
+
+    /**
+     * Starts delivering frames to the listener. All listener methods are called on a thread
+     * owned by the source, starting with
+     * {@link CameraEventListener#cameraStreamStarted(int, int, String, int, boolean)} and ending
+     * with {@link CameraEventListener#cameraStreamStopped()}.
+     *
+     * @param listener The listener to deliver frames to.
+     * @return true if the source was started, false if it could not be opened or is already running.
+     */
+    boolean start(CameraEventListener listener);
+
+    /**
+     * Stops delivering frames and waits until the listener has been sent
+     * {@link CameraEventListener#cameraStreamStopped()}. Must not be called from the listener.
+     */
+    void stop();
+
+    boolean isRunning();
+}
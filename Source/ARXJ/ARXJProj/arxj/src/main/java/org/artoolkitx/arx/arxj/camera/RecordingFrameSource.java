@@ -0,0 +1,153 @@
+package org.artoolkitx.arx.arxj.camera;
+
+import android.util.Log;
+
+import org.artoolkitx.arx.arxj.VideoFrame;
+
+import java.io.File;
+import java.io.IOException;
+
+/*
+ *  RecordingFrameSource.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+
+/**
+ * Replays a recording written by {@link FrameRecorder}. Frames are delivered with the planes,
+ * strides, frame IDs and timestamps they were recorded with, so detection sees exactly the
+ * input it saw when the recording was made.
+ */
+public final class RecordingFrameSource extends ThreadedFrameSource {
+
+    private static final String TAG = RecordingFrameSource.class.getSimpleName();
+
+    private final File file;
+    private volatile boolean looping = false;
+    private volatile int firstFrame = 0;
+    private FrameRecordingReader reader;
+    private int frameIndex;
+
+    public RecordingFrameSource(File file) {
+        super("ARXRecordingFrameSource");
+        this.file = file;
+    }
+
+    /**
+     * Sets whether replay restarts from the first frame after the last one. Otherwise the source
+     * stops at the end of the recording. Frame IDs repeat with each pass.
+     */
+    public void setLooping(boolean looping) {
+        this.looping = looping;
+    }
+
+    /**
+     * Sets the number of the frame from which replay starts. Takes effect the next time the source
+     * is started.
+     */
+    public void setFirstFrame(int firstFrame) {
+        this.firstFrame = firstFrame;
+    }
+
+    /**
+     * @return The reader of the recording. Valid while the source is running.
+     */
+    public FrameRecordingReader getReader() {
+        return reader;
+    }
+
+    @Override
+    public int getWidth() {
+        return reader.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return reader.getHeight();
+    }
+
+    @Override
+    public String getPixelFormat() {
+        return reader.getPixelFormat();
+    }
+
+    @Override
+    protected int getCameraIndex() {
+        return reader.getCameraIndex();
+    }
+
+    @Override
+    protected boolean isCameraFrontFacing() {
+        return reader.isCameraFrontFacing();
+    }
+
+    @Override
+    protected boolean open() {
+        try {
+            reader = new FrameRecordingReader(file);
+        } catch (IOException e) {
+            Log.e(TAG, "open(): Unable to open " + file + ": " + e.getMessage());
+            return false;
+        }
+        if (firstFrame < 0 || firstFrame >= reader.getFrameCount()) {
+            Log.e(TAG, "open(): " + file + " has no frame " + firstFrame + ".");
+            close();
+            return false;
+        }
+        frameIndex = firstFrame;
+        return true;
+    }
+
+    @Override
+    protected boolean nextFrame(VideoFrame frame) {
+        if (frameIndex == reader.getFrameCount()) {
+            if (!looping) return false;
+            frameIndex = 0;
+        }
+        try {
+            reader.readFrame(frameIndex++, frame);
+        } catch (IOException e) {
+            Log.e(TAG, "nextFrame(): Unable to read frame " + (frameIndex - 1) + ": " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    protected void close() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            Log.e(TAG, "close(): " + e.getMessage());
+        }
+    }
+}
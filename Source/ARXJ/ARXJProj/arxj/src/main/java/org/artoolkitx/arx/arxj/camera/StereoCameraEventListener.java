@@ -0,0 +1,199 @@
+package org.artoolkitx.arx.arxj.camera;
+
+/*
+ *  StereoCameraEventListener.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+import android.app.Activity;
+import android.util.Log;
+
+import org.artoolkitx.arx.arxj.ARController;
+import org.artoolkitx.arx.arxj.VideoFrame;
+
+/**
+ * Drives stereo tracking from two camera streams. Each camera is given its own
+ * {@link CameraEventListener}, from {@link #getLeftListener()} and {@link #getRightListener()},
+ * which push frames to video sources 0 and 1 of the ARController. The two cameras normally run on
+ * their own threads, so that left and right frames are pushed concurrently; tracking runs on
+ * whichever thread completes a pair.
+ * <p/>
+ * Stereo tracking starts once both streams have started, and frames arriving before then are
+ * dropped. It stops when the first stream stops. Only frames delivered as {@link VideoFrame}s are
+ * supported.
+ */
+public class StereoCameraEventListener {
+
+    private static final String TAG = StereoCameraEventListener.class.getSimpleName();
+
+    private final Activity arActivity;
+    private final FrameListener frameListener;
+    private final int leftCameraDeviceId;
+    private final int rightCameraDeviceId;
+    private final String cameraParaPathL;
+    private final String cameraParaPathR;
+    private final String transL2RPath;
+    private final Side left = new Side(0);
+    private final Side right = new Side(1);
+    /**
+     * Set while stereo video is running in the ARController. Written under the lock on this object.
+     */
+    private volatile boolean running;
+    private boolean firstUpdate;
+
+    /**
+     * @param arActivity          Activity to finish if stereo tracking cannot be started.
+     * @param frameListener       Listener told of each tracked stereo pair.
+     * @param leftCameraDeviceId  Camera2 ID of the left camera.
+     * @param rightCameraDeviceId Camera2 ID of the right camera.
+     * @param cameraParaPathL     Path to the camera parameter file of the left camera.
+     * @param cameraParaPathR     Path to the camera parameter file of the right camera.
+     * @param transL2RPath        Path to the file holding the transformation from the left to the right camera.
+     */
+    public StereoCameraEventListener(Activity arActivity, FrameListener frameListener,
+                                     int leftCameraDeviceId, int rightCameraDeviceId,
+                                     String cameraParaPathL, String cameraParaPathR, String transL2RPath) {
+        this.arActivity = arActivity;
+        this.frameListener = frameListener;
+        this.leftCameraDeviceId = leftCameraDeviceId;
+        this.rightCameraDeviceId = rightCameraDeviceId;
+        this.cameraParaPathL = cameraParaPathL;
+        this.cameraParaPathR = cameraParaPathR;
+        this.transL2RPath = transL2RPath;
+    }
+
+    public CameraEventListener getLeftListener() {
+        return left;
+    }
+
+    public CameraEventListener getRightListener() {
+        return right;
+    }
+
+    public int getLeftCameraDeviceId() {
+        return leftCameraDeviceId;
+    }
+
+    public int getRightCameraDeviceId() {
+        return rightCameraDeviceId;
+    }
+
+    private synchronized void onStreamStarted() {
+        if (running || !left.started || !right.started) return;
+        if (!left.pixelFormat.equals(right.pixelFormat)) {
+            Log.e(TAG, "Left and right cameras deliver different pixel formats. Cannot continue.");
+            arActivity.finish();
+            return;
+        }
+        if (ARController.getInstance().startWithPushedVideoStereo(left.width, left.height, right.width, right.height, left.pixelFormat,
+                cameraParaPathL, cameraParaPathR, transL2RPath, left.cameraIndex, right.cameraIndex)) {
+            Log.i(TAG, "Initialised stereo AR.");
+            firstUpdate = true;
+            running = true;
+        } else {
+            Log.e(TAG, "Error initialising stereo AR. Cannot continue.");
+            arActivity.finish();
+        }
+    }
+
+    private synchronized void onStreamStopped() {
+        if (!running) return;
+        running = false;
+        ARController.getInstance().stopAndFinal();
+    }
+
+    private void onFrame(int videoSourceIndex, VideoFrame frame) {
+        if (!running) return;
+        ARController arController = ARController.getInstance();
+        if (arController.convertAndDetectStereo(videoSourceIndex, frame)) {
+            synchronized (this) {
+                if (firstUpdate) {
+                    frameListener.firstFrame(left.cameraIndex);
+                    firstUpdate = false;
+                }
+            }
+            frameListener.onFrameProcessed(arController.getPoseFrameId(), arController.getPoseTimestamp());
+        }
+    }
+
+    /**
+     * The listener for one camera of the pair.
+     */
+    private final class Side implements CameraEventListener {
+
+        private final int videoSourceIndex;
+        // Written under the lock on the enclosing listener.
+        private boolean started;
+        private int width;
+        private int height;
+        private String pixelFormat;
+        private int cameraIndex;
+        private boolean warnedByteFrames;
+
+        Side(int videoSourceIndex) {
+            this.videoSourceIndex = videoSourceIndex;
+        }
+
+        @Override
+        public void cameraStreamStarted(int width, int height, String pixelFormat, int cameraIndex, boolean cameraIsFrontFacing) {
+            synchronized (StereoCameraEventListener.this) {
+                this.width = width;
+                this.height = height;
+                this.pixelFormat = pixelFormat;
+                this.cameraIndex = cameraIndex;
+                started = true;
+            }
+            onStreamStarted();
+        }
+
+        @Override
+        public void cameraStreamFrame(byte[] frame, int frameSize) {
+            if (!warnedByteFrames) {
+                Log.w(TAG, "Stereo tracking does not support byte array frames; frames from camera " + videoSourceIndex + " are dropped.");
+                warnedByteFrames = true;
+            }
+        }
+
+        @Override
+        public void cameraStreamFrame(VideoFrame frame) {
+            onFrame(videoSourceIndex, frame);
+        }
+
+        @Override
+        public void cameraStreamStopped() {
+            synchronized (StereoCameraEventListener.this) {
+                started = false;
+            }
+            onStreamStopped();
+        }
+    }
+}
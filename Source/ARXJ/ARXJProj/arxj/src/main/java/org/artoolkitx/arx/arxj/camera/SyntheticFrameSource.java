@@ -0,0 +1,221 @@
+package org.artoolkitx.arx.arxj.camera;
+
+import org.artoolkitx.arx.arxj.VideoFrame;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+ *  SyntheticFrameSource.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+
+/**
+ * Generates NV21 frames showing a square marker on a plain background. The marker orbits the
+ * centre of the frame while spinning about its own centre, and its pose depends only on the frame
+ * index, so a given configuration always produces the same sequence of frames.
+ * <p/>
+ * By default the marker is a black-bordered square with an asymmetric interior. To exercise
+ * detection of a particular trackable, supply its image with {@link #setMarker(byte[], int)}.
+ */
+public final class SyntheticFrameSource extends ThreadedFrameSource {
+
+    private static final int DEFAULT_MARKER_SIZE = 16;
+    private static final byte BACKGROUND_LUMA = (byte) 160;
+    private static final byte NEUTRAL_CHROMA = (byte) 128;
+
+    private final int width;
+    private final int height;
+    private byte[] marker;
+    private int markerSize;
+    private float markerScale = 1.0f / 3.0f;
+    private float orbitDegreesPerFrame = 1.0f;
+    private float spinDegreesPerFrame = 0.5f;
+    private long frameLimit = 0;
+
+    private byte[] luma;
+    private ByteBuffer lumaBuffer;
+    private ByteBuffer chromaBuffer;
+    private long frameIndex;
+
+    /**
+     * @param width  Width of the generated frames in pixels. Must be even.
+     * @param height Height of the generated frames in pixels. Must be even.
+     */
+    public SyntheticFrameSource(int width, int height) {
+        super("ARXSyntheticFrameSource");
+        this.width = width;
+        this.height = height;
+        setMarker(defaultMarker(), DEFAULT_MARKER_SIZE);
+    }
+
+    /**
+     * Sets the image of the marker, including its border. Must be called before the source is started.
+     *
+     * @param markerLuma Luminance of the marker, size x size bytes in row order.
+     * @param size       Width and height of the marker image in pixels.
+     */
+    public void setMarker(byte[] markerLuma, int size) {
+        if (markerLuma.length < size * size) {
+            throw new IllegalArgumentException("Marker image holds fewer than " + size + "x" + size + " pixels");
+        }
+        this.marker = markerLuma;
+        this.markerSize = size;
+    }
+
+    /**
+     * Sets the size of the marker relative to the shorter side of the frame. Must be called before
+     * the source is started.
+     */
+    public void setMarkerScale(float scale) {
+        this.markerScale = scale;
+    }
+
+    /**
+     * Sets the motion of the marker. Must be called before the source is started.
+     *
+     * @param orbitDegreesPerFrame Angle by which the marker moves around the centre of the frame per frame.
+     * @param spinDegreesPerFrame  Angle by which the marker rotates about its own centre per frame.
+     */
+    public void setMotion(float orbitDegreesPerFrame, float spinDegreesPerFrame) {
+        this.orbitDegreesPerFrame = orbitDegreesPerFrame;
+        this.spinDegreesPerFrame = spinDegreesPerFrame;
+    }
+
+    /**
+     * Sets the number of frames after which the source stops, or 0 to generate frames until stopped.
+     * Must be called before the source is started.
+     */
+    public void setFrameLimit(long frameLimit) {
+        this.frameLimit = frameLimit;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public String getPixelFormat() {
+        return "NV21";
+    }
+
+    @Override
+    protected boolean open() {
+        if (width <= 0 || height <= 0 || (width & 1) != 0 || (height & 1) != 0) return false;
+        luma = new byte[width * height];
+        lumaBuffer = ByteBuffer.allocateDirect(width * height);
+        chromaBuffer = ByteBuffer.allocateDirect(2 * (width / 2 * height / 2));
+        while (chromaBuffer.hasRemaining()) chromaBuffer.put(NEUTRAL_CHROMA);
+        chromaBuffer.clear();
+        frameIndex = 0;
+        return true;
+    }
+
+    @Override
+    protected boolean nextFrame(VideoFrame frame) {
+        if (frameLimit > 0 && frameIndex == frameLimit) return false;
+        render(frameIndex++);
+        lumaBuffer.clear();
+        lumaBuffer.put(luma);
+        lumaBuffer.clear();
+        frame.setPlane(0, lumaBuffer, 1, width);
+        frame.setPlane(1, chromaBuffer, 2, width);
+        frame.setPlaneCount(2);
+        return true;
+    }
+
+    @Override
+    protected void close() {
+        luma = null;
+        lumaBuffer = null;
+        chromaBuffer = null;
+    }
+
+    /**
+     * Draws the marker into the luma plane at its pose for the given frame.
+     */
+    private void render(long index) {
+        Arrays.fill(luma, BACKGROUND_LUMA);
+
+        int shortSide = Math.min(width, height);
+        float side = shortSide * markerScale;
+        float orbitRadius = Math.max(0.0f, (shortSide - side * (float) Math.sqrt(2.0)) / 2.0f);
+        double orbit = Math.toRadians(index * orbitDegreesPerFrame);
+        double spin = Math.toRadians(index * spinDegreesPerFrame);
+        float cx = width / 2.0f + orbitRadius * (float) Math.cos(orbit);
+        float cy = height / 2.0f + orbitRadius * (float) Math.sin(orbit);
+        float cos = (float) Math.cos(spin);
+        float sin = (float) Math.sin(spin);
+
+        float halfDiagonal = side * (float) Math.sqrt(2.0) / 2.0f;
+        int x0 = Math.max(0, (int) (cx - halfDiagonal));
+        int x1 = Math.min(width - 1, (int) (cx + halfDiagonal));
+        int y0 = Math.max(0, (int) (cy - halfDiagonal));
+        int y1 = Math.min(height - 1, (int) (cy + halfDiagonal));
+        float markerPixelsPerPixel = markerSize / side;
+        for (int y = y0; y <= y1; y++) {
+            float dy = y + 0.5f - cy;
+            for (int x = x0; x <= x1; x++) {
+                float dx = x + 0.5f - cx;
+                // Rotate back into the marker's frame of reference.
+                float u = (dx * cos + dy * sin) * markerPixelsPerPixel + markerSize / 2.0f;
+                float v = (-dx * sin + dy * cos) * markerPixelsPerPixel + markerSize / 2.0f;
+                if (u < 0.0f || v < 0.0f || u >= markerSize || v >= markerSize) continue;
+                luma[y * width + x] = marker[(int) v * markerSize + (int) u];
+            }
+        }
+    }
+
+    /**
+     * A black-bordered marker with border width 0.25, and an interior which is white except for
+     * a black block in its top-left quarter so that its orientation is unambiguous.
+     */
+    private static byte[] defaultMarker() {
+        byte[] image = new byte[DEFAULT_MARKER_SIZE * DEFAULT_MARKER_SIZE];
+        int border = DEFAULT_MARKER_SIZE / 4;
+        for (int y = 0; y < DEFAULT_MARKER_SIZE; y++) {
+            for (int x = 0; x < DEFAULT_MARKER_SIZE; x++) {
+                boolean inBorder = x < border || y < border || x >= DEFAULT_MARKER_SIZE - border || y >= DEFAULT_MARKER_SIZE - border;
+                boolean inBlock = x < DEFAULT_MARKER_SIZE / 2 && y < DEFAULT_MARKER_SIZE / 2;
+                image[y * DEFAULT_MARKER_SIZE + x] = (inBorder || inBlock ? 0 : (byte) 255);
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,237 @@
+package org.artoolkitx.arx.arxj.camera;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.artoolkitx.arx.arxj.VideoFrame;
+
+/*
+ *  ThreadedFrameSource.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+
+/**
+ * Base class for frame sources which produce their frames on a thread of their own. Subclasses
+ * open their input in {@link #open()}, fill one frame at a time in {@link #nextFrame(VideoFrame)}
+ * and release their input in {@link #close()}; this class runs the delivery thread, paces frames
+ * to the configured rate and stamps each frame with a frame ID and timestamp.
+ * <p/>
+ * Frames which the subclass has not stamped itself are given a new frame ID and a timestamp of
+ * the time of delivery on the SystemClock.elapsedRealtimeNanos() time base, the one used by camera
+ * sensor timestamps and by {@link org.artoolkitx.arx.arxj.rendering.PosePredictor}.
+ */
+public abstract class ThreadedFrameSource implements FrameSource {
+
+    private static final String TAG = ThreadedFrameSource.class.getSimpleName();
+
+    private final String threadName;
+    private final Object lock = new Object();
+    private final VideoFrame frame = new VideoFrame();
+    private Thread thread;
+    private CameraEventListener listener;
+    private boolean stopRequested;
+    private volatile long frameIntervalNanos;
+    private volatile long deliveredFrameCount;
+    // SystemClock.elapsedRealtimeNanos() - System.nanoTime(), taken when the source is started. The
+    // two clocks only drift apart while the device is suspended, which it is not while streaming.
+    private long timestampOffset;
+
+    protected ThreadedFrameSource(String threadName) {
+        this.threadName = threadName;
+    }
+
+    /**
+     * Opens the input of the source. Called on the thread calling {@link #start(CameraEventListener)}.
+     *
+     * @return true if the source is ready to deliver frames.
+     */
+    protected abstract boolean open();
+
+    /**
+     * Fills the planes of the next frame. Called on the delivery thread. The plane buffers need
+     * only remain valid until the next call of this method or of {@link #close()}.
+     *
+     * @param frame The frame to fill. If its frame ID is left at 0, the frame ID and timestamp are
+     *              set by this class.
+     * @return true if a frame was filled, or false at the end of the input.
+     */
+    protected abstract boolean nextFrame(VideoFrame frame);
+
+    /**
+     * Releases the input of the source. Called on the delivery thread after the last frame.
+     */
+    protected abstract void close();
+
+    /**
+     * @return The width of the frames in pixels. Valid after {@link #open()}.
+     */
+    public abstract int getWidth();
+
+    /**
+     * @return The height of the frames in pixels. Valid after {@link #open()}.
+     */
+    public abstract int getHeight();
+
+    /**
+     * @return The pixel format of the frames, as passed to
+     * {@link CameraEventListener#cameraStreamStarted(int, int, String, int, boolean)}.
+     */
+    public abstract String getPixelFormat();
+
+    /**
+     * @return The camera index passed to the listener. Defaults to 0.
+     */
+    protected int getCameraIndex() {
+        return 0;
+    }
+
+    /**
+     * @return Whether the listener is told that the frames come from a front-facing camera. Defaults to false.
+     */
+    protected boolean isCameraFrontFacing() {
+        return false;
+    }
+
+    @Override
+    public void setFrameRate(float framesPerSecond) {
+        frameIntervalNanos = (framesPerSecond > 0.0f ? (long) (1000000000.0 / framesPerSecond) : 0L);
+    }
+
+    /**
+     * @return The number of frames delivered to the listener since the source was last started.
+     */
+    public long getDeliveredFrameCount() {
+        return deliveredFrameCount;
+    }
+
+    @Override
+    public boolean start(CameraEventListener listener) {
+        synchronized (lock) {
+            if (thread != null && thread.isAlive()) {
+                Log.e(TAG, "start(): Source is already running.");
+                return false;
+            }
+            if (!open()) {
+                Log.e(TAG, "start(): Unable to open source.");
+                return false;
+            }
+            this.listener = listener;
+            stopRequested = false;
+            deliveredFrameCount = 0;
+            timestampOffset = SystemClock.elapsedRealtimeNanos() - System.nanoTime();
+            thread = new Thread(deliveryRunnable, threadName);
+            thread.start();
+        }
+        return true;
+    }
+
+    @Override
+    public void stop() {
+        Thread stoppingThread;
+        synchronized (lock) {
+            stopRequested = true;
+            lock.notifyAll();
+            stoppingThread = thread;
+        }
+        if (stoppingThread == null || stoppingThread == Thread.currentThread()) return;
+        try {
+            stoppingThread.join();
+        } catch (InterruptedException e) {
+            Log.e(TAG, "stop(): Interrupted while waiting for " + threadName + " to finish.");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        synchronized (lock) {
+            return thread != null && thread.isAlive();
+        }
+    }
+
+    /**
+     * Waits until the given time or until the source is stopped.
+     *
+     * @return false if the source has been stopped.
+     */
+    private boolean waitUntil(long deadline) {
+        synchronized (lock) {
+            try {
+                long remaining;
+                while (!stopRequested && (remaining = deadline - System.nanoTime()) > 0) {
+                    lock.wait(remaining / 1000000L, (int) (remaining % 1000000L));
+                }
+            } catch (InterruptedException e) {
+                stopRequested = true;
+            }
+            return !stopRequested;
+        }
+    }
+
+    private boolean isStopRequested() {
+        synchronized (lock) {
+            return stopRequested;
+        }
+    }
+
+    private final Runnable deliveryRunnable = new Runnable() {
+        @Override
+        public void run() {
+            listener.cameraStreamStarted(getWidth(), getHeight(), getPixelFormat(), getCameraIndex(), isCameraFrontFacing());
+            try {
+                long deadline = System.nanoTime();
+                while (!isStopRequested()) {
+                    if (!nextFrame(frame)) break;
+                    long interval = frameIntervalNanos;
+                    if (interval > 0) {
+                        // Don't try to catch up after the listener has fallen more than a frame behind.
+                        long now = System.nanoTime();
+                        if (now - deadline > interval) deadline = now;
+                        if (!waitUntil(deadline)) break;
+                        deadline += interval;
+                    }
+                    if (frame.getFrameId() == 0) {
+                        frame.setFrameInfo(VideoFrame.nextFrameId(), System.nanoTime() + timestampOffset);
+                    }
+                    listener.cameraStreamFrame(frame);
+                    frame.clear();
+                    deliveredFrameCount++;
+                }
+            } finally {
+                frame.clear();
+                listener.cameraStreamStopped();
+                close();
+            }
+        }
+    };
+}
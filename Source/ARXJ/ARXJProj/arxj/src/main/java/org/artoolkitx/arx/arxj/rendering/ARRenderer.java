@@ -44,6 +44,7 @@ import android.util.Log;
 
 import org.artoolkitx.arx.arxj.ARActivity;
 import org.artoolkitx.arx.arxj.ARController;
+import org.artoolkitx.arx.arxj.ARFrame;
 import org.artoolkitx.arx.arxj.ARX_jni;
 import org.artoolkitx.arx.arxj.rendering.shader_impl.SimpleFragmentShader;
 import org.artoolkitx.arx.arxj.rendering.shader_impl.SimpleShaderProgram;
@@ -70,6 +71,12 @@ public abstract class ARRenderer implements GLSurfaceView.Renderer {
     private int width, height, cameraIndex;
     private int[] viewport = new int[4];
     private boolean firstRun = true;
+    private long drawFrameId, drawFrameTimestamp;
+    private PosePredictor posePredictor;
+    private ARFrame frame;
+    private final float[] projectionMatrix = new float[16];
+    private final RenderQueue renderQueue = new RenderQueue();
+    private final float[] camPosition = {1f, 1f, 1f};
 
     private final static String TAG = ARRenderer.class.getName();
 
@@ -84,10 +91,14 @@ public abstract class ARRenderer implements GLSurfaceView.Renderer {
 
     public void onSurfaceCreated(GL10 unused, EGLConfig config) {
 
+        // Any buffer objects from a previous context were lost with it, and no state is known yet.
+        BufferedGeometry.onContextCreated();
+        GLStateCache.invalidate();
         // Transparent background
         GLES20.glClearColor(0.0f, 0.0f, 0.0f, 0.f);
         this.simpleShaderProgram = new SimpleShaderProgram(new SimpleVertexShader(), new SimpleFragmentShader());
-        GLES20.glUseProgram(simpleShaderProgram.getShaderProgramHandle());
+        GLStateCache.useProgram(simpleShaderProgram.getShaderProgramHandle());
+        ARController.getInstance().setFramePublishing(true);
     }
 
     public void onSurfaceChanged(GL10 unused, int w, int h) {
@@ -122,7 +133,29 @@ public abstract class ARRenderer implements GLSurfaceView.Renderer {
             if (!ARController.getInstance().drawVideoSettings(cameraIndex)) {
                 Log.e(TAG, "Error during call of displayFrame.");
             }
-            draw();
+            // Native video drawing changes the GL state behind the cache's back.
+            GLStateCache.invalidate();
+            frame = ARController.getInstance().acquireFrame();
+            try {
+                if (frame != null) {
+                    drawFrameId = frame.getFrameId();
+                    drawFrameTimestamp = frame.getTimestamp();
+                } else {
+                    drawFrameId = ARController.getInstance().getPoseFrameId();
+                    drawFrameTimestamp = ARController.getInstance().getPoseTimestamp();
+                }
+                if (posePredictor != null) {
+                    // Predict from the snapshot being drawn, so that all poses come from its frame.
+                    if (frame != null) posePredictor.update(frame);
+                    else posePredictor.update();
+                }
+                draw();
+                renderQueue.execute();
+            } finally {
+                renderQueue.clear();
+                if (frame != null) frame.release();
+                frame = null;
+            }
         }
     }
 
@@ -133,11 +166,80 @@ public abstract class ARRenderer implements GLSurfaceView.Renderer {
         GLES20.glViewport(viewport[0], viewport[1], viewport[2], viewport[3]);
 
         //TODO: Check how to refactor near and far plane
-        simpleShaderProgram.setProjectionMatrix(ARController.getInstance().getProjectionMatrix(10.0f, 10000.0f));
-        float[] camPosition = {1f, 1f, 1f};
+        if ((frame != null && frame.getProjectionMatrix(projectionMatrix))
+                || ARController.getInstance().getProjectionMatrix(10.0f, 10000.0f, projectionMatrix)) {
+            simpleShaderProgram.setProjectionMatrix(projectionMatrix);
+        }
         simpleShaderProgram.render(camPosition);
     }
 
+    /**
+     * Returns the ID of the frame whose trackable poses are current for this call of {@link #draw()}.
+     * Together with {@link #getDrawFrameTimestamp()}, this allows the latency from capture to display
+     * to be measured.
+     */
+    @SuppressWarnings("unused")
+    public long getDrawFrameId() {
+        return drawFrameId;
+    }
+
+    /**
+     * Returns the sensor timestamp in nanoseconds of the frame whose trackable poses are current for
+     * this call of {@link #draw()}.
+     */
+    @SuppressWarnings("unused")
+    public long getDrawFrameTimestamp() {
+        return drawFrameTimestamp;
+    }
+
+    /**
+     * Installs a predictor which extrapolates trackable poses to the expected display time, to
+     * compensate for the latency of detection and rendering. Poses are only extrapolated when queried
+     * through {@link #queryTrackablePose(int, float[])}.
+     *
+     * @param predictor The predictor to use, or null to draw the detected poses (the default).
+     */
+    public void setPosePredictor(PosePredictor predictor) {
+        posePredictor = predictor;
+    }
+
+    public PosePredictor getPosePredictor() {
+        return posePredictor;
+    }
+
+    /**
+     * Returns the tracking snapshot for this call of {@link #draw()}, or null if none has been
+     * published yet. All trackable poses and the projection matrix in it come from the same
+     * detection. The snapshot is only valid until draw() returns.
+     */
+    public ARFrame getFrame() {
+        return frame;
+    }
+
+    /**
+     * Returns whether a trackable is visible, and if visible its pose for this call of {@link #draw()},
+     * taken from the frame's tracking snapshot when available.
+     * When a {@link PosePredictor} is installed, the pose from the same snapshot is extrapolated to
+     * the expected display time.
+     *
+     * @param trackableUID The unique identifier (UID) of the trackable to query.
+     * @param matrix       Array of 16 floats to receive the pose.
+     * @return true if the trackable is visible.
+     */
+    public boolean queryTrackablePose(int trackableUID, float[] matrix) {
+        if (posePredictor != null) return posePredictor.getPose(trackableUID, matrix);
+        if (frame != null) return frame.queryTrackableVisibilityAndTransformation(trackableUID, matrix);
+        return ARController.getInstance().queryTrackableVisibilityAndTransformation(trackableUID, matrix);
+    }
+
+    /**
+     * Returns the queue into which {@link #draw()} can submit drawables instead of drawing them
+     * directly. The queue is sorted to minimise state changes and drawn once draw() returns.
+     */
+    public RenderQueue getRenderQueue() {
+        return renderQueue;
+    }
+
     @SuppressWarnings("unused")
     public ShaderProgram getSimpleShaderProgram() {
         return simpleShaderProgram;
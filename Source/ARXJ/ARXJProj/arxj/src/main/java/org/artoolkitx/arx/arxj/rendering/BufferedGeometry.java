@@ -0,0 +1,170 @@
+/*
+ *  BufferedGeometry.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj.rendering;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Static geometry held in GPU buffer objects: a vertex buffer of positions, an optional vertex
+ * buffer of colors, and an optional index buffer of unsigned bytes. The data is uploaded once per
+ * GL context, so drawing the geometry transfers no vertex data.
+ * <p/>
+ * Buffer objects are created on the first draw after {@link #onContextCreated()}, which
+ * {@link ARRenderer} calls from onSurfaceCreated. When the GL context is lost, its buffers die with it
+ * and are recreated from the client-side copies held here on the next draw, or earlier with
+ * {@link #create()}.
+ * <p/>
+ * All methods except the constructor must be called on the GL thread.
+ */
+public final class BufferedGeometry {
+
+    private static int contextGeneration = 1;
+    private static long uploadCount;
+
+    private final FloatBuffer vertices;
+    private final FloatBuffer colors;
+    private final ByteBuffer indices;
+    private final int[] bufferIds = new int[3];
+    // Context generation in which the buffer objects were created, or 0 if there are none.
+    private int createdGeneration;
+
+    /**
+     * @param vertices Vertex positions, 3 floats per vertex.
+     * @param colors   Vertex colors, 4 floats per vertex, or null.
+     * @param indices  Indices of triangles, or null to draw none.
+     */
+    public BufferedGeometry(FloatBuffer vertices, FloatBuffer colors, ByteBuffer indices) {
+        this.vertices = vertices;
+        this.colors = colors;
+        this.indices = indices;
+    }
+
+    /**
+     * Marks all existing buffer objects as lost. Must be called whenever a new GL context has been
+     * created, e.g. from GLSurfaceView.Renderer.onSurfaceCreated.
+     */
+    public static void onContextCreated() {
+        contextGeneration++;
+    }
+
+    /**
+     * Returns a value which changes whenever a new GL context is created, for GL objects managed
+     * outside this class.
+     */
+    static int getContextGeneration() {
+        return contextGeneration;
+    }
+
+    /**
+     * Returns the number of buffer uploads made by all geometry since the process started. Stays
+     * unchanged from frame to frame once all geometry has been drawn once.
+     */
+    public static long getUploadCount() {
+        return uploadCount;
+    }
+
+    /**
+     * Creates the buffer objects and uploads the data, unless already done in the current context.
+     */
+    public void create() {
+        if (createdGeneration == contextGeneration) return;
+        // Buffers from a lost context are already gone with it and must not be deleted.
+        GLES20.glGenBuffers(3, bufferIds, 0);
+        upload(GLES20.GL_ARRAY_BUFFER, bufferIds[0], vertices, 4);
+        if (colors != null) upload(GLES20.GL_ARRAY_BUFFER, bufferIds[1], colors, 4);
+        if (indices != null) upload(GLES20.GL_ELEMENT_ARRAY_BUFFER, bufferIds[2], indices, 1);
+        createdGeneration = contextGeneration;
+    }
+
+    private static void upload(int target, int bufferId, Buffer data, int bytesPerElement) {
+        data.position(0);
+        GLStateCache.bindBuffer(target, bufferId);
+        GLES20.glBufferData(target, data.limit() * bytesPerElement, data, GLES20.GL_STATIC_DRAW);
+        uploadCount++;
+    }
+
+    /**
+     * Deletes the buffer objects, if they exist in the current context.
+     */
+    public void release() {
+        if (createdGeneration == contextGeneration) {
+            GLES20.glDeleteBuffers(3, bufferIds, 0);
+            GLStateCache.onBuffersDeleted();
+        }
+        createdGeneration = 0;
+    }
+
+    public boolean isCreated() {
+        return createdGeneration == contextGeneration;
+    }
+
+    public int getVertexBufferId() {
+        return bufferIds[0];
+    }
+
+    /**
+     * @return The color buffer object, or 0 if the geometry has no colors.
+     */
+    public int getColorBufferId() {
+        return colors != null ? bufferIds[1] : 0;
+    }
+
+    /**
+     * @return The index buffer object, or 0 if the geometry has no indices.
+     */
+    public int getIndexBufferId() {
+        return indices != null ? bufferIds[2] : 0;
+    }
+
+    public int getIndexCount() {
+        return indices != null ? indices.limit() : 0;
+    }
+
+    public FloatBuffer getVertices() {
+        return vertices;
+    }
+
+    public FloatBuffer getColors() {
+        return colors;
+    }
+
+    public ByteBuffer getIndices() {
+        return indices;
+    }
+}
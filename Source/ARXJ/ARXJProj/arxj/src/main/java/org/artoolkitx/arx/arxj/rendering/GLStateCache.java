@@ -0,0 +1,203 @@
+/*
+ *  GLStateCache.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj.rendering;
+
+import android.opengl.GLES20;
+
+/**
+ * Tracks the OpenGL state set through it, so that calls which would not change that state are not
+ * passed to the driver: the current program, the enabled vertex attribute arrays, the bound array
+ * and element array buffers, and (through {@link ShaderProgram}) the uploaded matrix uniforms.
+ * Counters report how many calls were issued and how many were elided.
+ * <p/>
+ * The state is that of the GL context current on the rendering thread, and must only be used from
+ * that thread. It is reset by {@link ARRenderer} when a new context is created. Code which changes
+ * the tracked state with direct GLES20 calls, as native video background drawing does, must call
+ * {@link #invalidate()} afterwards. Buffer objects are left bound after drawing, so code which draws
+ * from client-side arrays must first bind buffer 0 with {@link #bindBuffer(int, int)}.
+ */
+public final class GLStateCache {
+
+    public static final int CALL_USE_PROGRAM = 0;
+    public static final int CALL_VERTEX_ATTRIB_ARRAY = 1;
+    public static final int CALL_BIND_BUFFER = 2;
+    public static final int CALL_UNIFORM = 3;
+    private static final int CALL_KINDS = 4;
+
+    private static final int UNKNOWN = -1;
+
+    private static int program = UNKNOWN;
+    // Vertex attribute arrays 0 to 31: which are known, and of those, which are enabled.
+    private static int knownAttribs = 0;
+    private static int enabledAttribs = 0;
+    private static int arrayBuffer = UNKNOWN;
+    private static int elementArrayBuffer = UNKNOWN;
+
+    private static final long[] issued = new long[CALL_KINDS];
+    private static final long[] elided = new long[CALL_KINDS];
+
+    private GLStateCache() {
+    }
+
+    /**
+     * Forgets all tracked state, so that the next call of each kind is passed to the driver.
+     */
+    public static void invalidate() {
+        program = UNKNOWN;
+        knownAttribs = 0;
+        enabledAttribs = 0;
+        arrayBuffer = UNKNOWN;
+        elementArrayBuffer = UNKNOWN;
+    }
+
+    public static void useProgram(int programHandle) {
+        if (program == programHandle) {
+            elided[CALL_USE_PROGRAM]++;
+            return;
+        }
+        GLES20.glUseProgram(programHandle);
+        program = programHandle;
+        issued[CALL_USE_PROGRAM]++;
+    }
+
+    public static void enableVertexAttribArray(int index) {
+        setVertexAttribArray(index, true);
+    }
+
+    public static void disableVertexAttribArray(int index) {
+        setVertexAttribArray(index, false);
+    }
+
+    private static void setVertexAttribArray(int index, boolean enable) {
+        // A location of -1 means the attribute is not used by the program.
+        if (index < 0) return;
+        if (index < 32) {
+            int bit = 1 << index;
+            if ((knownAttribs & bit) != 0 && ((enabledAttribs & bit) != 0) == enable) {
+                elided[CALL_VERTEX_ATTRIB_ARRAY]++;
+                return;
+            }
+            knownAttribs |= bit;
+            if (enable) enabledAttribs |= bit;
+            else enabledAttribs &= ~bit;
+        }
+        if (enable) GLES20.glEnableVertexAttribArray(index);
+        else GLES20.glDisableVertexAttribArray(index);
+        issued[CALL_VERTEX_ATTRIB_ARRAY]++;
+    }
+
+    /**
+     * Binds a buffer to GL_ARRAY_BUFFER or GL_ELEMENT_ARRAY_BUFFER.
+     */
+    public static void bindBuffer(int target, int buffer) {
+        if (target == GLES20.GL_ARRAY_BUFFER) {
+            if (arrayBuffer == buffer) {
+                elided[CALL_BIND_BUFFER]++;
+                return;
+            }
+            arrayBuffer = buffer;
+        } else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+            if (elementArrayBuffer == buffer) {
+                elided[CALL_BIND_BUFFER]++;
+                return;
+            }
+            elementArrayBuffer = buffer;
+        }
+        GLES20.glBindBuffer(target, buffer);
+        issued[CALL_BIND_BUFFER]++;
+    }
+
+    /**
+     * Must be called after buffers are deleted, since deleting a bound buffer unbinds it.
+     */
+    static void onBuffersDeleted() {
+        arrayBuffer = UNKNOWN;
+        elementArrayBuffer = UNKNOWN;
+    }
+
+    /**
+     * Uploads a 4x4 matrix uniform of the current program, unless it already holds that value.
+     *
+     * @param location The location of the uniform in the current program.
+     * @param matrix   The 16 floats to upload.
+     * @param uploaded The last value uploaded to this uniform of this program, updated by this call.
+     *                 Must be filled with NaN before the first call, so that the first upload is never elided.
+     */
+    static void uniformMatrix4fv(int location, float[] matrix, float[] uploaded) {
+        boolean same = true;
+        for (int i = 0; i < 16; i++) {
+            if (matrix[i] != uploaded[i]) {
+                same = false;
+                break;
+            }
+        }
+        if (same) {
+            elided[CALL_UNIFORM]++;
+            return;
+        }
+        System.arraycopy(matrix, 0, uploaded, 0, 16);
+        GLES20.glUniformMatrix4fv(location, 1, false, matrix, 0);
+        issued[CALL_UNIFORM]++;
+    }
+
+    /**
+     * @param kind One of the CALL_ constants.
+     * @return The number of calls of the given kind passed to the driver since the counters were last reset.
+     */
+    public static long getIssuedCount(int kind) {
+        return issued[kind];
+    }
+
+    /**
+     * @param kind One of the CALL_ constants.
+     * @return The number of calls of the given kind skipped since the counters were last reset.
+     */
+    public static long getElidedCount(int kind) {
+        return elided[kind];
+    }
+
+    public static long getElidedCount() {
+        long total = 0;
+        for (int kind = 0; kind < CALL_KINDS; kind++) total += elided[kind];
+        return total;
+    }
+
+    public static void resetCounters() {
+        for (int kind = 0; kind < CALL_KINDS; kind++) {
+            issued[kind] = 0;
+            elided[kind] = 0;
+        }
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ *  InstancedBatchRenderer.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj.rendering;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import android.util.Log;
+
+import org.artoolkitx.arx.arxj.ARFrame;
+import org.artoolkitx.arx.arxj.rendering.shader_impl.SimpleFragmentShader;
+import org.artoolkitx.arx.arxj.rendering.shader_impl.SimpleVertexShader;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Draws one geometry, e.g. {@link org.artoolkitx.arx.arxj.rendering.shader_impl.Cube#getGeometry()},
+ * on many trackables at once. The modelview matrices of all visible trackables are collected between
+ * {@link #begin()} and {@link #draw(float[])}, and then drawn with a single instanced draw call,
+ * instead of one draw call and set of uniform uploads per trackable.
+ * <p/>
+ * Instancing needs an OpenGL ES 3.0 context. With an OpenGL ES 2.0 context, the geometry is instead
+ * replicated into a batch of copies, each selecting its modelview matrix from a uniform array, so
+ * that a draw call covers as many trackables as the vertex uniforms and 16-bit indices allow. A
+ * geometry of more than 65536 vertices cannot be drawn this way, and the first draw then throws
+ * IllegalStateException.
+ * <p/>
+ * Colors are taken from the geometry, as with {@link org.artoolkitx.arx.arxj.rendering.shader_impl.SimpleShaderProgram}.
+ * All methods must be called on the GL thread. GL objects are created on the first draw in each
+ * GL context.
+ */
+public final class InstancedBatchRenderer {
+
+    private static final String TAG = InstancedBatchRenderer.class.getSimpleName();
+
+    private static final String modelViewAttributeString = "a_ModelView";
+    private static final String modelViewArrayString = "u_modelViews";
+    private static final String instanceAttributeString = "a_Instance";
+    private static final String colorVectorString = "a_Color";
+
+    private static final String INSTANCED_VERTEX_SHADER =
+            "uniform mat4 " + OpenGLShader.projectionMatrixString + "; \n"
+                    + "attribute vec4 " + OpenGLShader.positionVectorString + "; \n"
+                    + "attribute vec4 " + colorVectorString + "; \n"
+                    + "attribute mat4 " + modelViewAttributeString + "; \n"     // Per-instance modelview matrix.
+                    + "varying vec4 v_Color; \n"
+                    + "void main() \n"
+                    + "{ \n"
+                    + "   v_Color = " + colorVectorString + "; \n"
+                    + "   gl_Position = " + OpenGLShader.projectionMatrixString + " * (" + modelViewAttributeString + " * " + OpenGLShader.positionVectorString + "); \n"
+                    + "} \n";
+
+    /**
+     * Matrices reserved in the vertex uniforms for the projection matrix and driver use, when sizing
+     * the uniform array of the fallback.
+     */
+    private static final int RESERVED_UNIFORM_MATRICES = 2;
+    private static final int MAX_UNIFORM_BATCH = 64;
+    /**
+     * Vertices addressable by the 16-bit indices of the fallback, across all copies in a batch.
+     */
+    private static final int MAX_SHORT_INDEXED_VERTICES = 65536;
+
+    private final BufferedGeometry geometry;
+    private boolean instancingEnabled = true;
+
+    private float[] modelViews = new float[16 * 16];
+    private int instanceCount;
+    private final float[] scratchMatrix = new float[16];
+
+    // GL objects, valid in the context generation they were created in. Objects from a lost context
+    // are already gone with it and are never deleted.
+    private int createdGeneration;
+    private boolean rebuildRequested;
+    private BatchShaderProgram program;
+    private boolean instanced;
+    private int batchSize;
+    private final int[] bufferIds = new int[4];
+    private FloatBuffer instanceData;
+    private int lastDrawCallCount;
+
+    public InstancedBatchRenderer(BufferedGeometry geometry) {
+        this.geometry = geometry;
+    }
+
+    /**
+     * Allows instancing to be disabled, e.g. to compare against the uniform array fallback. Takes
+     * effect the next time GL objects are created.
+     */
+    public void setInstancingEnabled(boolean enable) {
+        if (instancingEnabled != enable) rebuildRequested = true;
+        instancingEnabled = enable;
+    }
+
+    /**
+     * Starts collecting the matrices of a new frame.
+     */
+    public void begin() {
+        instanceCount = 0;
+    }
+
+    /**
+     * Adds an instance of the geometry.
+     *
+     * @param modelViewMatrix The 16 floats of the modelview matrix of the instance.
+     */
+    public void add(float[] modelViewMatrix) {
+        if (modelViews.length < (instanceCount + 1) * 16) {
+            float[] grown = new float[modelViews.length * 2];
+            System.arraycopy(modelViews, 0, grown, 0, instanceCount * 16);
+            modelViews = grown;
+        }
+        System.arraycopy(modelViewMatrix, 0, modelViews, instanceCount * 16, 16);
+        instanceCount++;
+    }
+
+    /**
+     * Adds an instance for each of the given trackables which is visible in a tracking snapshot.
+     *
+     * @param frame         The tracking snapshot.
+     * @param trackableUIDs The unique identifiers (UIDs) of the trackables, in the first count elements.
+     * @param count         The number of trackables.
+     * @return The number of instances added.
+     */
+    public int addVisible(ARFrame frame, int[] trackableUIDs, int count) {
+        int added = 0;
+        for (int i = 0; i < count; i++) {
+            if (frame.queryTrackableVisibilityAndTransformation(trackableUIDs[i], scratchMatrix)) {
+                add(scratchMatrix);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    public int getInstanceCount() {
+        return instanceCount;
+    }
+
+    /**
+     * Draws all instances added since {@link #begin()}.
+     *
+     * @param projectionMatrix The projection matrix.
+     */
+    public void draw(float[] projectionMatrix) {
+        lastDrawCallCount = 0;
+        if (instanceCount == 0 || geometry.getIndexCount() == 0) return;
+        if (createdGeneration != BufferedGeometry.getContextGeneration() || rebuildRequested) create();
+        geometry.create();
+
+        program.setProjectionMatrix(projectionMatrix);
+        program.setupShaderUsage();
+        if (instanced) {
+            drawInstanced();
+        } else {
+            drawUniformBatches();
+        }
+    }
+
+    /**
+     * @return true if the last draw used instancing, false if it used the uniform array fallback.
+     */
+    public boolean isInstanced() {
+        return instanced;
+    }
+
+    /**
+     * @return The number of draw calls made by the last {@link #draw(float[])}.
+     */
+    public int getLastDrawCallCount() {
+        return lastDrawCallCount;
+    }
+
+    /**
+     * Deletes the GL objects, if they exist in the current context.
+     */
+    public void release() {
+        if (createdGeneration == BufferedGeometry.getContextGeneration()) {
+            GLES20.glDeleteBuffers(4, bufferIds, 0);
+            GLES20.glDeleteProgram(program.getShaderProgramHandle());
+            // The deleted program and buffers may be current.
+            GLStateCache.invalidate();
+        }
+        createdGeneration = 0;
+        program = null;
+    }
+
+    private void create() {
+        release();
+        rebuildRequested = false;
+        String version = GLES20.glGetString(GLES20.GL_VERSION);
+        // Android reports e.g. "OpenGL ES 3.2 ..."; a 2.0 context request may still return a 3.x context.
+        instanced = instancingEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+                && version != null && version.startsWith("OpenGL ES ") && version.length() > 10
+                && version.charAt(10) >= '3' && version.charAt(10) <= '9';
+        if (instanced) {
+            batchSize = 0;
+        } else {
+            int[] maxVectors = new int[1];
+            GLES20.glGetIntegerv(GLES20.GL_MAX_VERTEX_UNIFORM_VECTORS, maxVectors, 0);
+            batchSize = Math.max(1, Math.min(MAX_UNIFORM_BATCH, maxVectors[0] / 4 - RESERVED_UNIFORM_MATRICES));
+            int vertexCount = geometry.getVertices().limit() / 3;
+            if (vertexCount > MAX_SHORT_INDEXED_VERTICES) {
+                throw new IllegalStateException("Geometry of " + vertexCount + " vertices exceeds the "
+                        + MAX_SHORT_INDEXED_VERTICES + " addressable by 16-bit indices without instancing.");
+            }
+            batchSize = Math.min(batchSize, MAX_SHORT_INDEXED_VERTICES / vertexCount);
+        }
+        SimpleVertexShader vertexShader = new SimpleVertexShader();
+        vertexShader.setShaderSource(instanced ? INSTANCED_VERTEX_SHADER : uniformArrayVertexShader(batchSize));
+        program = new BatchShaderProgram(vertexShader, new SimpleFragmentShader());
+
+        GLES20.glGenBuffers(4, bufferIds, 0);
+        if (!instanced) createReplicatedGeometry();
+        createdGeneration = BufferedGeometry.getContextGeneration();
+        Log.i(TAG, "create(): " + (instanced ? "instanced" : "uniform array batches of " + batchSize));
+    }
+
+    private static String uniformArrayVertexShader(int batchSize) {
+        return "uniform mat4 " + OpenGLShader.projectionMatrixString + "; \n"
+                + "uniform mat4 " + modelViewArrayString + "[" + batchSize + "]; \n"
+                + "attribute vec4 " + OpenGLShader.positionVectorString + "; \n"
+                + "attribute vec4 " + colorVectorString + "; \n"
+                + "attribute float " + instanceAttributeString + "; \n"     // Index of the copy within the batch.
+                + "varying vec4 v_Color; \n"
+                + "void main() \n"
+                + "{ \n"
+                + "   v_Color = " + colorVectorString + "; \n"
+                + "   gl_Position = " + OpenGLShader.projectionMatrixString + " * (" + modelViewArrayString + "[int(" + instanceAttributeString + ")] * " + OpenGLShader.positionVectorString + "); \n"
+                + "} \n";
+    }
+
+    /**
+     * Uploads batchSize copies of the geometry, with the index of its copy on each vertex. Buffers:
+     * 0 positions, 1 colors, 2 copy indices, 3 triangle indices. batchSize has been limited so that
+     * all copies are addressable by 16-bit indices.
+     */
+    private void createReplicatedGeometry() {
+        FloatBuffer vertices = geometry.getVertices();
+        FloatBuffer colors = geometry.getColors();
+        ByteBuffer indices = geometry.getIndices();
+        int vertexCount = vertices.limit() / 3;
+        int indexCount = geometry.getIndexCount();
+
+        // Only needed until uploaded, so taken from the pool.
+        FloatBuffer positionData = RenderUtils.acquireFloatBuffer(batchSize * vertexCount * 3);
+        FloatBuffer colorData = colors != null ? RenderUtils.acquireFloatBuffer(batchSize * vertexCount * 4) : null;
+        FloatBuffer copyData = RenderUtils.acquireFloatBuffer(batchSize * vertexCount);
+        ByteBuffer indexBytes = RenderUtils.acquireByteBuffer(batchSize * indexCount * 2);
+        ShortBuffer indexData = indexBytes.asShortBuffer();
+        for (int copy = 0; copy < batchSize; copy++) {
+            for (int v = 0; v < vertexCount * 3; v++) positionData.put(vertices.get(v));
+            if (colorData != null) {
+                for (int c = 0; c < vertexCount * 4; c++) colorData.put(colors.get(c));
+            }
+            for (int v = 0; v < vertexCount; v++) copyData.put(copy);
+            for (int i = 0; i < indexCount; i++) indexData.put((short) ((indices.get(i) & 0xff) + copy * vertexCount));
+        }
+
+        upload(GLES20.GL_ARRAY_BUFFER, bufferIds[0], positionData.position(0), positionData.limit() * 4);
+        if (colorData != null) upload(GLES20.GL_ARRAY_BUFFER, bufferIds[1], colorData.position(0), colorData.limit() * 4);
+        upload(GLES20.GL_ARRAY_BUFFER, bufferIds[2], copyData.position(0), copyData.limit() * 4);
+        upload(GLES20.GL_ELEMENT_ARRAY_BUFFER, bufferIds[3], indexData.position(0), indexData.limit() * 2);
+        RenderUtils.releaseFloatBuffer(positionData);
+        RenderUtils.releaseFloatBuffer(colorData);
+        RenderUtils.releaseFloatBuffer(copyData);
+        RenderUtils.releaseByteBuffer(indexBytes);
+    }
+
+    private static void upload(int target, int bufferId, java.nio.Buffer data, int size) {
+        GLStateCache.bindBuffer(target, bufferId);
+        GLES20.glBufferData(target, size, data, GLES20.GL_STATIC_DRAW);
+    }
+
+    private void drawInstanced() {
+        int modelViewHandle = program.modelViewHandle;
+        bindGeometryAttributes(geometry.getVertexBufferId(), geometry.getColorBufferId());
+
+        // Per-instance matrices, replaced every frame.
+        if (instanceData == null || instanceData.capacity() < instanceCount * 16) {
+            RenderUtils.releaseFloatBuffer(instanceData);
+            instanceData = RenderUtils.acquireFloatBuffer(modelViews.length);
+        }
+        instanceData.clear();
+        instanceData.put(modelViews, 0, instanceCount * 16);
+        instanceData.flip();
+        GLStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, bufferIds[0]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, instanceCount * 64, instanceData, GLES20.GL_STREAM_DRAW);
+        // A mat4 attribute takes four consecutive locations, one per column.
+        for (int column = 0; column < 4; column++) {
+            GLES20.glVertexAttribPointer(modelViewHandle + column, 4, GLES20.GL_FLOAT, false, 64, column * 16);
+            GLStateCache.enableVertexAttribArray(modelViewHandle + column);
+            GLES30.glVertexAttribDivisor(modelViewHandle + column, 1);
+        }
+
+        GLStateCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, geometry.getIndexBufferId());
+        GLES30.glDrawElementsInstanced(GLES20.GL_TRIANGLES, geometry.getIndexCount(), GLES20.GL_UNSIGNED_BYTE, 0, instanceCount);
+        lastDrawCallCount = 1;
+
+        // Other programs may use these locations for per-vertex attributes.
+        for (int column = 0; column < 4; column++) {
+            GLES30.glVertexAttribDivisor(modelViewHandle + column, 0);
+            GLStateCache.disableVertexAttribArray(modelViewHandle + column);
+        }
+    }
+
+    private void drawUniformBatches() {
+        bindGeometryAttributes(bufferIds[0], geometry.getColorBufferId() != 0 ? bufferIds[1] : 0);
+        GLStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, bufferIds[2]);
+        GLES20.glVertexAttribPointer(program.instanceHandle, 1, GLES20.GL_FLOAT, false, 4, 0);
+        GLStateCache.enableVertexAttribArray(program.instanceHandle);
+
+        GLStateCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, bufferIds[3]);
+        int indexCount = geometry.getIndexCount();
+        for (int first = 0; first < instanceCount; first += batchSize) {
+            int count = Math.min(batchSize, instanceCount - first);
+            GLES20.glUniformMatrix4fv(program.modelViewHandle, count, false, modelViews, first * 16);
+            GLES20.glDrawElements(GLES20.GL_TRIANGLES, count * indexCount, GLES20.GL_UNSIGNED_SHORT, 0);
+            lastDrawCallCount++;
+        }
+    }
+
+    private void bindGeometryAttributes(int positionBufferId, int colorBufferId) {
+        GLStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, positionBufferId);
+        GLES20.glVertexAttribPointer(program.positionHandle, 3, GLES20.GL_FLOAT, false, 12, 0);
+        GLStateCache.enableVertexAttribArray(program.positionHandle);
+        if (colorBufferId != 0) {
+            GLStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, colorBufferId);
+            GLES20.glVertexAttribPointer(program.colorHandle, 4, GLES20.GL_FLOAT, false, 16, 0);
+            GLStateCache.enableVertexAttribArray(program.colorHandle);
+        } else {
+            GLStateCache.disableVertexAttribArray(program.colorHandle);
+        }
+    }
+
+    /**
+     * The program of either path. The modelview handle is the first column of the instanced
+     * attribute, or the uniform array of the fallback.
+     */
+    private final class BatchShaderProgram extends ShaderProgram {
+
+        final int positionHandle;
+        final int colorHandle;
+        final int modelViewHandle;
+        final int instanceHandle;
+
+        BatchShaderProgram(OpenGLShader vertexShader, OpenGLShader fragmentShader) {
+            super(vertexShader, fragmentShader);
+            positionHandle = GLES20.glGetAttribLocation(shaderProgramHandle, OpenGLShader.positionVectorString);
+            colorHandle = GLES20.glGetAttribLocation(shaderProgramHandle, colorVectorString);
+            if (instanced) {
+                modelViewHandle = GLES20.glGetAttribLocation(shaderProgramHandle, modelViewAttributeString);
+                instanceHandle = -1;
+            } else {
+                modelViewHandle = GLES20.glGetUniformLocation(shaderProgramHandle, modelViewArrayString);
+                instanceHandle = GLES20.glGetAttribLocation(shaderProgramHandle, instanceAttributeString);
+            }
+        }
+
+        @Override
+        public int getProjectionMatrixHandle() {
+            return GLES20.glGetUniformLocation(shaderProgramHandle, OpenGLShader.projectionMatrixString);
+        }
+
+        @Override
+        public int getModelViewMatrixHandle() {
+            // Modelview matrices are supplied per instance, never through setModelViewMatrix().
+            return -1;
+        }
+
+        @Override
+        protected void bindAttributes() {
+        }
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ *  PosePredictor.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj.rendering;
+
+import android.os.SystemClock;
+
+import org.artoolkitx.arx.arxj.ARController;
+import org.artoolkitx.arx.arxj.ARFrame;
+import org.artoolkitx.arx.arxj.PoseHistory;
+
+/**
+ * Compensates for the latency between frame capture and display by extrapolating trackable poses
+ * to the time at which the frame being rendered is expected to appear on the display.
+ * <p/>
+ * Poses are extrapolated from the sensor timestamp of the frame they were detected in, using the
+ * linear and angular velocities estimated by a {@link PoseHistory}. The extrapolation interval is
+ * clamped to {@link #setMaxHorizon(long)}, and the velocities to {@link #setMaxLinearSpeed(float)}
+ * and {@link #setMaxAngularSpeed(float)}, so that noisy or stale estimates cannot throw content far
+ * from the trackable.
+ * <p/>
+ * Install a predictor with {@link ARRenderer#setPosePredictor(PosePredictor)}; the renderer then
+ * calls {@link #update(ARFrame)} with its tracking snapshot before each {@link ARRenderer#draw()},
+ * and {@link ARRenderer#queryTrackablePose(int, float[])} returns the poses of that snapshot,
+ * extrapolated.
+ * <p/>
+ * Each time a new frame is detected, the predictor also measures how far the pose extrapolated from
+ * the previous frames is from the newly detected pose, and how far the unextrapolated pose is. The
+ * totals are available from {@link #getMetrics()}.
+ * <p/>
+ * Sensor timestamps are compared against SystemClock.elapsedRealtimeNanos(). Camera frames whose
+ * timestamps are on another time base are only extrapolated by the maximum horizon, so prediction
+ * should be disabled for such cameras.
+ */
+public class PosePredictor {
+
+    /**
+     * Totals of the prediction error, accumulated over detected frames.
+     */
+    public static final class Metrics {
+        private long sampleCount;
+        private double predictedTranslationError, unpredictedTranslationError;
+        private double predictedRotationError, unpredictedRotationError;
+
+        public long getSampleCount() {
+            return sampleCount;
+        }
+
+        /**
+         * Returns the mean distance between extrapolated and detected trackable origins, in trackable units.
+         */
+        public float getMeanPredictedTranslationError() {
+            return sampleCount == 0 ? 0.0f : (float) (predictedTranslationError / sampleCount);
+        }
+
+        /**
+         * Returns the mean distance a trackable origin moved between consecutive detected frames, which is the
+         * error if poses are not extrapolated, in trackable units.
+         */
+        public float getMeanUnpredictedTranslationError() {
+            return sampleCount == 0 ? 0.0f : (float) (unpredictedTranslationError / sampleCount);
+        }
+
+        /**
+         * Returns the mean angle between extrapolated and detected trackable orientations, in radians.
+         */
+        public float getMeanPredictedRotationError() {
+            return sampleCount == 0 ? 0.0f : (float) (predictedRotationError / sampleCount);
+        }
+
+        /**
+         * Returns the mean angle a trackable rotated between consecutive detected frames, in radians.
+         */
+        public float getMeanUnpredictedRotationError() {
+            return sampleCount == 0 ? 0.0f : (float) (unpredictedRotationError / sampleCount);
+        }
+
+        /**
+         * Returns the fraction of the translation error removed by prediction. Negative values mean that
+         * prediction made things worse.
+         */
+        public float getTranslationErrorReduction() {
+            return unpredictedTranslationError == 0.0 ? 0.0f : (float) (1.0 - predictedTranslationError / unpredictedTranslationError);
+        }
+
+        /**
+         * Returns the fraction of the rotation error removed by prediction.
+         */
+        public float getRotationErrorReduction() {
+            return unpredictedRotationError == 0.0 ? 0.0f : (float) (1.0 - predictedRotationError / unpredictedRotationError);
+        }
+
+        public void reset() {
+            sampleCount = 0;
+            predictedTranslationError = unpredictedTranslationError = 0.0;
+            predictedRotationError = unpredictedRotationError = 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return "samples=" + sampleCount
+                    + " translation=" + getMeanPredictedTranslationError() + "/" + getMeanUnpredictedTranslationError()
+                    + " rotation=" + getMeanPredictedRotationError() + "/" + getMeanUnpredictedRotationError();
+        }
+    }
+
+    private static final long DEFAULT_DISPLAY_LATENCY_NS = 16666667L;
+    private static final long DEFAULT_MAX_HORIZON_NS = 100000000L;
+
+    private final ARController arController;
+    private final PoseHistory history;
+    private final Metrics metrics = new Metrics();
+
+    private boolean enabled = true;
+    private long displayLatency = DEFAULT_DISPLAY_LATENCY_NS;
+    private long maxHorizon = DEFAULT_MAX_HORIZON_NS;
+    private float maxLinearSpeed = Float.MAX_VALUE;
+    private float maxAngularSpeed = Float.MAX_VALUE;
+    private long displayTime;
+
+    // Scratch storage, so that prediction does not allocate.
+    private int[] uids = new int[0];
+    private final float[] velocity = new float[3];
+    private final float[] angularVelocity = new float[3];
+    private final float[] newer = new float[16];
+    private final float[] older = new float[16];
+    private final float[] predicted = new float[16];
+
+    /**
+     * @param arController    The controller whose trackables to predict.
+     * @param historyCapacity Number of poses to keep per trackable, at least 3.
+     */
+    public PosePredictor(ARController arController, int historyCapacity) {
+        this.arController = arController;
+        this.history = new PoseHistory(arController, historyCapacity);
+    }
+
+    public PoseHistory getPoseHistory() {
+        return history;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Enables or disables extrapolation. While disabled, {@link #getPose(int, float[])} returns the
+     * detected poses, but metrics are still accumulated. Enabled by default.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets the expected time from the start of rendering a frame until it is shown on the display.
+     *
+     * @param nanoseconds Latency in nanoseconds. Defaults to one 60 Hz display refresh.
+     */
+    public void setDisplayLatency(long nanoseconds) {
+        displayLatency = nanoseconds;
+    }
+
+    public long getDisplayLatency() {
+        return displayLatency;
+    }
+
+    /**
+     * Sets the furthest poses will be extrapolated beyond the frame they were detected in.
+     *
+     * @param nanoseconds Maximum extrapolation interval in nanoseconds. Defaults to 100 ms.
+     */
+    public void setMaxHorizon(long nanoseconds) {
+        maxHorizon = nanoseconds;
+    }
+
+    public long getMaxHorizon() {
+        return maxHorizon;
+    }
+
+    /**
+     * Sets the highest linear speed used for extrapolation, in trackable units per second. Faster
+     * velocity estimates are scaled down to this speed. Unlimited by default.
+     */
+    public void setMaxLinearSpeed(float unitsPerSecond) {
+        maxLinearSpeed = unitsPerSecond;
+    }
+
+    /**
+     * Sets the highest angular speed used for extrapolation, in radians per second. Unlimited by default.
+     */
+    public void setMaxAngularSpeed(float radiansPerSecond) {
+        maxAngularSpeed = radiansPerSecond;
+    }
+
+    /**
+     * Records newly detected poses and sets the display time for the frame about to be rendered to
+     * the current time plus the display latency.
+     */
+    public void update() {
+        update(SystemClock.elapsedRealtimeNanos() + displayLatency);
+    }
+
+    /**
+     * Records newly detected poses and sets the time to which poses are extrapolated.
+     *
+     * @param displayTime Expected display time in nanoseconds, on the time base of the sensor timestamps.
+     */
+    public void update(long displayTime) {
+        this.displayTime = displayTime;
+        if (history.update()) measure();
+    }
+
+    /**
+     * Records the poses of a tracking snapshot and sets the display time for the frame about to be
+     * rendered to the current time plus the display latency. The poses returned by
+     * {@link #getPose(int, float[])} are then extrapolated from those of the snapshot.
+     */
+    public void update(ARFrame frame) {
+        update(frame, SystemClock.elapsedRealtimeNanos() + displayLatency);
+    }
+
+    /**
+     * Records the poses of a tracking snapshot and sets the time to which poses are extrapolated.
+     *
+     * @param displayTime Expected display time in nanoseconds, on the time base of the sensor timestamps.
+     */
+    public void update(ARFrame frame, long displayTime) {
+        this.displayTime = displayTime;
+        if (history.update(frame)) measure();
+    }
+
+    /**
+     * Returns the time to which poses are currently extrapolated.
+     */
+    public long getDisplayTime() {
+        return displayTime;
+    }
+
+    /**
+     * Returns whether a trackable was visible in the most recently detected frame, and if so its
+     * pose extrapolated to the display time.
+     *
+     * @param trackableUID The unique identifier (UID) of the trackable to query.
+     * @param matrix       Array of 16 floats to receive the pose.
+     * @return true if the trackable is visible.
+     */
+    public boolean getPose(int trackableUID, float[] matrix) {
+        if (history.getTimeSinceLastSeen(trackableUID) != 0) return false;
+        if (!history.getPose(trackableUID, 0, matrix, 0)) return false;
+        if (!enabled) return true;
+        long horizon = displayTime - history.getTimestamp(trackableUID, 0);
+        if (horizon <= 0) return true;
+        if (horizon > maxHorizon) horizon = maxHorizon;
+        extrapolate(trackableUID, 0, horizon, matrix, matrix);
+        return true;
+    }
+
+    /**
+     * For each trackable detected in the newest frame, compares the pose extrapolated from the two
+     * frames before it with the detected pose.
+     */
+    private void measure() {
+        if (uids.length < arController.getTrackableCount()) uids = new int[arController.getTrackableCount()];
+        int count = arController.getTrackableUIDs(uids);
+        long latest = history.getLatestTimestamp();
+        for (int i = 0; i < count; i++) {
+            int uid = uids[i];
+            if (history.getSampleCount(uid) < 3 || history.getTimestamp(uid, 0) != latest) continue;
+            long interval = latest - history.getTimestamp(uid, 1);
+            if (interval <= 0 || interval > history.getMaxSampleInterval()) continue;
+            history.getPose(uid, 0, newer, 0);
+            history.getPose(uid, 1, older, 0);
+            if (!extrapolate(uid, 1, Math.min(interval, maxHorizon), older, predicted)) continue;
+            metrics.sampleCount++;
+            metrics.predictedTranslationError += translationDistance(predicted, newer);
+            metrics.unpredictedTranslationError += translationDistance(older, newer);
+            metrics.predictedRotationError += rotationAngle(predicted, newer);
+            metrics.unpredictedRotationError += rotationAngle(older, newer);
+        }
+    }
+
+    /**
+     * Extrapolates a pose by the given interval, using the velocities estimated between the recorded
+     * pose of the given age and the one before it. pose and result may be the same array.
+     *
+     * @return true if velocities could be estimated. Otherwise result is a copy of pose.
+     */
+    private boolean extrapolate(int trackableUID, int age, long horizon, float[] pose, float[] result) {
+        if (result != pose) System.arraycopy(pose, 0, result, 0, 16);
+        float seconds = horizon * 1.0e-9f;
+        boolean estimated = false;
+
+        if (history.getLinearVelocity(trackableUID, age, velocity)) {
+            float scale = seconds * clampScale(velocity, maxLinearSpeed);
+            result[12] += velocity[0] * scale;
+            result[13] += velocity[1] * scale;
+            result[14] += velocity[2] * scale;
+            estimated = true;
+        }
+
+        if (history.getAngularVelocity(trackableUID, age, angularVelocity)) {
+            float scale = seconds * clampScale(angularVelocity, maxAngularSpeed);
+            float rx = angularVelocity[0] * scale, ry = angularVelocity[1] * scale, rz = angularVelocity[2] * scale;
+            float angle = (float) Math.sqrt(rx * rx + ry * ry + rz * rz);
+            if (angle > 1.0e-7f) {
+                // Rodrigues' formula, applied to each column of the rotation.
+                float kx = rx / angle, ky = ry / angle, kz = rz / angle;
+                float s = (float) Math.sin(angle), c = 1.0f - (float) Math.cos(angle);
+                for (int col = 0; col < 12; col += 4) {
+                    float x = result[col], y = result[col + 1], z = result[col + 2];
+                    float kDotV = kx * x + ky * y + kz * z;
+                    result[col] = x + s * (ky * z - kz * y) + c * (kx * kDotV - x);
+                    result[col + 1] = y + s * (kz * x - kx * z) + c * (ky * kDotV - y);
+                    result[col + 2] = z + s * (kx * y - ky * x) + c * (kz * kDotV - z);
+                }
+            }
+            estimated = true;
+        }
+        return estimated;
+    }
+
+    /**
+     * Returns the factor by which a vector must be scaled so that its length does not exceed max.
+     */
+    private static float clampScale(float[] v, float max) {
+        float length = (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+        return length > max ? max / length : 1.0f;
+    }
+
+    private static float translationDistance(float[] a, float[] b) {
+        float dx = a[12] - b[12], dy = a[13] - b[13], dz = a[14] - b[14];
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Returns the angle of the rotation between the orientations of two poses.
+     */
+    private static float rotationAngle(float[] a, float[] b) {
+        // trace(transpose(Ra) * Rb) is the sum of the dot products of corresponding columns.
+        float trace = 0.0f;
+        for (int i = 0; i < 12; i++) {
+            if ((i & 3) != 3) trace += a[i] * b[i];
+        }
+        float cos = (trace - 1.0f) * 0.5f;
+        if (cos > 1.0f) cos = 1.0f;
+        else if (cos < -1.0f) cos = -1.0f;
+        return (float) Math.acos(cos);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ *  RenderQueue.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj.rendering;
+
+/**
+ * Records draw commands during {@link ARRenderer#draw()} and executes them in one pass, sorted so
+ * that drawables using the same program and geometry are drawn one after another, and nearer
+ * objects before farther ones within each group. Together with {@link GLStateCache}, this means
+ * program, buffer and attribute changes are only made between groups, whatever order the app
+ * visits its trackables in.
+ * <p/>
+ * Drawables implementing {@link SortableDrawable} are grouped by program and geometry; other
+ * drawables are grouped by instance. Commands and their matrices are pooled, so the queue does not
+ * allocate once it has grown to the number of commands in a frame. A queue must only be used on
+ * the GL thread.
+ */
+public final class RenderQueue {
+
+    private static final class Command {
+        ARDrawable drawable;
+        int programKey;
+        int geometryKey;
+        float depth;
+        final float[] projectionMatrix = new float[16];
+        final float[] modelViewMatrix = new float[16];
+    }
+
+    private Command[] commands = new Command[0];
+    private int[] order = new int[0];
+    private int count;
+
+    /**
+     * Records a draw of a drawable. The matrices are copied, so the caller may reuse its arrays for
+     * the next submission.
+     *
+     * @param drawable         The drawable to draw.
+     * @param projectionMatrix The projection matrix to draw with.
+     * @param modelViewMatrix  The modelview matrix to draw with.
+     */
+    public void submit(ARDrawable drawable, float[] projectionMatrix, float[] modelViewMatrix) {
+        if (count == commands.length) grow();
+        Command command = commands[count];
+        command.drawable = drawable;
+        if (drawable instanceof SortableDrawable) {
+            SortableDrawable sortable = (SortableDrawable) drawable;
+            ShaderProgram program = sortable.getShaderProgram();
+            BufferedGeometry geometry = sortable.getGeometry();
+            command.programKey = program != null ? program.getShaderProgramHandle() : 0;
+            command.geometryKey = geometry != null ? System.identityHashCode(geometry) : System.identityHashCode(drawable);
+        } else {
+            command.programKey = 0;
+            command.geometryKey = System.identityHashCode(drawable);
+        }
+        // The camera looks along -z in eye coordinates, so nearer objects have a smaller -z.
+        command.depth = -modelViewMatrix[14];
+        System.arraycopy(projectionMatrix, 0, command.projectionMatrix, 0, 16);
+        System.arraycopy(modelViewMatrix, 0, command.modelViewMatrix, 0, 16);
+        order[count] = count;
+        count++;
+    }
+
+    private void grow() {
+        int capacity = Math.max(16, commands.length * 2);
+        Command[] grown = new Command[capacity];
+        System.arraycopy(commands, 0, grown, 0, commands.length);
+        for (int i = commands.length; i < capacity; i++) grown[i] = new Command();
+        commands = grown;
+        order = new int[capacity];
+        for (int i = 0; i < count; i++) order[i] = i;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Sorts and draws all recorded commands, then clears the queue.
+     */
+    public void execute() {
+        sort();
+        try {
+            for (int i = 0; i < count; i++) {
+                Command command = commands[order[i]];
+                command.drawable.draw(command.projectionMatrix, command.modelViewMatrix);
+            }
+        } finally {
+            clear();
+        }
+    }
+
+    /**
+     * Discards all recorded commands without drawing them.
+     */
+    public void clear() {
+        for (int i = 0; i < count; i++) commands[i].drawable = null;
+        count = 0;
+    }
+
+    /**
+     * Insertion sort of the command order. Stable, allocation-free, and fast for the few dozen
+     * commands of a frame, most of which are submitted in the same order every frame.
+     */
+    private void sort() {
+        for (int i = 1; i < count; i++) {
+            int index = order[i];
+            Command command = commands[index];
+            int j = i - 1;
+            while (j >= 0 && compare(commands[order[j]], command) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = index;
+        }
+    }
+
+    private static int compare(Command a, Command b) {
+        if (a.programKey != b.programKey) return a.programKey < b.programKey ? -1 : 1;
+        if (a.geometryKey != b.geometryKey) return a.geometryKey < b.geometryKey ? -1 : 1;
+        return Float.compare(a.depth, b.depth);
+    }
+}
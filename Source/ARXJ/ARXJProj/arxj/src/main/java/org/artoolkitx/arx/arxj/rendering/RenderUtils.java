@@ -44,8 +44,161 @@ import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 
+/**
+ * Helpers for building the direct, native-ordered buffers passed to OpenGL.
+ * <p/>
+ * Allocating direct buffers is slow, and their memory is only freed by finalization, so buffers
+ * needed for a single draw, or rebuilt on every frame, should come from the pool:
+ * {@link #acquireFloatBuffer(int)} and {@link #acquireByteBuffer(int)} return pooled buffers, which
+ * {@link #releaseFloatBuffer(FloatBuffer)} and {@link #releaseByteBuffer(ByteBuffer)} return for reuse,
+ * and {@link #buildFloatBuffer(float[], FloatBuffer)} refills an existing buffer where it is large
+ * enough. The pool is confined to the calling thread, normally the GL thread, and needs no locking.
+ * Buffers are pooled in power-of-two size classes from 64 bytes to 64 KiB; larger buffers are
+ * allocated and released as usual.
+ */
 public class RenderUtils {
 
+    private static final int MIN_CLASS_BYTES = 64;
+    private static final int CLASS_COUNT = 11;
+    private static final int MAX_POOLED_PER_CLASS = 8;
+
+    private static final class BufferPool {
+        final ByteBuffer[][] byteBuffers = new ByteBuffer[CLASS_COUNT][MAX_POOLED_PER_CLASS];
+        final int[] byteBufferCounts = new int[CLASS_COUNT];
+        final FloatBuffer[][] floatBuffers = new FloatBuffer[CLASS_COUNT][MAX_POOLED_PER_CLASS];
+        final int[] floatBufferCounts = new int[CLASS_COUNT];
+    }
+
+    private static final ThreadLocal<BufferPool> pools = new ThreadLocal<BufferPool>() {
+        @Override
+        protected BufferPool initialValue() {
+            return new BufferPool();
+        }
+    };
+
+    /**
+     * @return The smallest size class holding the given number of bytes, or -1 if too large to pool.
+     */
+    private static int sizeClass(int bytes) {
+        for (int sizeClass = 0; sizeClass < CLASS_COUNT; sizeClass++) {
+            if ((MIN_CLASS_BYTES << sizeClass) >= bytes) return sizeClass;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The size class of exactly the given number of bytes, or -1 if not a pooled size.
+     */
+    private static int exactSizeClass(int bytes) {
+        int sizeClass = sizeClass(bytes);
+        return (sizeClass >= 0 && (MIN_CLASS_BYTES << sizeClass) == bytes) ? sizeClass : -1;
+    }
+
+    /**
+     * Returns a direct, native-ordered buffer from the calling thread's pool.
+     *
+     * @param byteCount The number of bytes required.
+     * @return A buffer with position 0 and limit byteCount. Its capacity may be larger.
+     */
+    public static ByteBuffer acquireByteBuffer(int byteCount) {
+        int sizeClass = sizeClass(byteCount);
+        ByteBuffer bb = null;
+        if (sizeClass >= 0) {
+            BufferPool pool = pools.get();
+            int count = pool.byteBufferCounts[sizeClass];
+            if (count > 0) {
+                bb = pool.byteBuffers[sizeClass][--count];
+                pool.byteBuffers[sizeClass][count] = null;
+                pool.byteBufferCounts[sizeClass] = count;
+            } else {
+                bb = ByteBuffer.allocateDirect(MIN_CLASS_BYTES << sizeClass);
+            }
+        } else {
+            bb = ByteBuffer.allocateDirect(byteCount);
+        }
+        bb.order(ByteOrder.nativeOrder());
+        bb.clear();
+        bb.limit(byteCount);
+        return bb;
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #acquireByteBuffer(int)} to the calling thread's pool. The
+     * buffer must not be used afterwards. Buffers not of a pooled size are left to the garbage collector.
+     */
+    public static void releaseByteBuffer(ByteBuffer bb) {
+        if (bb == null || !bb.isDirect()) return;
+        int sizeClass = exactSizeClass(bb.capacity());
+        if (sizeClass < 0) return;
+        BufferPool pool = pools.get();
+        int count = pool.byteBufferCounts[sizeClass];
+        if (count == MAX_POOLED_PER_CLASS) return;
+        pool.byteBuffers[sizeClass][count] = bb;
+        pool.byteBufferCounts[sizeClass] = count + 1;
+    }
+
+    /**
+     * Returns a direct, native-ordered float buffer from the calling thread's pool.
+     *
+     * @param floatCount The number of floats required.
+     * @return A buffer with position 0 and limit floatCount. Its capacity may be larger.
+     */
+    public static FloatBuffer acquireFloatBuffer(int floatCount) {
+        int sizeClass = sizeClass(floatCount * 4);
+        FloatBuffer fb = null;
+        if (sizeClass >= 0) {
+            BufferPool pool = pools.get();
+            int count = pool.floatBufferCounts[sizeClass];
+            if (count > 0) {
+                fb = pool.floatBuffers[sizeClass][--count];
+                pool.floatBuffers[sizeClass][count] = null;
+                pool.floatBufferCounts[sizeClass] = count;
+            } else {
+                fb = ByteBuffer.allocateDirect(MIN_CLASS_BYTES << sizeClass).order(ByteOrder.nativeOrder()).asFloatBuffer();
+            }
+        } else {
+            fb = ByteBuffer.allocateDirect(floatCount * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+        fb.clear();
+        fb.limit(floatCount);
+        return fb;
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #acquireFloatBuffer(int)} to the calling thread's pool.
+     * The buffer must not be used afterwards. Buffers not of a pooled size are left to the garbage collector.
+     */
+    public static void releaseFloatBuffer(FloatBuffer fb) {
+        if (fb == null || !fb.isDirect()) return;
+        int sizeClass = exactSizeClass(fb.capacity() * 4);
+        if (sizeClass < 0) return;
+        BufferPool pool = pools.get();
+        int count = pool.floatBufferCounts[sizeClass];
+        if (count == MAX_POOLED_PER_CLASS) return;
+        pool.floatBuffers[sizeClass][count] = fb;
+        pool.floatBufferCounts[sizeClass] = count + 1;
+    }
+
+    /**
+     * Copies an array into a direct float buffer, reusing an existing buffer if it is large enough.
+     * Otherwise the existing buffer is released to the pool and replaced with one from the pool.
+     *
+     * @param arr   The floats to copy.
+     * @param reuse The buffer to refill, or null.
+     * @return The filled buffer, with position 0 and limit arr.length.
+     */
+    public static FloatBuffer buildFloatBuffer(float[] arr, FloatBuffer reuse) {
+        FloatBuffer fb = reuse;
+        if (fb == null || !fb.isDirect() || fb.capacity() < arr.length) {
+            releaseFloatBuffer(fb);
+            fb = acquireFloatBuffer(arr.length);
+        }
+        fb.clear();
+        fb.put(arr);
+        fb.flip();
+        return fb;
+    }
+
     public static FloatBuffer buildFloatBuffer(float[] arr) {
         ByteBuffer bb = ByteBuffer.allocateDirect(arr.length * 4);
         bb.order(ByteOrder.nativeOrder());
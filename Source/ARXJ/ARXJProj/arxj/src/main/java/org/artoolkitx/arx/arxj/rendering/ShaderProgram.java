@@ -43,6 +43,7 @@ import org.artoolkitx.arx.arxj.rendering.shader_impl.SimpleShaderProgram;
 
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
+import java.util.Arrays;
 
 /**
  * Created by Thorsten Bux on 21.01.2016.
@@ -84,9 +85,18 @@ public abstract class ShaderProgram {
     private float[] projectionMatrix;
     private float[] modelViewMatrix;
 
+    // Uniform locations, resolved on first use, and the matrices last uploaded to them.
+    private boolean uniformsResolved = false;
+    private int projectionMatrixLocation;
+    private int modelViewMatrixLocation;
+    private final float[] uploadedProjectionMatrix = new float[16];
+    private final float[] uploadedModelViewMatrix = new float[16];
+
     @SuppressWarnings("WeakerAccess")
     public ShaderProgram(OpenGLShader vertexShader, OpenGLShader fragmentShader) {
         shaderProgramHandle = createProgram(vertexShader.configureShader(), fragmentShader.configureShader());
+        Arrays.fill(uploadedProjectionMatrix, Float.NaN);
+        Arrays.fill(uploadedModelViewMatrix, Float.NaN);
     }
 
     @SuppressWarnings("WeakerAccess")
@@ -146,6 +156,17 @@ public abstract class ShaderProgram {
         throw new RuntimeException("Please override at least this method.");
     }
 
+    /**
+     * Renders geometry held in GPU buffer objects. This implementation renders from the geometry's
+     * client-side copies with {@link #render(FloatBuffer, FloatBuffer, ByteBuffer)}; override it to
+     * draw from the buffer objects as shown in {@link SimpleShaderProgram}.
+     *
+     * @param geometry The geometry to render.
+     */
+    public void render(BufferedGeometry geometry) {
+        render(geometry.getVertices(), geometry.getColors(), geometry.getIndices());
+    }
+
     @SuppressWarnings("WeakerAccess")
     public void render(FloatBuffer vertexBuffer, ByteBuffer indexBuffer) {
         render(vertexBuffer, null, indexBuffer);
@@ -159,7 +180,12 @@ public abstract class ShaderProgram {
      * @param position The position to be rendered
      */
     public void render(float[] position) {
-        render(RenderUtils.buildFloatBuffer(position), null);
+        FloatBuffer positionBuffer = RenderUtils.buildFloatBuffer(position, null);
+        try {
+            render(positionBuffer, null);
+        } finally {
+            RenderUtils.releaseFloatBuffer(positionBuffer);
+        }
     }
 
     public void setProjectionMatrix(float[] projectionMatrix) {
@@ -176,8 +202,14 @@ public abstract class ShaderProgram {
      * {@link #render(FloatBuffer, FloatBuffer, ByteBuffer) renderer()} method.
      */
     protected void setupShaderUsage() {
-        // Tell OpenGL to use this program when rendering.
-        GLES20.glUseProgram(shaderProgramHandle);
+        // Tell OpenGL to use this program when rendering, unless it is already in use.
+        GLStateCache.useProgram(shaderProgramHandle);
+        if (!uniformsResolved) {
+            // Locations do not change once the program is linked.
+            projectionMatrixLocation = this.getProjectionMatrixHandle();
+            modelViewMatrixLocation = this.getModelViewMatrixHandle();
+            uniformsResolved = true;
+        }
 
         /* Replaces the functions
 
@@ -191,12 +223,13 @@ public abstract class ShaderProgram {
            from the Renderer implementation class in the render method
            */
 
+        // Uniforms keep their values while other programs are in use, so only changed matrices are uploaded.
         if (projectionMatrix != null)
-            GLES20.glUniformMatrix4fv(this.getProjectionMatrixHandle(), 1, false, projectionMatrix, 0);
+            GLStateCache.uniformMatrix4fv(projectionMatrixLocation, projectionMatrix, uploadedProjectionMatrix);
         else
             throw new RuntimeException("You need to set the projection matrix.");
 
         if (modelViewMatrix != null)
-            GLES20.glUniformMatrix4fv(this.getModelViewMatrixHandle(), 1, false, modelViewMatrix, 0);
+            GLStateCache.uniformMatrix4fv(modelViewMatrixLocation, modelViewMatrix, uploadedModelViewMatrix);
     }
 }
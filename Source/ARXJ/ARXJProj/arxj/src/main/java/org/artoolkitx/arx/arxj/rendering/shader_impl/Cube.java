@@ -37,20 +37,22 @@
  */
 package org.artoolkitx.arx.arxj.rendering.shader_impl;
 
-import org.artoolkitx.arx.arxj.rendering.ARDrawable;
+import org.artoolkitx.arx.arxj.rendering.BufferedGeometry;
 import org.artoolkitx.arx.arxj.rendering.RenderUtils;
 import org.artoolkitx.arx.arxj.rendering.ShaderProgram;
+import org.artoolkitx.arx.arxj.rendering.SortableDrawable;
 
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 
 
 @SuppressWarnings("SameParameterValue")
-public final class Cube implements ARDrawable {
+public final class Cube implements SortableDrawable {
 
     private FloatBuffer mVertexBuffer;
     private FloatBuffer mColorBuffer;
     private ByteBuffer mIndexBuffer;
+    private BufferedGeometry mGeometry;
     private ShaderProgram shaderProgram;
 
     @SuppressWarnings("unused")
@@ -59,7 +61,7 @@ public final class Cube implements ARDrawable {
     }
 
     public Cube(ShaderProgram shaderProgram) {
-        super();
+        this(1.0f);
         this.shaderProgram = shaderProgram;
     }
 
@@ -85,6 +87,14 @@ public final class Cube implements ARDrawable {
         return mIndexBuffer;
     }
 
+    /**
+     * @return The cube's geometry, uploaded to GPU buffer objects on first draw in each GL context.
+     */
+    @Override
+    public BufferedGeometry getGeometry() {
+        return mGeometry;
+    }
+
     private void setArrays(float size, float x, float y, float z) {
 
         float hs = size / 2.0f;
@@ -140,6 +150,7 @@ public final class Cube implements ARDrawable {
         mVertexBuffer = RenderUtils.buildFloatBuffer(vertices);
         mColorBuffer = RenderUtils.buildFloatBuffer(colors);
         mIndexBuffer = RenderUtils.buildByteBuffer(indices);
+        mGeometry = new BufferedGeometry(mVertexBuffer, mColorBuffer, mIndexBuffer);
 
     }
 
@@ -156,7 +167,7 @@ public final class Cube implements ARDrawable {
         shaderProgram.setProjectionMatrix(projectionMatrix);
         shaderProgram.setModelViewMatrix(modelViewMatrix);
 
-        shaderProgram.render(this.getmVertexBuffer(), this.getmColorBuffer(), this.getmIndexBuffer());
+        shaderProgram.render(mGeometry);
 
     }
 
@@ -167,4 +178,9 @@ public final class Cube implements ARDrawable {
     public void setShaderProgram(ShaderProgram shaderProgram) {
         this.shaderProgram = shaderProgram;
     }
+
+    @Override
+    public ShaderProgram getShaderProgram() {
+        return shaderProgram;
+    }
 }
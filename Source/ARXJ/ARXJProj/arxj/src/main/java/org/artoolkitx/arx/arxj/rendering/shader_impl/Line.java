@@ -54,6 +54,7 @@ public class Line implements ARDrawable {
     private float[] end = new float[3];
     private float width;
     private float[] color = {1, 0, 0, 1};
+    private final float[] vertices = new float[vertexLength * 2];
     private FloatBuffer mVertexBuffer;
     private FloatBuffer mColorBuffer;
 
@@ -76,15 +77,14 @@ public class Line implements ARDrawable {
 
     private void setArrays() {
 
-        float[] vertices = new float[vertexLength * 2];
-
         for (int i = 0; i < vertexLength; i++) {
             vertices[i] = start[i];
             vertices[i + vertexLength] = end[i];
         }
 
-        mVertexBuffer = RenderUtils.buildFloatBuffer(vertices);
-        mColorBuffer = RenderUtils.buildFloatBuffer(color);
+        // Refilled in place on every draw.
+        mVertexBuffer = RenderUtils.buildFloatBuffer(vertices, mVertexBuffer);
+        mColorBuffer = RenderUtils.buildFloatBuffer(color, mColorBuffer);
     }
 
     @SuppressWarnings("unused")
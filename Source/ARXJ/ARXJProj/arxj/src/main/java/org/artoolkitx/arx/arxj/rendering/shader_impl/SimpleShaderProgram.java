@@ -39,6 +39,8 @@ package org.artoolkitx.arx.arxj.rendering.shader_impl;
 
 import android.opengl.GLES20;
 
+import org.artoolkitx.arx.arxj.rendering.BufferedGeometry;
+import org.artoolkitx.arx.arxj.rendering.GLStateCache;
 import org.artoolkitx.arx.arxj.rendering.OpenGLShader;
 import org.artoolkitx.arx.arxj.rendering.ShaderProgram;
 
@@ -54,9 +56,15 @@ import java.nio.FloatBuffer;
  */
 public class SimpleShaderProgram extends ShaderProgram {
 
+    // Attribute locations, resolved once after linking.
+    private final int positionHandle;
+    private final int colorHandle;
+
     public SimpleShaderProgram(OpenGLShader vertexShader, OpenGLShader fragmentShader) {
         super(vertexShader, fragmentShader);
         bindAttributes();
+        positionHandle = GLES20.glGetAttribLocation(shaderProgramHandle, OpenGLShader.positionVectorString);
+        colorHandle = GLES20.glGetAttribLocation(shaderProgramHandle, SimpleVertexShader.colorVectorString);
     }
 
     protected void bindAttributes() {
@@ -76,7 +84,7 @@ public class SimpleShaderProgram extends ShaderProgram {
 
     @SuppressWarnings("WeakerAccess")
     public int getPositionHandle() {
-        return GLES20.glGetAttribLocation(shaderProgramHandle, OpenGLShader.positionVectorString);
+        return positionHandle;
     }
 
     /**
@@ -84,7 +92,7 @@ public class SimpleShaderProgram extends ShaderProgram {
      * the geometry.
      */
     private int getColorHandle() {
-        return GLES20.glGetAttribLocation(shaderProgramHandle, SimpleVertexShader.colorVectorString);
+        return colorHandle;
     }
 
     /**
@@ -99,6 +107,8 @@ public class SimpleShaderProgram extends ShaderProgram {
     @Override
     public void render(FloatBuffer vertexBuffer, FloatBuffer colorBuffer, ByteBuffer indexBuffer) {
         setupShaderUsage();
+        // Client-side arrays are only used while no buffer object is bound.
+        GLStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
         vertexBuffer.position(0);
         /*
@@ -118,7 +128,7 @@ public class SimpleShaderProgram extends ShaderProgram {
         //camPosition.length * 4 bytes per float
         GLES20.glVertexAttribPointer(this.getPositionHandle(), positionDataSize, GLES20.GL_FLOAT, false,
                 positionStrideBytes, vertexBuffer);
-        GLES20.glEnableVertexAttribArray(this.getPositionHandle());
+        GLStateCache.enableVertexAttribArray(this.getPositionHandle());
 
         if(colorBuffer != null) {
             // Pass in the color information
@@ -131,7 +141,10 @@ public class SimpleShaderProgram extends ShaderProgram {
             GLES20.glVertexAttribPointer(this.getColorHandle(), colorDataSize, GLES20.GL_FLOAT, false,
                     colorStrideBytes, colorBuffer);
 
-            GLES20.glEnableVertexAttribArray(this.getColorHandle());
+            GLStateCache.enableVertexAttribArray(this.getColorHandle());
+        } else {
+            // Don't leave the attribute reading from an earlier geometry's colors.
+            GLStateCache.disableVertexAttribArray(this.getColorHandle());
         }
 
         if(indexBuffer != null) {
@@ -139,8 +152,42 @@ public class SimpleShaderProgram extends ShaderProgram {
             //The geometry consists of 36 points (indexBuffer.limit()) each represented by a x,y,z vector
             //The index buffer tells the renderer how the vector points are combined together.
             //eg. combine vertex 1,2,3 for the first triangle (vertex) and 2,3,4 for the next triangle, ...
+            GLStateCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
             GLES20.glDrawElements(GLES20.GL_TRIANGLES, indexBuffer.limit(), GLES20.GL_UNSIGNED_BYTE, indexBuffer);
         }
     }
 
+    /**
+     * Renders geometry from its GPU buffer objects, creating them first if needed. As with the
+     * client-side render, the attribute pointers are set up in the same order, but as offsets into
+     * the bound buffers, so no vertex data is passed to OpenGL. The buffers are left bound, so that
+     * drawing the same geometry again rebinds as little as possible.
+     *
+     * @param geometry The geometry to render.
+     */
+    @Override
+    public void render(BufferedGeometry geometry) {
+        geometry.create();
+        setupShaderUsage();
+
+        GLStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, geometry.getVertexBufferId());
+        GLES20.glVertexAttribPointer(this.getPositionHandle(), positionDataSize, GLES20.GL_FLOAT, false,
+                positionStrideBytes, 0);
+        GLStateCache.enableVertexAttribArray(this.getPositionHandle());
+
+        if (geometry.getColorBufferId() != 0) {
+            GLStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, geometry.getColorBufferId());
+            GLES20.glVertexAttribPointer(this.getColorHandle(), colorDataSize, GLES20.GL_FLOAT, false,
+                    colorStrideBytes, 0);
+            GLStateCache.enableVertexAttribArray(this.getColorHandle());
+        } else {
+            GLStateCache.disableVertexAttribArray(this.getColorHandle());
+        }
+
+        if (geometry.getIndexBufferId() != 0) {
+            GLStateCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, geometry.getIndexBufferId());
+            GLES20.glDrawElements(GLES20.GL_TRIANGLES, geometry.getIndexCount(), GLES20.GL_UNSIGNED_BYTE, 0);
+        }
+    }
+
 }
@@ -0,0 +1,198 @@
+/*
+ *  VideoFrameHandOffTest.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj;
+
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Pushes a reused {@link VideoFrame} through {@link ARController#convert(VideoFrame)} with the native
+ * push replaced, and checks that the steady-state path allocates nothing.
+ */
+public class VideoFrameHandOffTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int WARM_UP_FRAMES = 20000;
+    private static final int MEASURED_FRAMES = 10000;
+    private static final int MEASURED_RUNS = 5;
+
+    // Class-wide, as the controller logs while loading the native library when the test is constructed.
+    private static MockedStatic<Log> log;
+
+    private final ARController controller = ARController.getInstance();
+    private final RecordingPush push = new RecordingPush();
+    private final ByteBuffer y = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+    private final ByteBuffer u = ByteBuffer.allocateDirect(WIDTH * HEIGHT / 2);
+    private final ByteBuffer v = ByteBuffer.allocateDirect(WIDTH * HEIGHT / 2);
+
+    @BeforeClass
+    public static void setUpClass() {
+        log = Mockito.mockStatic(Log.class);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        log.close();
+    }
+
+    @Before
+    public void setUp() {
+        controller.setVideoPush(push);
+    }
+
+    @After
+    public void tearDown() {
+        controller.setVideoPush(null);
+    }
+
+    @Test
+    public void pushesAllPlanesWithStridesAndIdentity() {
+        VideoFrame frame = new VideoFrame();
+        long frameId = VideoFrame.nextFrameId();
+        fill(frame, frameId);
+
+        assertTrue(controller.convert(frame));
+        assertEquals(1, push.count);
+        assertSame(y, push.planes[0]);
+        assertSame(u, push.planes[1]);
+        assertSame(v, push.planes[2]);
+        assertEquals(null, push.planes[3]);
+        assertEquals(1, push.pixelStrides[0]);
+        assertEquals(2, push.pixelStrides[1]);
+        assertEquals(WIDTH, push.rowStrides[1]);
+        assertEquals(0, push.rowStrides[3]);
+        assertEquals(frameId, controller.getFrameId());
+        assertEquals(frameId * 1000, controller.getFrameTimestamp());
+    }
+
+    @Test
+    public void steadyStatePushDoesNotAllocate() {
+        java.lang.management.ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(mxBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) mxBean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        VideoFrame frame = new VideoFrame();
+        pushFrames(frame, WARM_UP_FRAMES);
+
+        // Reading the counter may itself allocate, so its cost is measured and subtracted.
+        threads.getThreadAllocatedBytes(threadId);
+        long start = threads.getThreadAllocatedBytes(threadId);
+        long overhead = threads.getThreadAllocatedBytes(threadId) - start;
+        // The JVM occasionally charges allocations of its own (e.g. on deoptimization) to this thread,
+        // so a few runs are allowed. An allocation on the push path would show up in every run.
+        long allocated = Long.MAX_VALUE;
+        for (int run = 0; run < MEASURED_RUNS && allocated != 0; run++) {
+            start = threads.getThreadAllocatedBytes(threadId);
+            pushFrames(frame, MEASURED_FRAMES);
+            allocated = Math.min(allocated, threads.getThreadAllocatedBytes(threadId) - start - overhead);
+        }
+
+        assertEquals("Bytes allocated while pushing " + MEASURED_FRAMES + " frames", 0, allocated);
+    }
+
+    private void pushFrames(VideoFrame frame, int count) {
+        for (int i = 0; i < count; i++) {
+            fill(frame, VideoFrame.nextFrameId());
+            if (!controller.convert(frame)) throw new AssertionError("Push failed");
+            frame.clear();
+        }
+    }
+
+    /**
+     * Fills the frame as CameraSurfaceImpl does for a YUV_420_888 image with interleaved chroma.
+     */
+    private void fill(VideoFrame frame, long frameId) {
+        frame.setPlane(0, y, 1, WIDTH);
+        frame.setPlane(1, u, 2, WIDTH);
+        frame.setPlane(2, v, 2, WIDTH);
+        frame.setPlaneCount(3);
+        frame.setFrameInfo(frameId, frameId * 1000);
+    }
+
+    private static class RecordingPush implements ARController.VideoPush {
+        int count;
+        final ByteBuffer[] planes = new ByteBuffer[VideoFrame.MAX_PLANES];
+        final int[] pixelStrides = new int[VideoFrame.MAX_PLANES];
+        final int[] rowStrides = new int[VideoFrame.MAX_PLANES];
+
+        @Override
+        public int push(int videoSourceIndex,
+                        ByteBuffer buf0, int buf0PixelStride, int buf0RowStride,
+                        ByteBuffer buf1, int buf1PixelStride, int buf1RowStride,
+                        ByteBuffer buf2, int buf2PixelStride, int buf2RowStride,
+                        ByteBuffer buf3, int buf3PixelStride, int buf3RowStride) {
+            count++;
+            planes[0] = buf0;
+            planes[1] = buf1;
+            planes[2] = buf2;
+            planes[3] = buf3;
+            pixelStrides[0] = buf0PixelStride;
+            pixelStrides[1] = buf1PixelStride;
+            pixelStrides[2] = buf2PixelStride;
+            pixelStrides[3] = buf3PixelStride;
+            rowStrides[0] = buf0RowStride;
+            rowStrides[1] = buf1RowStride;
+            rowStrides[2] = buf2RowStride;
+            rowStrides[3] = buf3RowStride;
+            return 0;
+        }
+
+        @Override
+        public int pushChroma(int videoSourceIndex,
+                              ByteBuffer buf1, int buf1PixelStride, int buf1RowStride,
+                              ByteBuffer buf2, int buf2PixelStride, int buf2RowStride) {
+            throw new AssertionError("Chroma pushed separately without luma-only push");
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package org.artoolkitx.arx.arxj.camera;
+
+import android.util.Log;
+
+import org.artoolkitx.arx.arxj.VideoFrame;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/*
+ *  FrameRecordingTest.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+/**
+ * Records frames through {@link FrameRecorder} and reads them back with
+ * {@link FrameRecordingReader}, both from a closed recording and from one left unclosed.
+ */
+public class FrameRecordingTest {
+
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 24;
+    private static final int FRAME_COUNT = 6;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ByteBuffer[][] planes = new ByteBuffer[FRAME_COUNT][];
+    private final int[] pixelStrides = {1, 2, 2};
+    private final int[] rowStrides = {WIDTH, WIDTH, WIDTH};
+    private final VideoFrame frame = new VideoFrame();
+    private final CountingListener listener = new CountingListener();
+    private MockedStatic<Log> log;
+
+    @Before
+    public void setUp() {
+        log = Mockito.mockStatic(Log.class);
+        // YUV_420_888 with interleaved chroma, as delivered by most cameras: the U and V planes overlap.
+        Random random = new Random(42);
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            ByteBuffer y = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+            ByteBuffer uv = ByteBuffer.allocateDirect(WIDTH * HEIGHT / 2);
+            fillRandom(y, random);
+            fillRandom(uv, random);
+            uv.limit(uv.capacity() - 1);
+            ByteBuffer u = uv.slice();
+            uv.position(1);
+            uv.limit(uv.capacity());
+            ByteBuffer v = uv.slice();
+            planes[i] = new ByteBuffer[]{y, u, v};
+        }
+    }
+
+    @After
+    public void tearDown() {
+        log.close();
+    }
+
+    @Test
+    public void closedRecordingRoundTrips() throws IOException {
+        File file = folder.newFile("closed.arxfrms");
+        FrameRecorder recorder = new FrameRecorder(listener, file, FRAME_COUNT);
+        recorder.cameraStreamStarted(WIDTH, HEIGHT, "YUV_420_888", 1, true);
+        assertTrue(recorder.isRecording());
+        pushFrames(recorder);
+        recorder.cameraStreamStopped();
+
+        assertFalse(recorder.isRecording());
+        assertEquals(FRAME_COUNT, recorder.getRecordedFrameCount());
+        assertEquals(0, recorder.getDroppedFrameCount());
+        assertEquals(FRAME_COUNT, listener.frames);
+        assertEquals(1, listener.stopped);
+
+        FrameRecordingReader reader = new FrameRecordingReader(file);
+        try {
+            assertEquals(WIDTH, reader.getWidth());
+            assertEquals(HEIGHT, reader.getHeight());
+            assertEquals("YUV_420_888", reader.getPixelFormat());
+            assertEquals(1, reader.getCameraIndex());
+            assertTrue(reader.isCameraFrontFacing());
+            assertFrames(reader, FRAME_COUNT);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void unclosedRecordingRecoversAllFrames() throws IOException, InterruptedException {
+        File file = folder.newFile("live.arxfrms");
+        FrameRecorder recorder = new FrameRecorder(listener, file, FRAME_COUNT);
+        recorder.cameraStreamStarted(WIDTH, HEIGHT, "YUV_420_888", 0, false);
+        try {
+            pushFrames(recorder);
+            awaitRecorded(recorder, FRAME_COUNT);
+            // What a crash would leave behind: no index, and a file extended well beyond the last record.
+            File crashed = copy(file, "crashed.arxfrms");
+            assertTrue(crashed.length() > recordOffset(FRAME_COUNT));
+
+            FrameRecordingReader reader = new FrameRecordingReader(crashed);
+            try {
+                assertFrames(reader, FRAME_COUNT);
+            } finally {
+                reader.close();
+            }
+        } finally {
+            recorder.cameraStreamStopped();
+        }
+    }
+
+    @Test
+    public void tornLastRecordIsNotRecovered() throws IOException, InterruptedException {
+        File file = folder.newFile("torn.arxfrms");
+        FrameRecorder recorder = new FrameRecorder(listener, file, FRAME_COUNT);
+        recorder.cameraStreamStarted(WIDTH, HEIGHT, "YUV_420_888", 0, false);
+        File torn;
+        File truncated;
+        try {
+            pushFrames(recorder);
+            awaitRecorded(recorder, FRAME_COUNT);
+            torn = copy(file, "torn-copy.arxfrms");
+            truncated = copy(file, "truncated-copy.arxfrms");
+        } finally {
+            recorder.cameraStreamStopped();
+        }
+
+        // The header of the last record reached the file but the second half of its planes did not.
+        long lastOffset = recordOffset(FRAME_COUNT - 1);
+        long lastEnd = recordOffset(FRAME_COUNT);
+        RandomAccessFile raf = new RandomAccessFile(torn, "rw");
+        try {
+            long tornFrom = (lastOffset + lastEnd) / 2;
+            raf.seek(tornFrom);
+            raf.write(new byte[(int) (lastEnd - tornFrom)]);
+        } finally {
+            raf.close();
+        }
+        FrameRecordingReader reader = new FrameRecordingReader(torn);
+        try {
+            assertFrames(reader, FRAME_COUNT - 1);
+        } finally {
+            reader.close();
+        }
+
+        // The file ends part way through the last record.
+        raf = new RandomAccessFile(truncated, "rw");
+        try {
+            raf.setLength(lastOffset + FrameRecordingFormat.RECORD_HEADER_SIZE + 8);
+        } finally {
+            raf.close();
+        }
+        reader = new FrameRecordingReader(truncated);
+        try {
+            assertFrames(reader, FRAME_COUNT - 1);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void pushFrames(FrameRecorder recorder) {
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            for (int plane = 0; plane < 3; plane++) {
+                frame.setPlane(plane, planes[i][plane], pixelStrides[plane], rowStrides[plane]);
+            }
+            frame.setPlaneCount(3);
+            frame.setFrameInfo(frameId(i), timestamp(i));
+            recorder.cameraStreamFrame(frame);
+            frame.clear();
+        }
+    }
+
+    /**
+     * Reads every frame, last first, and checks that it is identical to the frame pushed.
+     */
+    private void assertFrames(FrameRecordingReader reader, int count) throws IOException {
+        assertEquals(count, reader.getFrameCount());
+        VideoFrame read = new VideoFrame();
+        for (int i = count - 1; i >= 0; i--) {
+            reader.readFrame(i, read);
+            assertEquals(3, read.getPlaneCount());
+            for (int plane = 0; plane < 3; plane++) {
+                assertArrayEquals("Frame " + i + " plane " + plane, bytes(planes[i][plane]), bytes(read.getPlane(plane)));
+                assertEquals(pixelStrides[plane], read.getPixelStride(plane));
+                assertEquals(rowStrides[plane], read.getRowStride(plane));
+            }
+            assertEquals(frameId(i), read.getFrameId());
+            assertEquals(timestamp(i), read.getTimestamp());
+            assertEquals(frameId(i), reader.getFrameId(i));
+            assertEquals(timestamp(i), reader.getFrameTimestamp(i));
+        }
+    }
+
+    private static long frameId(int i) {
+        return 1000 + i;
+    }
+
+    private static long timestamp(int i) {
+        return 123456789L + i * 33333333L;
+    }
+
+    /**
+     * @return The offset at which the record of the given frame starts.
+     */
+    private long recordOffset(int frameIndex) {
+        long offset = FrameRecordingFormat.HEADER_SIZE;
+        for (int i = 0; i < frameIndex; i++) {
+            int planeBytes = 0;
+            for (ByteBuffer plane : planes[i]) planeBytes += plane.capacity();
+            offset += FrameRecordingFormat.recordLength(planes[i].length, planeBytes);
+        }
+        return offset;
+    }
+
+    private static void awaitRecorded(FrameRecorder recorder, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (recorder.getRecordedFrameCount() < count) {
+            assertTrue("Frames were not written", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private File copy(File source, String name) throws IOException {
+        File destination = folder.newFile(name);
+        InputStream in = new FileInputStream(source);
+        try {
+            OutputStream out = new FileOutputStream(destination);
+            try {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) > 0) out.write(buffer, 0, read);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        return destination;
+    }
+
+    private static void fillRandom(ByteBuffer buffer, Random random) {
+        byte[] bytes = new byte[buffer.capacity()];
+        random.nextBytes(bytes);
+        buffer.put(bytes);
+        buffer.clear();
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        ByteBuffer all = buffer.duplicate();
+        all.clear();
+        byte[] bytes = new byte[all.remaining()];
+        all.get(bytes);
+        return bytes;
+    }
+
+    private static class CountingListener implements CameraEventListener {
+        int frames;
+        int stopped;
+
+        @Override
+        public void cameraStreamStarted(int width, int height, String pixelFormat, int cameraIndex, boolean cameraIsFrontFacing) {
+        }
+
+        @Override
+        public void cameraStreamFrame(byte[] frame, int frameSize) {
+        }
+
+        @Override
+        public void cameraStreamFrame(VideoFrame frame) {
+            frames++;
+        }
+
+        @Override
+        public void cameraStreamStopped() {
+            stopped++;
+        }
+    }
+}
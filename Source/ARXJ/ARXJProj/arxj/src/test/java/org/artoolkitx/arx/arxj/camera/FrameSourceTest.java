@@ -0,0 +1,371 @@
+package org.artoolkitx.arx.arxj.camera;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.artoolkitx.arx.arxj.VideoFrame;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/*
+ *  FrameSourceTest.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+/**
+ * Drives the frame sources into a recording {@link CameraEventListener}, as a detection test
+ * running off-device would.
+ */
+public class FrameSourceTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockedStatic<Log> log;
+    private MockedStatic<SystemClock> clock;
+
+    @Before
+    public void setUp() {
+        log = Mockito.mockStatic(Log.class);
+        // Only called on the test thread, when a source is started; the delivery thread stamps
+        // frames relative to the value returned here.
+        clock = Mockito.mockStatic(SystemClock.class);
+        clock.when(new MockedStatic.Verification() {
+            @Override
+            public void apply() {
+                SystemClock.elapsedRealtimeNanos();
+            }
+        }).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                return System.nanoTime();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        clock.close();
+        log.close();
+    }
+
+    @Test
+    public void syntheticSourceDeliversFrameLimitBetweenStartAndStop() throws InterruptedException {
+        SyntheticFrameSource source = new SyntheticFrameSource(WIDTH, HEIGHT);
+        source.setFrameLimit(30);
+        source.setFrameRate(0);
+        RecordingListener listener = new RecordingListener();
+
+        assertTrue(source.start(listener));
+        listener.awaitStopped();
+        source.stop();
+
+        assertEquals(30, listener.assertStartedFramesStopped());
+        assertEquals(WIDTH, listener.width);
+        assertEquals(HEIGHT, listener.height);
+        assertEquals("NV21", listener.pixelFormat);
+        assertEquals(30, source.getDeliveredFrameCount());
+        assertFalse(source.isRunning());
+        for (int i = 0; i < listener.frames.size(); i++) {
+            RecordedFrame frame = listener.frames.get(i);
+            assertEquals(2, frame.planes.length);
+            assertEquals(WIDTH * HEIGHT, frame.planes[0].length);
+            assertEquals(WIDTH, frame.rowStrides[0]);
+            assertEquals(2, frame.pixelStrides[1]);
+            assertTrue(frame.frameId != 0);
+            if (i > 0) assertTrue(frame.frameId > listener.frames.get(i - 1).frameId);
+        }
+        // The marker moves from frame to frame.
+        assertFalse(Arrays.equals(listener.frames.get(0).planes[0], listener.frames.get(10).planes[0]));
+    }
+
+    @Test
+    public void syntheticSourceIsDeterministic() throws InterruptedException {
+        RecordingListener first = run(new SyntheticFrameSource(WIDTH, HEIGHT), 5);
+        RecordingListener second = run(new SyntheticFrameSource(WIDTH, HEIGHT), 5);
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(first.frames.get(i).planes[0], second.frames.get(i).planes[0]);
+            assertArrayEquals(first.frames.get(i).planes[1], second.frames.get(i).planes[1]);
+        }
+    }
+
+    @Test
+    public void fixedRateIsPacedAndZeroRateIsNot() throws InterruptedException {
+        final int frames = 20;
+        final float framesPerSecond = 100.0f;
+
+        SyntheticFrameSource paced = new SyntheticFrameSource(WIDTH, HEIGHT);
+        paced.setFrameRate(framesPerSecond);
+        long pacedNanos = timedRun(paced, frames);
+
+        SyntheticFrameSource unthrottled = new SyntheticFrameSource(WIDTH, HEIGHT);
+        unthrottled.setFrameRate(0);
+        long unthrottledNanos = timedRun(unthrottled, frames);
+
+        // Frame i is not delivered before i intervals have passed since the first.
+        long minimumPacedNanos = (long) ((frames - 1) * 1000000000.0 / framesPerSecond);
+        assertTrue("Paced run took " + pacedNanos + " ns", pacedNanos >= minimumPacedNanos);
+        assertTrue("Unthrottled run took " + unthrottledNanos + " ns", unthrottledNanos < minimumPacedNanos);
+    }
+
+    @Test
+    public void stopEndsStreamWithStopped() throws InterruptedException {
+        SyntheticFrameSource source = new SyntheticFrameSource(WIDTH, HEIGHT);
+        source.setFrameRate(0);
+        RecordingListener listener = new RecordingListener();
+
+        assertTrue(source.start(listener));
+        assertFalse(source.start(new RecordingListener()));
+        listener.awaitFrames(3);
+        source.stop();
+
+        assertFalse(source.isRunning());
+        assertEquals(source.getDeliveredFrameCount(), listener.assertStartedFramesStopped());
+    }
+
+    @Test
+    public void fileSourceReplaysEveryFrameInOrder() throws IOException, InterruptedException {
+        int frameSize = FileFrameSource.frameSize(WIDTH, HEIGHT, "NV21");
+        int lumaSize = WIDTH * HEIGHT;
+        byte[][] written = new byte[4][frameSize];
+        File file = folder.newFile("frames.nv21");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            for (int i = 0; i < written.length; i++) {
+                for (int j = 0; j < frameSize; j++) written[i][j] = (byte) (i * 31 + j);
+                out.write(written[i]);
+            }
+        } finally {
+            out.close();
+        }
+
+        FileFrameSource source = new FileFrameSource(file, WIDTH, HEIGHT, "NV21");
+        source.setFrameRate(0);
+        RecordingListener listener = run(source, written.length);
+
+        assertEquals(written.length, source.getFrameCount());
+        assertEquals("NV21", listener.pixelFormat);
+        for (int i = 0; i < written.length; i++) {
+            RecordedFrame frame = listener.frames.get(i);
+            assertArrayEquals(Arrays.copyOfRange(written[i], 0, lumaSize), frame.planes[0]);
+            assertArrayEquals(Arrays.copyOfRange(written[i], lumaSize, frameSize), frame.planes[1]);
+            assertEquals(WIDTH, frame.rowStrides[1]);
+            assertEquals(2, frame.pixelStrides[1]);
+        }
+    }
+
+    @Test
+    public void fileSourceLoopsWhenAsked() throws IOException, InterruptedException {
+        File file = folder.newFile("frames.mono");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[2 * WIDTH * HEIGHT]);
+        } finally {
+            out.close();
+        }
+        FileFrameSource source = new FileFrameSource(file, WIDTH, HEIGHT, "MONO");
+        source.setFrameRate(0);
+        source.setLooping(true);
+        RecordingListener listener = new RecordingListener();
+
+        assertTrue(source.start(listener));
+        listener.awaitFrames(5);
+        source.stop();
+
+        assertTrue(listener.assertStartedFramesStopped() >= 5);
+    }
+
+    @Test
+    public void fileSourceRefusesMissingFile() {
+        FileFrameSource source = new FileFrameSource(new File(folder.getRoot(), "missing"), WIDTH, HEIGHT, "NV21");
+        RecordingListener listener = new RecordingListener();
+
+        assertFalse(source.start(listener));
+        assertTrue(listener.events.isEmpty());
+    }
+
+    private static RecordingListener run(ThreadedFrameSource source, int frames) throws InterruptedException {
+        RecordingListener listener = new RecordingListener(frames);
+        assertTrue(source.start(listener));
+        listener.awaitFrames(frames);
+        source.stop();
+        listener.assertStartedFramesStopped();
+        return listener;
+    }
+
+    private static long timedRun(ThreadedFrameSource source, int frames) throws InterruptedException {
+        RecordingListener listener = new RecordingListener(frames);
+        long start = System.nanoTime();
+        assertTrue(source.start(listener));
+        listener.awaitFrames(frames);
+        long elapsed = System.nanoTime() - start;
+        source.stop();
+        return elapsed;
+    }
+
+    private static class RecordedFrame {
+        final byte[][] planes;
+        final int[] pixelStrides;
+        final int[] rowStrides;
+        final long frameId;
+
+        RecordedFrame(VideoFrame frame) {
+            int count = frame.getPlaneCount();
+            planes = new byte[count][];
+            pixelStrides = new int[count];
+            rowStrides = new int[count];
+            for (int i = 0; i < count; i++) {
+                // The buffers are only valid during the callback, so they are copied.
+                ByteBuffer plane = frame.getPlane(i).duplicate();
+                planes[i] = new byte[plane.remaining()];
+                plane.get(planes[i]);
+                pixelStrides[i] = frame.getPixelStride(i);
+                rowStrides[i] = frame.getRowStride(i);
+            }
+            frameId = frame.getFrameId();
+        }
+    }
+
+    /**
+     * Records the events it receives, and the first frames in full. Checks that all calls come
+     * from the same thread.
+     */
+    private static class RecordingListener implements CameraEventListener {
+        final List<String> events = new ArrayList<String>();
+        final List<RecordedFrame> frames = new ArrayList<RecordedFrame>();
+        final int framesToRecord;
+        final CountDownLatch stopped = new CountDownLatch(1);
+        CountDownLatch framesArrived;
+        int frameCount;
+        int width;
+        int height;
+        String pixelFormat;
+        Thread thread;
+        boolean wrongThread;
+
+        RecordingListener() {
+            this(Integer.MAX_VALUE);
+        }
+
+        RecordingListener(int framesToRecord) {
+            this.framesToRecord = framesToRecord;
+        }
+
+        private synchronized void onEvent(String event) {
+            if (thread == null) thread = Thread.currentThread();
+            else if (thread != Thread.currentThread()) wrongThread = true;
+            events.add(event);
+        }
+
+        @Override
+        public void cameraStreamStarted(int width, int height, String pixelFormat, int cameraIndex, boolean cameraIsFrontFacing) {
+            onEvent("started");
+            this.width = width;
+            this.height = height;
+            this.pixelFormat = pixelFormat;
+        }
+
+        @Override
+        public void cameraStreamFrame(byte[] frame, int frameSize) {
+            onEvent("byte[] frame");
+        }
+
+        @Override
+        public void cameraStreamFrame(VideoFrame frame) {
+            onEvent("frame");
+            synchronized (this) {
+                if (frames.size() < framesToRecord) frames.add(new RecordedFrame(frame));
+                frameCount++;
+                if (framesArrived != null) framesArrived.countDown();
+            }
+        }
+
+        @Override
+        public void cameraStreamStopped() {
+            onEvent("stopped");
+            stopped.countDown();
+        }
+
+        void awaitStopped() throws InterruptedException {
+            assertTrue("Stream did not stop", stopped.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+
+        void awaitFrames(int count) throws InterruptedException {
+            CountDownLatch latch;
+            synchronized (this) {
+                latch = new CountDownLatch(Math.max(0, count - frameCount));
+                framesArrived = latch;
+            }
+            assertTrue("Fewer than " + count + " frames arrived", latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+
+        /**
+         * Checks that the stream was started once, then delivered frames, then stopped once.
+         *
+         * @return The number of frames delivered.
+         */
+        synchronized int assertStartedFramesStopped() {
+            assertFalse("Listener called from more than one thread", wrongThread);
+            assertTrue(events.size() >= 2);
+            assertEquals("started", events.get(0));
+            for (int i = 1; i < events.size() - 1; i++) assertEquals("frame", events.get(i));
+            assertEquals("stopped", events.get(events.size() - 1));
+            return events.size() - 2;
+        }
+    }
+}
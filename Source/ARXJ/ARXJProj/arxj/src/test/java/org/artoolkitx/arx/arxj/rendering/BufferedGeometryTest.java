@@ -0,0 +1,189 @@
+/*
+ *  BufferedGeometryTest.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj.rendering;
+
+import android.opengl.GLES20;
+
+import org.artoolkitx.arx.arxj.rendering.shader_impl.Cube;
+import org.artoolkitx.arx.arxj.rendering.shader_impl.SimpleFragmentShader;
+import org.artoolkitx.arx.arxj.rendering.shader_impl.SimpleShaderProgram;
+import org.artoolkitx.arx.arxj.rendering.shader_impl.SimpleVertexShader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+import org.mockito.verification.VerificationMode;
+
+import java.nio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+/**
+ * Draws a {@link Cube} through {@link SimpleShaderProgram#render(BufferedGeometry)} over several
+ * frames with GLES20 mocked, and counts the calls which create and fill buffer objects.
+ */
+public class BufferedGeometryTest {
+
+    private static final int FRAMES = 10;
+    private static final int CUBE_INDEX_COUNT = 36;
+
+    private GLES20Mock gl;
+    private Cube cube;
+    private final float[] projection = new float[16];
+    private final float[] modelView = new float[16];
+
+    @Before
+    public void setUp() {
+        gl = new GLES20Mock();
+        cube = new Cube(new SimpleShaderProgram(new SimpleVertexShader(), new SimpleFragmentShader()));
+        projection[0] = projection[5] = projection[10] = projection[15] = 1.0f;
+        modelView[0] = modelView[5] = modelView[10] = modelView[15] = 1.0f;
+    }
+
+    @After
+    public void tearDown() {
+        gl.close();
+    }
+
+    @Test
+    public void uploadsOnlyOnFirstFrame() {
+        long uploads = BufferedGeometry.getUploadCount();
+
+        drawFrames(1);
+        verifyBufferCreation(times(1), times(3));
+        assertEquals(uploads + 3, BufferedGeometry.getUploadCount());
+
+        drawFrames(FRAMES - 1);
+        verifyBufferCreation(times(1), times(3));
+        assertEquals(uploads + 3, BufferedGeometry.getUploadCount());
+        verifyDrawsFromBuffers(FRAMES);
+    }
+
+    @Test
+    public void uploadsAgainAfterContextLoss() {
+        drawFrames(FRAMES);
+        verifyBufferCreation(times(1), times(3));
+
+        BufferedGeometry.onContextCreated();
+        GLStateCache.invalidate();
+        drawFrames(1);
+        verifyBufferCreation(times(2), times(6));
+
+        drawFrames(FRAMES - 1);
+        verifyBufferCreation(times(2), times(6));
+        verifyDrawsFromBuffers(2 * FRAMES);
+        // The buffers of the lost context died with it.
+        gl.verify(new MockedStatic.Verification() {
+            @Override
+            public void apply() {
+                GLES20.glDeleteBuffers(anyInt(), any(int[].class), anyInt());
+            }
+        }, never());
+    }
+
+    @Test
+    public void uploadsAgainAfterRelease() {
+        drawFrames(FRAMES);
+        cube.getGeometry().release();
+        gl.verify(new MockedStatic.Verification() {
+            @Override
+            public void apply() {
+                GLES20.glDeleteBuffers(eq(3), any(int[].class), eq(0));
+            }
+        }, times(1));
+
+        drawFrames(FRAMES);
+        verifyBufferCreation(times(2), times(6));
+    }
+
+    private void drawFrames(int count) {
+        for (int i = 0; i < count; i++) {
+            // The cube moves, as it would with a tracked marker.
+            modelView[14] -= 1.0f;
+            cube.draw(projection, modelView);
+        }
+    }
+
+    private void verifyBufferCreation(VerificationMode generated, VerificationMode uploaded) {
+        gl.verify(new MockedStatic.Verification() {
+            @Override
+            public void apply() {
+                GLES20.glGenBuffers(anyInt(), any(int[].class), anyInt());
+            }
+        }, generated);
+        gl.verify(new MockedStatic.Verification() {
+            @Override
+            public void apply() {
+                GLES20.glBufferData(anyInt(), anyInt(), any(Buffer.class), anyInt());
+            }
+        }, uploaded);
+        gl.verify(new MockedStatic.Verification() {
+            @Override
+            public void apply() {
+                GLES20.glBufferSubData(anyInt(), anyInt(), anyInt(), any(Buffer.class));
+            }
+        }, never());
+    }
+
+    /**
+     * Checks that every frame drew from the index buffer, and that no vertex data was passed from client memory.
+     */
+    private void verifyDrawsFromBuffers(int frames) {
+        gl.verify(new MockedStatic.Verification() {
+            @Override
+            public void apply() {
+                GLES20.glDrawElements(GLES20.GL_TRIANGLES, CUBE_INDEX_COUNT, GLES20.GL_UNSIGNED_BYTE, 0);
+            }
+        }, times(frames));
+        gl.verify(new MockedStatic.Verification() {
+            @Override
+            public void apply() {
+                GLES20.glDrawElements(anyInt(), anyInt(), anyInt(), any(Buffer.class));
+            }
+        }, never());
+        gl.verify(new MockedStatic.Verification() {
+            @Override
+            public void apply() {
+                GLES20.glVertexAttribPointer(anyInt(), anyInt(), anyInt(), anyBoolean(), anyInt(), any(Buffer.class));
+            }
+        }, never());
+    }
+}
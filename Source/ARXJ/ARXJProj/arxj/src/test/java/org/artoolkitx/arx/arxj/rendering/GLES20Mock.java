@@ -0,0 +1,161 @@
+/*
+ *  GLES20Mock.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj.rendering;
+
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.mockito.verification.VerificationMode;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * Mocks GLES20 for the rendering tests, on the calling thread only. Shaders compile, programs
+ * link, and every shader, program and buffer gets a new name. android.util.Log is mocked as well,
+ * as the renderers log when they create their GL objects. Mocking starts a new GL context for
+ * {@link BufferedGeometry} and {@link GLStateCache}; {@link #close()} must be called when the test
+ * is done.
+ */
+final class GLES20Mock {
+
+    // The minimum required by OpenGL ES 2.0.
+    private static final int DEFAULT_MAX_VERTEX_UNIFORM_VECTORS = 128;
+
+    private final MockedStatic<GLES20> gl;
+    private final MockedStatic<Log> log;
+    private int nextGLName;
+
+    GLES20Mock() {
+        this(DEFAULT_MAX_VERTEX_UNIFORM_VECTORS);
+    }
+
+    /**
+     * @param maxVertexUniformVectors Value returned for GL_MAX_VERTEX_UNIFORM_VECTORS.
+     */
+    GLES20Mock(int maxVertexUniformVectors) {
+        log = Mockito.mockStatic(Log.class);
+        gl = Mockito.mockStatic(GLES20.class);
+        gl.when(new MockedStatic.Verification() {
+            @Override
+            public void apply() {
+                GLES20.glCreateShader(anyInt());
+            }
+        }).thenAnswer(newName());
+        gl.when(new MockedStatic.Verification() {
+            @Override
+            public void apply() {
+                GLES20.glCreateProgram();
+            }
+        }).thenAnswer(newName());
+        gl.when(new MockedStatic.Verification() {
+            @Override
+            public void apply() {
+                GLES20.glGetShaderiv(anyInt(), eq(GLES20.GL_COMPILE_STATUS), any(int[].class), anyInt());
+            }
+        }).thenAnswer(answerInt(2, 1));
+        gl.when(new MockedStatic.Verification() {
+            @Override
+            public void apply() {
+                GLES20.glGetProgramiv(anyInt(), eq(GLES20.GL_LINK_STATUS), any(int[].class), anyInt());
+            }
+        }).thenAnswer(answerInt(2, 1));
+        gl.when(new MockedStatic.Verification() {
+            @Override
+            public void apply() {
+                GLES20.glGetIntegerv(eq(GLES20.GL_MAX_VERTEX_UNIFORM_VECTORS), any(int[].class), anyInt());
+            }
+        }).thenAnswer(answerInt(1, maxVertexUniformVectors));
+        gl.when(new MockedStatic.Verification() {
+            @Override
+            public void apply() {
+                GLES20.glGenBuffers(anyInt(), any(int[].class), anyInt());
+            }
+        }).thenAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                int count = invocation.getArgument(0);
+                int[] names = invocation.getArgument(1);
+                int offset = invocation.getArgument(2);
+                for (int i = 0; i < count; i++) names[offset + i] = ++nextGLName;
+                return null;
+            }
+        });
+
+        BufferedGeometry.onContextCreated();
+        GLStateCache.invalidate();
+    }
+
+    void verify(MockedStatic.Verification verification, VerificationMode mode) {
+        gl.verify(verification, mode);
+    }
+
+    void close() {
+        gl.close();
+        log.close();
+    }
+
+    private Answer<Integer> newName() {
+        return new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                return ++nextGLName;
+            }
+        };
+    }
+
+    /**
+     * Answers a glGet*iv call by storing the given value in its params array.
+     *
+     * @param paramsIndex Index of the params argument; the offset argument follows it.
+     */
+    private static Answer<Void> answerInt(final int paramsIndex, final int value) {
+        return new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                int[] params = invocation.getArgument(paramsIndex);
+                int offset = invocation.getArgument(paramsIndex + 1);
+                params[offset] = value;
+                return null;
+            }
+        };
+    }
+}
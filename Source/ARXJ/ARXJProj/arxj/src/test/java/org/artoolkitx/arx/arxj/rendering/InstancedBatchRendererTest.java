@@ -0,0 +1,131 @@
+/*
+ *  InstancedBatchRendererTest.java
+ *  artoolkitX
+ *
+ *  This file is part of artoolkitX.
+ *
+ *  artoolkitX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  artoolkitX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with artoolkitX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As a special exception, the copyright holders of this library give you
+ *  permission to link this library with independent modules to produce an
+ *  executable, regardless of the license terms of these independent modules, and to
+ *  copy and distribute the resulting executable under terms of your choice,
+ *  provided that you also meet, for each linked independent module, the terms and
+ *  conditions of the license of that module. An independent module is a module
+ *  which is neither derived from nor based on this library. If you modify this
+ *  library, you may extend this exception to your version of the library, but you
+ *  are not obligated to do so. If you do not wish to do so, delete this exception
+ *  statement from your version.
+ *
+ *  Copyright 2018 Realmax, Inc.
+ *
+ */
+
+package org.artoolkitx.arx.arxj.rendering;
+
+import android.opengl.GLES20;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+
+/**
+ * Draws large geometry through the uniform array fallback of {@link InstancedBatchRenderer} with
+ * GLES20 mocked, and checks that batches stay addressable by 16-bit indices.
+ */
+public class InstancedBatchRendererTest {
+
+    private static final int MAX_VERTEX_UNIFORM_VECTORS = 1024; // Room for the full batch of 64.
+
+    private GLES20Mock gl;
+    private final float[] projection = new float[16];
+    private final float[] modelView = new float[16];
+
+    @Before
+    public void setUp() {
+        gl = new GLES20Mock(MAX_VERTEX_UNIFORM_VECTORS);
+        projection[0] = projection[5] = projection[10] = projection[15] = 1.0f;
+        modelView[0] = modelView[5] = modelView[10] = modelView[15] = 1.0f;
+    }
+
+    @After
+    public void tearDown() {
+        gl.close();
+    }
+
+    @Test
+    public void limitsBatchesToShortIndexRange() {
+        // 2000 vertices allow 32 copies per batch, half of what the uniforms allow.
+        InstancedBatchRenderer renderer = new InstancedBatchRenderer(triangleWithVertices(2000));
+        renderer.setInstancingEnabled(false);
+        renderer.begin();
+        for (int i = 0; i < 64; i++) renderer.add(modelView);
+        renderer.draw(projection);
+
+        assertFalse(renderer.isInstanced());
+        assertEquals(2, renderer.getLastDrawCallCount());
+        gl.verify(new MockedStatic.Verification() {
+            @Override
+            public void apply() {
+                GLES20.glDrawElements(GLES20.GL_TRIANGLES, 32 * 3, GLES20.GL_UNSIGNED_SHORT, 0);
+            }
+        }, times(2));
+        // 32 copies of 3 two-byte indices.
+        gl.verify(new MockedStatic.Verification() {
+            @Override
+            public void apply() {
+                GLES20.glBufferData(eq(GLES20.GL_ELEMENT_ARRAY_BUFFER), eq(32 * 3 * 2), any(Buffer.class), anyInt());
+            }
+        }, times(1));
+    }
+
+    @Test
+    public void rejectsGeometryBeyondShortIndexRange() {
+        InstancedBatchRenderer renderer = new InstancedBatchRenderer(triangleWithVertices(65537));
+        renderer.setInstancingEnabled(false);
+        renderer.begin();
+        renderer.add(modelView);
+        try {
+            renderer.draw(projection);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    /**
+     * A geometry of vertexCount vertices, of which one triangle is indexed.
+     */
+    private static BufferedGeometry triangleWithVertices(int vertexCount) {
+        FloatBuffer vertices = ByteBuffer.allocateDirect(vertexCount * 3 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        for (int i = 0; i < vertexCount * 3; i++) vertices.put(i % 7);
+        vertices.position(0);
+        ByteBuffer indices = ByteBuffer.allocateDirect(3);
+        indices.put((byte) 0).put((byte) 1).put((byte) 2).position(0);
+        return new BufferedGeometry(vertices, null, indices);
+    }
+}